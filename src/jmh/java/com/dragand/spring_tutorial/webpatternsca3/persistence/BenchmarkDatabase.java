@@ -0,0 +1,150 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+/**
+ * In-memory H2 database in MySQL mode with the embedded schema and a deterministic catalog, for the benchmarks.
+ * The same seed always produces the same rows, so results of two runs are comparable.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    /**
+     * Words song titles, album titles and playlist names are made of, so that LIKE searches find something.
+     */
+    static final String[] WORDS = {
+            "love", "night", "heart", "fire", "dream", "blue", "rain", "summer", "home", "light",
+            "road", "river", "gold", "wild", "star", "city", "moon", "shadow", "sky", "ocean"
+    };
+
+    static final int ARTISTS = 200;
+    static final int ALBUMS = 2_000;
+    static final int USERS = 1_000;
+
+    private final HikariDataSource dataSource;
+    private final Random random = new Random(42);
+
+    /**
+     * @param name - name of the in-memory database, each name is a separate database.
+     */
+    BenchmarkDatabase(String name) {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(8);
+        SchemaMigrator.migrate(dataSource, SchemaMigrator.EMBEDDED_SCHEMA);
+    }
+
+    HikariDataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Insert artists, albums, users and the given number of songs.
+     * @param songs - number of songs.
+     */
+    void seedCatalog(int songs) throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO Artists (name) VALUES (?)")) {
+                for (int i = 1; i <= ARTISTS; i++) {
+                    ps.setString(1, title(2) + " " + i);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO Albums (title, artistID, releaseDate) VALUES (?, ?, '2020-01-01')")) {
+                for (int i = 1; i <= ALBUMS; i++) {
+                    ps.setString(1, title(2));
+                    ps.setInt(2, 1 + random.nextInt(ARTISTS));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO Users (firstName, lastName, userName, password) VALUES ('Bench', 'User', ?, 'x')")) {
+                for (int i = 1; i <= USERS; i++) {
+                    ps.setString(1, "user" + i);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO Songs (title, albumID, artistID, length) VALUES (?, ?, ?, ?)")) {
+                for (int i = 1; i <= songs; i++) {
+                    ps.setString(1, title(3));
+                    ps.setInt(2, 1 + random.nextInt(ALBUMS));
+                    ps.setInt(3, 1 + random.nextInt(ARTISTS));
+                    ps.setString(4, "00:0" + (2 + random.nextInt(6)) + ":" + (10 + random.nextInt(50)));
+                    ps.addBatch();
+                    if (i % 10_000 == 0) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            con.commit();
+        }
+    }
+
+    /**
+     * Create a playlist holding the first songs of the catalog.
+     * @param userId - owner of the playlist.
+     * @param size - number of songs in it.
+     * @param isPublic - whether the playlist is public.
+     * @return - the id of the playlist.
+     */
+    int createPlaylist(int userId, int size, boolean isPublic) throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            int playlistId;
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO playlists (userID, name, isPublic) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                ps.setInt(1, userId);
+                ps.setString(2, title(2) + " " + size);
+                ps.setBoolean(3, isPublic);
+                ps.executeUpdate();
+                try (var keys = ps.getGeneratedKeys()) {
+                    keys.next();
+                    playlistId = keys.getInt(1);
+                }
+            }
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO playlistsongs (playlistID, songID) VALUES (?, ?)")) {
+                for (int songId = 1; songId <= size; songId++) {
+                    ps.setInt(1, playlistId);
+                    ps.setInt(2, songId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            con.commit();
+            return playlistId;
+        }
+    }
+
+    @Override
+    public void close() {
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement()) {
+            st.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            // The database is gone either way
+        }
+        dataSource.close();
+    }
+
+    //Helper methods
+
+    private String title(int words) {
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                title.append(' ');
+            }
+            title.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return title.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Album;
+import com.dragand.spring_tutorial.webpatternsca3.business.Artist;
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query and list mapping of the DAO methods that return whole lists: a page of songs, all songs, all artists
+ * and the albums of an artist.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogListBenchmark {
+
+    @Param({"10000"})
+    int songs;
+
+    private BenchmarkDatabase database;
+    private SongDaoImpl songDao;
+    private ArtistDaoImpl artistDao;
+    private AlbumDaoImpl albumDao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase("catalogList");
+        database.seedCatalog(songs);
+        songDao = new SongDaoImpl(database.getDataSource());
+        artistDao = new ArtistDaoImpl(database.getDataSource());
+        albumDao = new AlbumDaoImpl(database.getDataSource());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Song> songPage() {
+        return songDao.getSongsAfter(SongSort.TITLE, 0, 50);
+    }
+
+    @Benchmark
+    public List<Song> allSongs() {
+        return songDao.getAllSongs();
+    }
+
+    @Benchmark
+    public List<Artist> allArtists() {
+        return artistDao.getAllArtists();
+    }
+
+    @Benchmark
+    public List<Album> albumsOfArtist() {
+        return albumDao.getAllAlbumsByArtistId(7);
+    }
+}
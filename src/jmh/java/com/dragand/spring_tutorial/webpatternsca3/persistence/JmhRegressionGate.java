@@ -0,0 +1,112 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result with a baseline result and fails when a benchmark got slower.
+ * <p>
+ * A benchmark regressed when its score is worse than the baseline by more than the allowed percentage
+ * plus the error margins of both runs, so noise alone does not fail the gate. Benchmarks that are only
+ * in one of the files are listed but not judged.
+ * <pre>{@code
+ * java JmhRegressionGate <baseline.json> <result.json> [max regression percent, default 10]
+ * }</pre>
+ * Exits with 1 if any benchmark regressed, 2 if a file cannot be read.
+ */
+public final class JmhRegressionGate {
+
+    private record Score(String mode, double score, double error) {
+
+        /**
+         * @return - true if a lower score is better, as for time per operation.
+         */
+        boolean lowerIsBetter() {
+            return !mode.equals("thrpt");
+        }
+    }
+
+    private JmhRegressionGate() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: JmhRegressionGate <baseline.json> <result.json> [max regression percent]");
+            System.exit(2);
+        }
+        double maxRegressionPercent = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, Score> baseline;
+        Map<String, Score> current;
+        try {
+            baseline = read(Path.of(args[0]));
+            current = read(Path.of(args[1]));
+        } catch (IOException e) {
+            System.err.println("Cannot read JMH results: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Score> entry : new TreeMap<>(current).entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-60s %14s %14.3f %9s  new%n", entry.getKey(), "-", now.score(), "-");
+                continue;
+            }
+            double change = (now.score() - before.score()) / before.score() * 100;
+            double worse = now.lowerIsBetter() ? change : -change;
+            double noisePercent = (now.error() + before.error()) / before.score() * 100;
+            boolean regressed = worse > maxRegressionPercent + noisePercent;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-60s %14.3f %14.3f %+8.1f%%  %s%n", entry.getKey(), before.score(), now.score(), change,
+                    regressed ? "REGRESSED" : "ok");
+        }
+        for (String missing : baseline.keySet()) {
+            if (!current.containsKey(missing)) {
+                System.out.printf("%-60s  not run%n", missing);
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.1f%%%n", regressions, maxRegressionPercent);
+            System.exit(1);
+        }
+        System.out.println("No regressions");
+    }
+
+    /**
+     * @return - the scores of a result file by benchmark name and parameters.
+     */
+    private static Map<String, Score> read(Path file) throws IOException {
+        JsonNode results = new ObjectMapper().readTree(Files.readString(file));
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            // Class and method are enough to tell the benchmarks apart
+            String benchmark = result.path("benchmark").asText();
+            StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1))
+                    .append(" ").append(result.path("mode").asText());
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(" ").append(param.getKey()).append("=").append(param.getValue().asText());
+            }
+            JsonNode metric = result.path("primaryMetric");
+            double error = metric.path("scoreError").asDouble(0);
+            scores.put(key.toString(), new Score(result.path("mode").asText(), metric.path("score").asDouble(),
+                    Double.isNaN(error) ? 0 : error));
+        }
+        return scores;
+    }
+}
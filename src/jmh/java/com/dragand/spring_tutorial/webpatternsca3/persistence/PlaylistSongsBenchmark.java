@@ -0,0 +1,82 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PlaylistSongsDaoImpl#getSongsInPlaylistByPlaylistId} for playlists of different sizes,
+ * next to the id lookup + {@link SongDaoImpl#findSongById} per row (N+1) it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaylistSongsBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int playlistSize;
+
+    private BenchmarkDatabase database;
+    private PlaylistSongsDaoImpl playlistSongsDao;
+    private SongDaoImpl songDao;
+    private int playlistId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase("playlistSongs");
+        database.seedCatalog(Math.max(10_000, playlistSize));
+        playlistId = database.createPlaylist(1, playlistSize, false);
+        playlistSongsDao = new PlaylistSongsDaoImpl(database.getDataSource());
+        songDao = new SongDaoImpl(database.getDataSource());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Song> songsInPlaylist() {
+        return playlistSongsDao.getSongsInPlaylistByPlaylistId(playlistId);
+    }
+
+    /**
+     * The previous implementation: read the song ids, then load each song with its own query.
+     */
+    @Benchmark
+    public List<Song> songsInPlaylistLookupPerRow() throws SQLException {
+        List<Song> songs = new ArrayList<>(playlistSize);
+        try (Connection con = database.getDataSource().getConnection();
+             PreparedStatement ps = con.prepareStatement("SELECT songID FROM playlistsongs WHERE playlistID = ? ORDER BY songID")) {
+            ps.setInt(1, playlistId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    songs.add(songDao.findSongById(rs.getInt("songID")));
+                }
+            }
+        }
+        return songs;
+    }
+}
@@ -0,0 +1,64 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RatingDaoImpl#addOrUpdateRating} with random users and songs, so the run is a mix of inserts and updates
+ * that moves towards updates as the table fills up. Run with {@code -t} to add concurrent raters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RatingUpsertBenchmark {
+
+    private static final int SONGS = 10_000;
+
+    private BenchmarkDatabase database;
+    private RatingDaoImpl ratingDao;
+
+    /**
+     * One random sequence per benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Rater {
+        private final SplittableRandom random = new SplittableRandom(7);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase("ratingUpsert");
+        database.seedCatalog(SONGS);
+        ratingDao = new RatingDaoImpl(database.getDataSource());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public boolean addOrUpdateRating(Rater rater) {
+        return ratingDao.addOrUpdateRating("song",
+                1 + rater.random.nextInt(SONGS),
+                1 + rater.random.nextInt(BenchmarkDatabase.USERS),
+                1 + rater.random.nextInt(5));
+    }
+}
@@ -0,0 +1,93 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Album;
+import com.dragand.spring_tutorial.webpatternsca3.business.Artist;
+import com.dragand.spring_tutorial.webpatternsca3.business.Playlist;
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.utils.ParallelTasks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The four LIKE queries the search page falls back to when the search index is not built:
+ * songs, artists, albums and public playlists, run one after the other and at the same time as the search page does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchQueriesBenchmark {
+
+    /**
+     * A common word, a rarer pair of letters and a query without matches.
+     */
+    @Param({"love", "oc", "zzz"})
+    String query;
+
+    private BenchmarkDatabase database;
+    private SongDaoImpl songDao;
+    private ArtistDaoImpl artistDao;
+    private AlbumDaoImpl albumDao;
+    private PlaylistDaoImpl playlistDao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase("searchQueries");
+        database.seedCatalog(10_000);
+        for (int i = 1; i <= 500; i++) {
+            database.createPlaylist(1 + i % BenchmarkDatabase.USERS, 10, i % 2 == 0);
+        }
+        songDao = new SongDaoImpl(database.getDataSource());
+        artistDao = new ArtistDaoImpl(database.getDataSource());
+        albumDao = new AlbumDaoImpl(database.getDataSource());
+        playlistDao = new PlaylistDaoImpl(database.getDataSource());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public void sequential(Blackhole blackhole) {
+        blackhole.consume(songDao.getAllSongsByTitle(query));
+        blackhole.consume(artistDao.getAllArtistsWhereNameLike(query));
+        blackhole.consume(albumDao.getAllAlbumsWhereNameLike(query));
+        blackhole.consume(playlistDao.getAllPlaylistbyName(query, true));
+    }
+
+    @Benchmark
+    public void parallel(Blackhole blackhole) throws Exception {
+        try (ParallelTasks tasks = new ParallelTasks()) {
+            Future<List<Song>> songs = tasks.fork(() -> songDao.getAllSongsByTitle(query));
+            Future<List<Artist>> artists = tasks.fork(() -> artistDao.getAllArtistsWhereNameLike(query));
+            Future<List<Album>> albums = tasks.fork(() -> albumDao.getAllAlbumsWhereNameLike(query));
+            Future<List<Playlist>> playlists = tasks.fork(() -> playlistDao.getAllPlaylistbyName(query, true));
+            tasks.join(Duration.ofSeconds(10));
+            blackhole.consume(songs.get());
+            blackhole.consume(artists.get());
+            blackhole.consume(albums.get());
+            blackhole.consume(playlists.get());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Types;
+
+/**
+ * Cost of {@link SongDaoImpl#mapSongFromResultSet} alone, per page of rows.
+ * The rows come from an in-memory result set, so no query or driver work is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SongMappingBenchmark {
+
+    @Param({"50", "1000"})
+    int rows;
+
+    private SimpleResultSet resultSet;
+
+    @Setup
+    public void setUp() {
+        resultSet = new SimpleResultSet();
+        resultSet.setAutoClose(false);
+        resultSet.addColumn("songID", Types.INTEGER, 10, 0);
+        resultSet.addColumn("title", Types.VARCHAR, 255, 0);
+        resultSet.addColumn("albumID", Types.INTEGER, 10, 0);
+        resultSet.addColumn("artistID", Types.INTEGER, 10, 0);
+        resultSet.addColumn("length", Types.TIME, 8, 0);
+        resultSet.addColumn("ratingCount", Types.INTEGER, 10, 0);
+        resultSet.addColumn("averageRating", Types.DECIMAL, 3, 2);
+        resultSet.addColumn("ratingsSum", Types.INTEGER, 10, 0);
+        for (int i = 1; i <= rows; i++) {
+            resultSet.addRow(i, "Song " + i, 1 + i % 100, 1 + i % 10, Time.valueOf("00:03:" + (10 + i % 50)),
+                    i % 40, BigDecimal.valueOf(1 + i % 400, 2), i % 160);
+        }
+    }
+
+    @Benchmark
+    public void mapSongs(Blackhole blackhole) throws SQLException {
+        resultSet.beforeFirst();
+        while (resultSet.next()) {
+            blackhole.consume(SongDaoImpl.mapSongFromResultSet(resultSet));
+        }
+    }
+}
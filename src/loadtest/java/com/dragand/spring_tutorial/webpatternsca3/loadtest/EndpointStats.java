@@ -0,0 +1,89 @@
+package com.dragand.spring_tutorial.webpatternsca3.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors of one endpoint, recorded by all virtual users at once.
+ * Latencies go into an HDR histogram in microseconds, which keeps the tail (p99.9, max) exact to 3 digits
+ * at a fixed size instead of averaging it away.
+ */
+final class EndpointStats {
+
+    private final String name;
+    private final Recorder latencies = new Recorder(3);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Map<String, LongAdder> errorCauses = new ConcurrentHashMap<>();
+
+    private Histogram interval;
+
+    /**
+     * @param name - the endpoint as shown in the report, e.g. "POST /login".
+     */
+    EndpointStats(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @param nanos - time from sending the request to reading the whole response.
+     * @param error - why the response was not the expected one, e.g. "HTTP 503", or null if it was.
+     */
+    void record(long nanos, String error) {
+        latencies.recordValue(Math.max(1, nanos / 1_000));
+        requests.increment();
+        if (error != null) {
+            errors.increment();
+            errorCauses.computeIfAbsent(error, cause -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Forget everything recorded so far, at the end of the warm-up.
+     */
+    void reset() {
+        latencies.reset();
+        requests.reset();
+        errors.reset();
+        errorCauses.clear();
+    }
+
+    /**
+     * Take the latencies recorded since the last reset. Call once, at the end of the run.
+     * @return - the latencies in microseconds.
+     */
+    Histogram finish() {
+        interval = latencies.getIntervalHistogram();
+        return interval;
+    }
+
+    Histogram getLatencies() {
+        return interval;
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return - the number of errors by cause, in cause order.
+     */
+    Map<String, Long> getErrorCauses() {
+        Map<String, Long> causes = new TreeMap<>();
+        errorCauses.forEach((cause, count) -> causes.put(cause, count.sum()));
+        return causes;
+    }
+}
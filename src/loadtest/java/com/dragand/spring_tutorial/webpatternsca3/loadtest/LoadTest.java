@@ -0,0 +1,265 @@
+package com.dragand.spring_tutorial.webpatternsca3.loadtest;
+
+import com.dragand.spring_tutorial.webpatternsca3.persistence.SyntheticDataGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP load test of a running application: virtual users log in and go through the songs, search, rating and
+ * playlist pages the way real users do, and the throughput, latency percentiles and errors of every endpoint are
+ * reported at the end.
+ * <p>
+ * Meant to be run against the "embedded" profile, whose generated users all share one password. Start the application,
+ * then the test, e.g.:
+ * <pre>
+ * mvn -Pembedded spring-boot:run
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--users=50 --duration=2m"
+ * </pre>
+ * Options (defaults in brackets): --url [http://localhost:8080], --users virtual users [20], --duration measured [60s],
+ * --warmup not measured, users start one by one during it [15s], --think-time between requests [0ms],
+ * --timeout per request [30s], --accounts generated users to log in as [10000], --songs in the generated catalog [100000],
+ * --zipf exponent of song and search word popularity [1.0], --seed [42], --report JSON file [target/loadtest-report.json],
+ * --histograms folder for the .hgrm percentile files [target/loadtest], --max-error-percent fail above it [100].
+ * <p>
+ * Every virtual user waits for each response before it sends the next request (a closed system). When the application
+ * slows down, fewer requests are sent, so compare throughput as well as latency between runs.
+ * Exits with 1 when the error rate is above --max-error-percent and 2 when the application cannot be reached.
+ */
+public final class LoadTest {
+
+    /**
+     * What the virtual users send, and where.
+     * @param baseUrl - the application, without a trailing slash.
+     * @param accounts - the users user1 to user{accounts} can log in.
+     * @param songs - the songs have ids 1 to songs.
+     * @param songRanks - popularity of the songs.
+     * @param wordRanks - popularity of the search words.
+     * @param thinkTime - average pause before each request.
+     * @param timeout - time a response may take before it counts as an error.
+     */
+    record Scenario(String baseUrl, int accounts, int songs, ZipfSampler songRanks, ZipfSampler wordRanks,
+                    Duration thinkTime, Duration timeout) {
+    }
+
+    /**
+     * The statistics of every endpoint the journeys use, in report order.
+     */
+    static final class Endpoints {
+        final EndpointStats login = new EndpointStats("POST /login");
+        final EndpointStats playlists = new EndpointStats("GET /playlists");
+        final EndpointStats createPlaylist = new EndpointStats("GET /create-playlist");
+        final EndpointStats songs = new EndpointStats("GET /songs");
+        final EndpointStats search = new EndpointStats("GET /search");
+        final EndpointStats rateSong = new EndpointStats("POST /api/rateSong");
+        final EndpointStats addToPlaylist = new EndpointStats("POST /api/playlists/songs");
+        final EndpointStats logout = new EndpointStats("GET /logout");
+
+        List<EndpointStats> all() {
+            return List.of(login, playlists, createPlaylist, songs, search, rateSong, addToPlaylist, logout);
+        }
+    }
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = option(args, "url", "http://localhost:8080").replaceAll("/+$", "");
+        int users = Integer.parseInt(option(args, "users", "20"));
+        Duration duration = DurationStyle.detectAndParse(option(args, "duration", "60s"));
+        Duration warmup = DurationStyle.detectAndParse(option(args, "warmup", "15s"));
+        int songs = Integer.parseInt(option(args, "songs", "100000"));
+        double zipf = Double.parseDouble(option(args, "zipf", "1.0"));
+        long seed = Long.parseLong(option(args, "seed", "42"));
+        Path report = Path.of(option(args, "report", "target/loadtest-report.json"));
+        Path histograms = Path.of(option(args, "histograms", "target/loadtest"));
+        double maxErrorPercent = Double.parseDouble(option(args, "max-error-percent", "100"));
+        Scenario scenario = new Scenario(baseUrl,
+                Integer.parseInt(option(args, "accounts", "10000")),
+                songs,
+                new ZipfSampler(songs, zipf),
+                new ZipfSampler(SyntheticDataGenerator.WORDS.size(), zipf),
+                DurationStyle.detectAndParse(option(args, "think-time", "0ms")),
+                DurationStyle.detectAndParse(option(args, "timeout", "30s")));
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        if (!reachable(client, baseUrl)) {
+            System.err.println("No application at " + baseUrl + ", start it first, e.g. mvn -Pembedded spring-boot:run");
+            System.exit(2);
+        }
+
+        System.out.printf("Load test of %s: %d virtual users, %s warm-up, %s measured, %d accounts, %d songs, Zipf exponent %.2f%n",
+                baseUrl, users, warmup, duration, scenario.accounts(), songs, zipf);
+        Endpoints endpoints = new Endpoints();
+        Run run = new Run();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            threads.add(Thread.ofVirtual().name("virtual-user-" + i)
+                    .start(new VirtualUser(client, scenario, endpoints, run::isRunning, seed * 1_000_003 + i)));
+            // Ramp up over the warm-up, so the application does not see every login at the same moment
+            Thread.sleep(warmup.toMillis() / Math.max(1, users));
+        }
+
+        endpoints.all().forEach(EndpointStats::reset);
+        long start = System.nanoTime();
+        Thread.sleep(duration.toMillis());
+        run.stop();
+        for (Thread thread : threads) {
+            thread.join(scenario.timeout().toMillis());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        endpoints.all().forEach(EndpointStats::finish);
+
+        printReport(System.out, endpoints.all(), seconds);
+        writeReport(report, endpoints.all(), seconds, users);
+        writeHistograms(histograms, endpoints.all());
+
+        long requests = endpoints.all().stream().mapToLong(EndpointStats::getRequests).sum();
+        long errors = endpoints.all().stream().mapToLong(EndpointStats::getErrors).sum();
+        double errorPercent = requests == 0 ? 100 : 100.0 * errors / requests;
+        if (errorPercent > maxErrorPercent) {
+            System.err.printf("Error rate %.2f%% is above %.2f%%%n", errorPercent, maxErrorPercent);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Stop flag shared by the virtual users.
+     */
+    private static final class Run {
+        private volatile boolean running = true;
+
+        boolean isRunning() {
+            return running;
+        }
+
+        void stop() {
+            running = false;
+        }
+    }
+
+    //Report
+
+    private static void printReport(PrintStream out, List<EndpointStats> endpoints, double seconds) {
+        out.println();
+        out.printf("%-28s %9s %9s %8s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        Histogram total = new Histogram(3);
+        long requests = 0;
+        long errors = 0;
+        for (EndpointStats endpoint : endpoints) {
+            if (endpoint.getRequests() == 0) {
+                continue;
+            }
+            printLine(out, endpoint.getName(), endpoint.getLatencies(), endpoint.getRequests(), endpoint.getErrors(), seconds);
+            total.add(endpoint.getLatencies());
+            requests += endpoint.getRequests();
+            errors += endpoint.getErrors();
+        }
+        printLine(out, "all", total, requests, errors, seconds);
+
+        out.println();
+        for (EndpointStats endpoint : endpoints) {
+            endpoint.getErrorCauses().forEach((cause, count) ->
+                    out.printf("%-28s %9d  %s%n", endpoint.getName(), count, cause));
+        }
+    }
+
+    private static void printLine(PrintStream out, String name, Histogram latencies, long requests, long errors, double seconds) {
+        out.printf(Locale.ROOT, "%-28s %9d %9.1f %7.2f%% %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                name, requests, requests / seconds, requests == 0 ? 0 : 100.0 * errors / requests,
+                millis(latencies, 50), millis(latencies, 90), millis(latencies, 99), millis(latencies, 99.9),
+                latencies.getMaxValue() / 1_000.0);
+    }
+
+    private static void writeReport(Path file, List<EndpointStats> endpoints, double seconds, int users) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("virtualUsers", users);
+        report.put("seconds", seconds);
+        Map<String, Object> byEndpoint = new LinkedHashMap<>();
+        for (EndpointStats endpoint : endpoints) {
+            Histogram latencies = endpoint.getLatencies();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("requests", endpoint.getRequests());
+            stats.put("throughput", endpoint.getRequests() / seconds);
+            stats.put("errors", endpoint.getErrors());
+            stats.put("errorCauses", endpoint.getErrorCauses());
+            stats.put("p50Ms", millis(latencies, 50));
+            stats.put("p90Ms", millis(latencies, 90));
+            stats.put("p99Ms", millis(latencies, 99));
+            stats.put("p999Ms", millis(latencies, 99.9));
+            stats.put("maxMs", latencies.getMaxValue() / 1_000.0);
+            byEndpoint.put(endpoint.getName(), stats);
+        }
+        report.put("endpoints", byEndpoint);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        System.out.println("Report written to " + file);
+    }
+
+    /**
+     * One file per endpoint in the HdrHistogram percentile format, for plotting the whole latency distribution.
+     */
+    private static void writeHistograms(Path folder, List<EndpointStats> endpoints) throws IOException {
+        Files.createDirectories(folder);
+        for (EndpointStats endpoint : endpoints) {
+            String fileName = endpoint.getName().replaceAll("[^A-Za-z0-9]+", "_").replaceAll("^_|_$", "") + ".hgrm";
+            try (PrintStream out = new PrintStream(Files.newOutputStream(folder.resolve(fileName)))) {
+                endpoint.getLatencies().outputPercentileDistribution(out, 1_000.0);
+            }
+        }
+        System.out.println("Latency distributions written to " + folder);
+    }
+
+    //Helper methods
+
+    private static double millis(Histogram latencies, double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1_000.0;
+    }
+
+    private static boolean reachable(HttpClient client, String baseUrl) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/login")).timeout(Duration.ofSeconds(5)).GET().build();
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,248 @@
+package com.dragand.spring_tutorial.webpatternsca3.loadtest;
+
+import com.dragand.spring_tutorial.webpatternsca3.persistence.SyntheticDataGenerator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One simulated user, running journeys one after the other until the test ends: log in, make sure there is a playlist
+ * of their own, then browse songs, search, rate and add songs to the playlist in a random order, and log out.
+ * Songs and search words are picked by Zipf popularity, like real traffic.
+ * <p>
+ * Runs on its own virtual thread and keeps its own session cookie, so many of them share one HTTP client.
+ */
+final class VirtualUser implements Runnable {
+
+    private static final Pattern SESSION_COOKIE = Pattern.compile("(JSESSIONID=[^;]+)");
+    private static final Pattern OWN_PLAYLIST = Pattern.compile("rename-form-(\\d+)");
+    private static final Pattern NEXT_PAGE = Pattern.compile("after=(\\d+)");
+
+    private final HttpClient client;
+    private final LoadTest.Scenario scenario;
+    private final LoadTest.Endpoints endpoints;
+    private final BooleanSupplier running;
+    private final SplittableRandom random;
+
+    private String sessionCookie;
+    private int playlistId;
+    private Integer nextSongsPage;
+
+    /**
+     * @param client - the HTTP client shared by all virtual users.
+     * @param scenario - what to send where.
+     * @param endpoints - the statistics to record into.
+     * @param running - false once the test is over.
+     * @param seed - the seed of this user's choices.
+     */
+    VirtualUser(HttpClient client, LoadTest.Scenario scenario, LoadTest.Endpoints endpoints, BooleanSupplier running, long seed) {
+        this.client = client;
+        this.scenario = scenario;
+        this.endpoints = endpoints;
+        this.running = running;
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public void run() {
+        while (running.getAsBoolean()) {
+            try {
+                journey();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    //Journey
+
+    private void journey() throws InterruptedException {
+        sessionCookie = null;
+        nextSongsPage = null;
+        if (!login()) {
+            // Back off instead of hammering the login, the failure has been recorded
+            Thread.sleep(1_000);
+            return;
+        }
+        if (!findOrCreatePlaylist()) {
+            return;
+        }
+        int actions = 5 + random.nextInt(11);
+        for (int i = 0; i < actions && running.getAsBoolean(); i++) {
+            int roll = random.nextInt(100);
+            if (roll < 35) {
+                browseSongs();
+            } else if (roll < 60) {
+                search();
+            } else if (roll < 85) {
+                rateSong();
+            } else if (roll < 95) {
+                addSongToPlaylist();
+            } else {
+                get(endpoints.playlists, "/playlists");
+            }
+        }
+        send(endpoints.logout, request("/logout").GET(), null, 200, 302);
+    }
+
+    private boolean login() throws InterruptedException {
+        int userId;
+        do {
+            userId = 1 + random.nextInt(scenario.accounts());
+        } while (!SyntheticDataGenerator.hasActiveSubscription(userId));
+        String userName = "user" + userId;
+        // A refused login renders the login page again with status 200
+        String page = send(endpoints.login, form("/login", "userName=" + userName + "&password=" + SyntheticDataGenerator.PASSWORD),
+                body -> body.contains("Invalid username or password") ? "invalid credentials" : null, 200);
+        return page != null && sessionCookie != null;
+    }
+
+    private boolean findOrCreatePlaylist() throws InterruptedException {
+        String page = get(endpoints.playlists, "/playlists");
+        if (page == null) {
+            return false;
+        }
+        playlistId = newestPlaylist(page);
+        if (playlistId > 0) {
+            return true;
+        }
+        String name = URLEncoder.encode("Load test " + random.nextInt(1_000_000), StandardCharsets.UTF_8);
+        if (send(endpoints.createPlaylist, request("/create-playlist?playlistName=" + name).GET(), null, 302) == null) {
+            return false;
+        }
+        page = get(endpoints.playlists, "/playlists");
+        playlistId = page == null ? 0 : newestPlaylist(page);
+        return playlistId > 0;
+    }
+
+    /**
+     * The first page, or the next page after the one seen last, like a user paging through the catalog.
+     */
+    private void browseSongs() throws InterruptedException {
+        String path = nextSongsPage != null && random.nextBoolean() ? "/songs?after=" + nextSongsPage : "/songs";
+        String page = get(endpoints.songs, path);
+        if (page != null) {
+            Matcher next = NEXT_PAGE.matcher(page);
+            nextSongsPage = next.find() ? Integer.valueOf(next.group(1)) : null;
+        }
+    }
+
+    private void search() throws InterruptedException {
+        String query = word();
+        if (random.nextInt(4) == 0) {
+            query += " " + word();
+        }
+        get(endpoints.search, "/search?search=" + URLEncoder.encode(query, StandardCharsets.UTF_8));
+    }
+
+    private void rateSong() throws InterruptedException {
+        send(endpoints.rateSong, form("/api/rateSong", "songId=" + song() + "&ratingValue=" + (1 + random.nextInt(5))), null, 200);
+    }
+
+    /**
+     * Popular songs are often in the playlist already, the 409 the page gets then is not an error.
+     */
+    private void addSongToPlaylist() throws InterruptedException {
+        send(endpoints.addToPlaylist, form("/api/playlists/songs", "playlistId=" + playlistId + "&songId=" + song()), null, 200, 409);
+    }
+
+    //Helper methods
+
+    private int song() {
+        return SyntheticDataGenerator.songOfRank(scenario.songRanks().sample(random) - 1, scenario.songs());
+    }
+
+    private String word() {
+        return SyntheticDataGenerator.WORDS.get(scenario.wordRanks().sample(random) - 1);
+    }
+
+    private static int newestPlaylist(String playlistsPage) {
+        int newest = 0;
+        Matcher own = OWN_PLAYLIST.matcher(playlistsPage);
+        while (own.find()) {
+            newest = Math.max(newest, Integer.parseInt(own.group(1)));
+        }
+        return newest;
+    }
+
+    /**
+     * A page view, a redirect means the session was lost.
+     */
+    private String get(EndpointStats endpoint, String path) throws InterruptedException {
+        return send(endpoint, request(path).GET(), null, 200);
+    }
+
+    private HttpRequest.Builder form(String path, String body) {
+        return request(path)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(scenario.baseUrl() + path))
+                .timeout(scenario.timeout());
+        if (sessionCookie != null) {
+            request.header("Cookie", sessionCookie);
+        }
+        return request;
+    }
+
+    /**
+     * Send a request and record its latency, and an error unless the status is one of the expected ones.
+     * @param check - finds an error in a body with an expected status, returns its cause or null. May be null.
+     * @return - the body of the response, null if it was an error.
+     */
+    private String send(EndpointStats endpoint, HttpRequest.Builder request, Function<String, String> check,
+                        int... expectedStatuses) throws InterruptedException {
+        pause();
+        long start = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        } catch (HttpTimeoutException e) {
+            endpoint.record(System.nanoTime() - start, "timeout");
+            return null;
+        } catch (IOException e) {
+            endpoint.record(System.nanoTime() - start, e.getClass().getSimpleName());
+            return null;
+        }
+        long nanos = System.nanoTime() - start;
+        response.headers().allValues("Set-Cookie").forEach(cookie -> {
+            Matcher session = SESSION_COOKIE.matcher(cookie);
+            if (session.find()) {
+                sessionCookie = session.group(1);
+            }
+        });
+        for (int expected : expectedStatuses) {
+            if (response.statusCode() == expected) {
+                String error = check == null ? null : check.apply(response.body());
+                endpoint.record(nanos, error);
+                return error == null ? response.body() : null;
+            }
+        }
+        String location = response.headers().firstValue("Location").orElse(null);
+        endpoint.record(nanos, location != null ? "HTTP " + response.statusCode() + " to " + URI.create(location).getPath()
+                : "HTTP " + response.statusCode());
+        return null;
+    }
+
+    private void pause() throws InterruptedException {
+        Duration thinkTime = scenario.thinkTime();
+        if (!thinkTime.isZero()) {
+            // Spread between half and one and a half times the think time, so users do not move in lockstep
+            Thread.sleep((long) (thinkTime.toMillis() * (0.5 + random.nextDouble())));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.dragand.spring_tutorial.webpatternsca3.loadtest;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks 1 to n with probability proportional to 1 / rank^exponent, so rank 1 is drawn the most, rank 2 about
+ * half as often with exponent 1, and so on. Models how queries and songs are requested: a few are very popular,
+ * most are rarely asked for.
+ * <p>
+ * Uses rejection-inversion (Hörmann and Derflinger), constant time and memory per draw whatever n is,
+ * so it also works for a catalog of 10M songs. Thread safe, the caller passes its own random numbers.
+ */
+final class ZipfSampler {
+
+    private final int n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+
+    /**
+     * @param n - the highest rank.
+     * @param exponent - the skew, larger than 0. About 1 for web traffic.
+     */
+    ZipfSampler(int n, double exponent) {
+        if (n < 1 || exponent <= 0) {
+            throw new IllegalArgumentException("n must be at least 1 and the exponent larger than 0");
+        }
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * @param random - the random numbers of the calling thread.
+     * @return - a rank from 1 to n.
+     */
+    int sample(SplittableRandom random) {
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) Math.max(1, Math.min(n, Math.round(x)));
+            // Accept right away when k is close to x, otherwise compare with the exact probability of k
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    //Helper methods
+
+    /**
+     * The unnormalized probability of x, 1 / x^exponent.
+     */
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    /**
+     * Integral of h from 1 to x.
+     */
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return expm1OverX((1 - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = Math.max(-1, x * (1 - exponent));
+        return Math.exp(log1pOverX(t) * x);
+    }
+
+    /**
+     * log(1 + x) / x, accurate near 0.
+     */
+    private static double log1pOverX(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    /**
+     * (e^x - 1) / x, accurate near 0.
+     */
+    private static double expm1OverX(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+}
@@ -2,8 +2,10 @@ package com.dragand.spring_tutorial.webpatternsca3;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class WebPatternsCa3Application {
 
     public static void main(String[] args) {
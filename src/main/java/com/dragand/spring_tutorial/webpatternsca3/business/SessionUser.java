@@ -0,0 +1,169 @@
+package com.dragand.spring_tutorial.webpatternsca3.business;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+
+/**
+ * The logged in user as kept in the session under {@code loggedInUser}.
+ * Holds only what is needed on every request: the id, the username and the subscription end date.
+ * Pages that need the rest of the user (names, password hash) load it with {@code AuthUtils.loadUser}.
+ * <p>
+ * Immutable, a change such as a renewed subscription puts a new instance in the session.
+ * Serialized as an int, a string and a long, so a persisted or replicated session stays small.
+ */
+public final class SessionUser implements Serializable {
+
+    /**
+     * Stored instead of an epoch second when the user has no subscription.
+     */
+    private static final long NO_SUBSCRIPTION = Long.MIN_VALUE;
+
+    private final int userID;
+    private final String userName;
+    private final long subscriptionEndEpochSecond;
+
+    private SessionUser(int userID, String userName, long subscriptionEndEpochSecond) {
+        this.userID = userID;
+        this.userName = Objects.requireNonNull(userName);
+        this.subscriptionEndEpochSecond = subscriptionEndEpochSecond;
+    }
+
+    /**
+     * Create the session principal of a user that has just logged in.
+     * @param user - the user as read from the database.
+     * @return - the principal.
+     */
+    public static SessionUser of(User user) {
+        return new SessionUser(user.getUserID(), user.getUserName(), toEpochSecond(user.getSubscriptionEndDate()));
+    }
+
+    public int getUserID() {
+        return userID;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * @return - the end of the subscription in the server's time zone, null if the user has no subscription.
+     */
+    public LocalDateTime getSubscriptionEndDate() {
+        if (subscriptionEndEpochSecond == NO_SUBSCRIPTION) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(subscriptionEndEpochSecond), ZoneId.systemDefault());
+    }
+
+    /**
+     * @param now - the current time.
+     * @return - true if the subscription ends after now.
+     */
+    public boolean hasActiveSubscription(Instant now) {
+        return subscriptionEndEpochSecond != NO_SUBSCRIPTION && subscriptionEndEpochSecond > now.getEpochSecond();
+    }
+
+    /**
+     * @param userName - the new username.
+     * @return - a copy with the new username.
+     */
+    public SessionUser withUserName(String userName) {
+        return new SessionUser(userID, userName, subscriptionEndEpochSecond);
+    }
+
+    /**
+     * @param subscriptionEndDate - the new end of the subscription, null for none.
+     * @return - a copy with the new subscription end date.
+     */
+    public SessionUser withSubscriptionEndDate(LocalDateTime subscriptionEndDate) {
+        return new SessionUser(userID, userName, toEpochSecond(subscriptionEndDate));
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime == null ? NO_SUBSCRIPTION : dateTime.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SessionUser other
+                && userID == other.userID
+                && subscriptionEndEpochSecond == other.subscriptionEndEpochSecond
+                && userName.equals(other.userName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userID, userName, subscriptionEndEpochSecond);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionUser(userID=" + userID + ", userName=" + userName + ", subscriptionEndDate=" + getSubscriptionEndDate() + ")";
+    }
+
+    //Serialization
+
+    /**
+     * Serialize the compact form instead of this object.
+     */
+    @Serial
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    /**
+     * A stream holding this class directly was not written by writeReplace, refuse it.
+     */
+    @Serial
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("SessionUser is read through its serialized form");
+    }
+
+    /**
+     * Writes the three fields with no field descriptors and turns back into a SessionUser when read.
+     */
+    private static final class SerializedForm implements Externalizable {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private SessionUser user;
+
+        /**
+         * Used by deserialization.
+         */
+        public SerializedForm() {
+        }
+
+        SerializedForm(SessionUser user) {
+            this.user = user;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeInt(user.userID);
+            out.writeUTF(user.userName);
+            out.writeLong(user.subscriptionEndEpochSecond);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            user = new SessionUser(in.readInt(), in.readUTF(), in.readLong());
+        }
+
+        @Serial
+        private Object readResolve() {
+            return user;
+        }
+    }
+}
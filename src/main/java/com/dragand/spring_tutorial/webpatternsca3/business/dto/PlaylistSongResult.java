@@ -0,0 +1,16 @@
+package com.dragand.spring_tutorial.webpatternsca3.business.dto;
+
+/**
+ * JSON outcome of adding a song to a playlist
+ * @param playlistId the playlist the song was added to
+ * @param songId the song that was added
+ * @param added true if the song is now in the playlist because of this request
+ * @param message a message to show to the user
+ */
+public record PlaylistSongResult(
+        int playlistId,
+        int songId,
+        boolean added,
+        String message
+) {
+}
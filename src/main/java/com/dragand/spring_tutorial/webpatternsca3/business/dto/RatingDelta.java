@@ -0,0 +1,14 @@
+package com.dragand.spring_tutorial.webpatternsca3.business.dto;
+
+/**
+ * Change to a song's rating aggregates that has not been written to the Songs table yet
+ * @param songID the song the ratings belong to
+ * @param countDelta change to ratingCount, +1 for a new rating, -1 for a removed one
+ * @param sumDelta change to ratingsSum, the new value for a new rating or the difference for a changed one
+ */
+public record RatingDelta(
+        int songID,
+        long countDelta,
+        long sumDelta
+) {
+}
@@ -0,0 +1,12 @@
+package com.dragand.spring_tutorial.webpatternsca3.business.dto;
+
+/**
+ * Outcome of an atomic rating upsert
+ * @param inserted true if a new rating row was created, false if the user's existing rating was replaced
+ * @param previousValue the rating value that was replaced, 0 when the rating was inserted
+ */
+public record RatingUpsertResult(
+        boolean inserted,
+        int previousValue
+) {
+}
@@ -0,0 +1,18 @@
+package com.dragand.spring_tutorial.webpatternsca3.business.dto;
+
+/**
+ * JSON outcome of rating a song, enough for the page to update the song card in place
+ * @param songId the rated song
+ * @param userRating the rating value the user gave, 0 if the rating was not saved
+ * @param ratingCount the number of ratings of the song including this one
+ * @param averageRating the average rating of the song including this one
+ * @param message a message to show to the user when the rating failed, null otherwise
+ */
+public record SongRatingResult(
+        int songId,
+        int userRating,
+        int ratingCount,
+        double averageRating,
+        String message
+) {
+}
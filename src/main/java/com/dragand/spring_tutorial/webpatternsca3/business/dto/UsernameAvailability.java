@@ -0,0 +1,14 @@
+package com.dragand.spring_tutorial.webpatternsca3.business.dto;
+
+/**
+ * JSON answer of the username availability check on the registration page
+ * @param userName the username that was checked
+ * @param available true if no user has the username
+ * @param checkedDatabase false if the username filter alone showed the name is free, true if a query was needed
+ */
+public record UsernameAvailability(
+        String userName,
+        boolean available,
+        boolean checkedDatabase
+) {
+}
@@ -0,0 +1,56 @@
+package com.dragand.spring_tutorial.webpatternsca3.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.FlashMap;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.support.RequestContextUtils;
+
+import java.io.IOException;
+
+/**
+ * Rejects requests without a logged in user before the controller runs, so no queries are made for them.
+ * Pages are redirected to the login page with an error message, JSON endpoints under {@code /api} get a 401.
+ * The paths it guards are set in {@link WebConfig}.
+ */
+@Slf4j
+public class AuthInterceptor implements HandlerInterceptor {
+
+    static final String SESSION_USER = "loggedInUser";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        HttpSession session = request.getSession(false);
+        if (session != null && session.getAttribute(SESSION_USER) != null) {
+            return true;
+        }
+        log.info("Rejected {} {} without a logged in user", request.getMethod(), request.getRequestURI());
+        reject(request, response, HttpServletResponse.SC_UNAUTHORIZED, "/login", "You must be logged in to use this feature");
+        return false;
+    }
+
+    /**
+     * Answer a rejected request: a status code for the JSON endpoints, a redirect with a flash message for pages.
+     * @param request - the rejected request.
+     * @param response - the response to write.
+     * @param status - the status for JSON endpoints.
+     * @param redirectTo - the page to send browsers to.
+     * @param message - the error shown on that page.
+     */
+    static void reject(HttpServletRequest request, HttpServletResponse response, int status, String redirectTo,
+                       String message) throws IOException {
+        if (request.getRequestURI().startsWith(request.getContextPath() + "/api/")) {
+            response.sendError(status, message);
+            return;
+        }
+        // Set up by the DispatcherServlet before the interceptors run
+        FlashMap flashMap = RequestContextUtils.getOutputFlashMap(request);
+        if (flashMap != null) {
+            flashMap.put("error", message);
+            RequestContextUtils.saveOutputFlashMap(redirectTo, request, response);
+        }
+        response.sendRedirect(request.getContextPath() + redirectTo);
+    }
+}
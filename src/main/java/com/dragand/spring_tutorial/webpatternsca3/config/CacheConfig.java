@@ -0,0 +1,25 @@
+package com.dragand.spring_tutorial.webpatternsca3.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Read-through cache for catalog lookups (songs, albums and artists by id or name).
+ * Backed by Caffeine, whose W-TinyLFU policy keeps frequently read entries when the cache is full.
+ * Size, TTL and statistics are set by spring.cache.caffeine.spec in application.properties,
+ * hit/miss/eviction counts are published as cache.* metrics.
+ * <p>
+ * Songs are evicted when they are deleted or their rating aggregates are flushed. Albums and artists have no write
+ * paths in the application, so changes made to them in the database directly are seen once the entries expire,
+ * up to the expireAfterWrite of the spec (10 minutes) later.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String SONGS = "songs";
+    public static final String ALBUMS = "albums";
+    public static final String ALBUMS_BY_NAME = "albumsByName";
+    public static final String ARTISTS = "artists";
+    public static final String ARTISTS_BY_NAME = "artistsByName";
+}
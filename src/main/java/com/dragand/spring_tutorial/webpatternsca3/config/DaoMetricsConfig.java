@@ -0,0 +1,54 @@
+package com.dragand.spring_tutorial.webpatternsca3.config;
+
+import com.dragand.spring_tutorial.webpatternsca3.persistence.DaoMetrics;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.InstrumentedDataSource;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.SlowQueryLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Puts {@link DaoMetrics} around every DAO bean and an {@link InstrumentedDataSource} around the data source,
+ * so the dao.* metrics are published with the others on /actuator/metrics and /actuator/prometheus
+ * and every statement goes through the {@link SlowQueryLog}, without any code in the DAOs.
+ * The DAOs and controllers get the instrumented beans, so they depend on the DAO interfaces, not on the implementations.
+ */
+@Configuration
+public class DaoMetricsConfig {
+
+    /**
+     * Static, a post processor is created before the other beans of its configuration. The registry and the
+     * slow query log are looked up on first use, so they are still set up by Spring Boot like every other bean.
+     */
+    @Bean
+    public static BeanPostProcessor daoMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry,
+                                                            ObjectProvider<SlowQueryLog> slowQueryLog) {
+        return new BeanPostProcessor() {
+            private DaoMetrics daoMetrics;
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource) {
+                    return new InstrumentedDataSource(dataSource, slowQueryLog.getIfAvailable());
+                }
+                for (Class<?> daoInterface : DaoMetrics.DAO_INTERFACES) {
+                    if (daoInterface.isInstance(bean)) {
+                        return instrument(bean, daoInterface);
+                    }
+                }
+                return bean;
+            }
+
+            private synchronized <T> T instrument(Object dao, Class<T> daoInterface) {
+                if (daoMetrics == null) {
+                    daoMetrics = new DaoMetrics(meterRegistry.getObject());
+                }
+                return daoMetrics.instrument(daoInterface.cast(dao), daoInterface);
+            }
+        };
+    }
+}
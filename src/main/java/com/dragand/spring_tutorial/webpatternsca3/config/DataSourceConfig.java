@@ -0,0 +1,24 @@
+package com.dragand.spring_tutorial.webpatternsca3.config;
+
+import com.dragand.spring_tutorial.webpatternsca3.persistence.DataSourceFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Persistence configuration. Provides the pooled data source that is injected into every DAO.
+ * Connection details come from database.properties, pool settings from spring.datasource.hikari.* in application.properties.
+ * Replaced by {@link EmbeddedDataSourceConfig} when the "embedded" profile is active.
+ */
+@Configuration
+@Profile("!embedded")
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource() {
+        return DataSourceFactory.createPooledDataSource(DataSourceFactory.DEFAULT_PROPERTIES);
+    }
+}
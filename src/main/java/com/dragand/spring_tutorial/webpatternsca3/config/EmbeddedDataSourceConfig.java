@@ -0,0 +1,43 @@
+package com.dragand.spring_tutorial.webpatternsca3.config;
+
+import com.dragand.spring_tutorial.webpatternsca3.persistence.DataSourceFactory;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.SchemaMigrator;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.SyntheticDataGenerator;
+import com.dragand.spring_tutorial.webpatternsca3.utils.Hash;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Persistence configuration of the "embedded" profile: an H2 database in MySQL mode stored under ./data,
+ * so the application and its load tests run without a MySQL server or a network.
+ * <p>
+ * Before the pool is handed to the DAOs the schema is migrated (db/embedded) and, on the first start,
+ * filled with synthetic data sized by embedded.data.* in application-embedded.properties. The passwords are hashed
+ * with the cost of {@link Hash}, so generated users are not rehashed on their first login.
+ */
+@Configuration
+@Profile("embedded")
+public class EmbeddedDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(Hash hash,
+                                       @Value("${embedded.data.seed:42}") long seed,
+                                       @Value("${embedded.data.songs:100000}") int songs,
+                                       @Value("${embedded.data.users:10000}") int users,
+                                       @Value("${embedded.data.ratings:1000000}") long ratings,
+                                       @Value("${embedded.data.playlists:5000}") int playlists) {
+        // Set up on a pool of its own, the returned one is configured by Spring and cannot be changed once started
+        try (HikariDataSource setup = DataSourceFactory.createPooledDataSource(DataSourceFactory.EMBEDDED_PROPERTIES)) {
+            SchemaMigrator.migrate(setup, SchemaMigrator.EMBEDDED_SCHEMA);
+            if (new SyntheticDataGenerator(seed, songs, users, ratings, playlists, hash.getCost()).generateIfEmpty(setup)) {
+                SyntheticDataGenerator.compact(setup);
+            }
+        }
+        return DataSourceFactory.createPooledDataSource(DataSourceFactory.EMBEDDED_PROPERTIES);
+    }
+}
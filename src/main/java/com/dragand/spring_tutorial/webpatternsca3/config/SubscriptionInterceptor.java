@@ -0,0 +1,40 @@
+package com.dragand.spring_tutorial.webpatternsca3.config;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.SessionUser;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.time.Clock;
+
+/**
+ * Rejects requests from users whose subscription has ended, before the controller runs.
+ * The check compares the subscription end kept in the session principal with the clock, no query is made.
+ * Pages are redirected to the subscription page, JSON endpoints under {@code /api} get a 403.
+ * Registered after {@link AuthInterceptor}, so a user is always logged in here. The paths it guards are set in {@link WebConfig}.
+ */
+@Slf4j
+public class SubscriptionInterceptor implements HandlerInterceptor {
+
+    private final Clock clock;
+
+    public SubscriptionInterceptor(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        HttpSession session = request.getSession(false);
+        SessionUser user = session == null ? null : (SessionUser) session.getAttribute(AuthInterceptor.SESSION_USER);
+        if (user != null && user.hasActiveSubscription(clock.instant())) {
+            return true;
+        }
+        log.info("Found user with an inactive subscription, redirecting to subscription page");
+        AuthInterceptor.reject(request, response, HttpServletResponse.SC_FORBIDDEN, "/subscription",
+                "You must have an active subscription to use this feature");
+        return false;
+    }
+}
@@ -8,14 +8,42 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.i18n.LocaleChangeInterceptor;
 import org.springframework.web.servlet.i18n.SessionLocaleResolver;
 
+import java.time.Clock;
 import java.util.Locale;
 
 /**
  * Web configuration class. Enables hidden HTTP method filter and sets up locale resolver and interceptor for i18n.
+ * Also guards the application's pages: a login is required for the paths in {@link #LOGIN_REQUIRED}
+ * and an active subscription for those in {@link #SUBSCRIPTION_REQUIRED}, checked before any controller runs.
  */
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    /**
+     * Paths that need a logged in user.
+     */
+    static final String[] LOGIN_REQUIRED = {
+            "/songs", "/search-songs", "/rateSong", "/search",
+            "/playlists", "/create-playlist", "/rename-playlist", "/addSongToPlaylist", "/removeSongFromPlaylist",
+            "/profile", "/subscription", "/subscription/**", "/api/**"
+    };
+
+    /**
+     * Paths under the ones above that are open to everyone, e.g. used by the registration page.
+     */
+    static final String[] PUBLIC = {
+            "/api/users/availability"
+    };
+
+    /**
+     * Paths that also need an active subscription. The profile and subscription pages stay open so the user can renew.
+     */
+    static final String[] SUBSCRIPTION_REQUIRED = {
+            "/songs", "/search-songs", "/rateSong", "/search",
+            "/playlists", "/create-playlist", "/rename-playlist", "/addSongToPlaylist", "/removeSongFromPlaylist",
+            "/api/**"
+    };
+
     @Bean
     public HiddenHttpMethodFilter hiddenHttpMethodFilter() {
         return new HiddenHttpMethodFilter();
@@ -38,5 +66,8 @@ public class WebConfig implements WebMvcConfigurer {
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         registry.addInterceptor(localeChangeInterceptor());
+        registry.addInterceptor(new AuthInterceptor()).addPathPatterns(LOGIN_REQUIRED).excludePathPatterns(PUBLIC);
+        registry.addInterceptor(new SubscriptionInterceptor(Clock.systemDefaultZone()))
+                .addPathPatterns(SUBSCRIPTION_REQUIRED).excludePathPatterns(PUBLIC);
     }
 }
@@ -1,10 +1,15 @@
 package com.dragand.spring_tutorial.webpatternsca3.controller;
 
 
+import com.dragand.spring_tutorial.webpatternsca3.utils.PasswordHashingBusyException;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
 
 import java.sql.SQLException;
 
@@ -26,6 +31,24 @@ public class GlobalExceptionHandler {
         return "error";
     }
 
+    /**
+     * Handles PasswordHashingBusyException, thrown by login, registration and profile updates when too many
+     * passwords are being hashed. Answered with a 503 so the client retries later.
+     * @param model Model
+     * @param response the response to add the Retry-After header to
+     * @param ex PasswordHashingBusyException
+     * @return error page
+     */
+    @ExceptionHandler(value = PasswordHashingBusyException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public String passwordHashingBusyHandler(Model model, HttpServletResponse response, PasswordHashingBusyException ex) {
+        log.warn("Password hashing busy: {}", ex.getMessage());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        model.addAttribute("errType", "PasswordHashingBusyException");
+        model.addAttribute("errMsg", "Too many sign-ins are in progress, please try again in a moment.");
+        return "error";
+    }
+
     /**
      * Handles any exception
      * @param model Model
@@ -1,11 +1,18 @@
 package com.dragand.spring_tutorial.webpatternsca3.controller;
 
+import com.dragand.spring_tutorial.webpatternsca3.utils.AuthUtils;
+import jakarta.servlet.http.HttpSession;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
 @Controller
+@RequiredArgsConstructor
 public class IndexController {
 
+    private final AuthUtils authUtils;
+
     @GetMapping("/")
     public String home() {
         return "index";
@@ -22,7 +29,9 @@ public class IndexController {
     }
 
     @GetMapping("/profile")
-    public String profile() {
+    public String profile(HttpSession session, Model model) {
+        // The session only keeps the id and username, load the rest of the user for the form
+        model.addAttribute("user", authUtils.loadUser(session));
         return "profile";
     }
 
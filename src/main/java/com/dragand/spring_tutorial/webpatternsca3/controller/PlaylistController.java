@@ -1,27 +1,29 @@
 package com.dragand.spring_tutorial.webpatternsca3.controller;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Playlist;
-import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
 import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.CatalogSearchIndex;
 import com.dragand.spring_tutorial.webpatternsca3.persistence.PlaylistDAO;
-import com.dragand.spring_tutorial.webpatternsca3.persistence.PlaylistSongsDaoImpl;
-import com.dragand.spring_tutorial.webpatternsca3.business.User;
-import com.dragand.spring_tutorial.webpatternsca3.persistence.RatingDAO;
-import com.dragand.spring_tutorial.webpatternsca3.utils.AuthUtils;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.PlaylistSongsDAO;
+import com.dragand.spring_tutorial.webpatternsca3.business.SessionUser;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.PlaylistSongResult;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.SongRatingAggregator;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.UserRatingsSnapshots;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import java.io.IOException;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -29,9 +31,10 @@ import java.util.stream.Collectors;
 public class PlaylistController {
 
     private final PlaylistDAO playlistDao;
-    private final PlaylistSongsDaoImpl playlistSongsDao;
-    private final AuthUtils authUtils;
-    private final RatingDAO ratingDao;
+    private final PlaylistSongsDAO playlistSongsDao;
+    private final UserRatingsSnapshots userRatingsSnapshots;
+    private final SongRatingAggregator ratingAggregator;
+    private final CatalogSearchIndex searchIndex;
 
     @GetMapping("/create-playlist")
     public String createPlaylist(
@@ -40,20 +43,24 @@ public class PlaylistController {
             HttpSession session,
             RedirectAttributes redirectAttributes
     ) {
-        User user = (User) session.getAttribute("loggedInUser");
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
         String currentUser = user.getUserName();
         int currentUserId = user.getUserID();
         if (playlistName != null && !playlistName.trim().isEmpty()) {
             boolean publicPlaylist = isPublic != null && isPublic.equals("on");
-            playlistDao.createPlaylist(Playlist.builder()
+            Playlist playlist = Playlist.builder()
                     .name(playlistName)
                     .isPublic(publicPlaylist)
                     .userId(currentUserId)
-                    .build());
+                    .build();
+            int playlistId = playlistDao.createPlaylist(playlist);
+            if (playlistId > 0) {
+                playlist.setPlaylistId(playlistId);
+                searchIndex.playlistSaved(playlist);
+            }
         } else {
             redirectAttributes.addFlashAttribute("error", "Playlist name cannot be empty");
         }
-        getUserRatings(session, redirectAttributes);
         return "redirect:/playlists";
     }
 
@@ -66,7 +73,7 @@ public class PlaylistController {
             Model model) {
 
         // Fetch user playlists
-        User user = (User) session.getAttribute("loggedInUser");
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
         String currentUser = user.getUserName();
         List<Playlist> userPlaylists;
         if (userQuery != null && !userQuery.trim().isEmpty()) {
@@ -97,7 +104,7 @@ public class PlaylistController {
                 selectedPlaylistId = null;
             } else {
                 // View songs in the selected playlist
-                songs = playlistSongsDao.getSongsInPlaylistByPlaylistId(playlistId);
+                songs = ratingAggregator.withPendingChanges(playlistSongsDao.getSongsInPlaylistByPlaylistId(playlistId));
                 session.setAttribute("selectedPlaylistId", playlistId);
                 selectedPlaylistId = playlistId;
             }
@@ -105,6 +112,7 @@ public class PlaylistController {
         session.setAttribute("currentPage", "playlists");
         // Add data to the model
         model.addAttribute("userPlaylists", userPlaylists);
+        model.addAttribute("playlistSongs", playlistSongsDao.getSongIdsInUserPlaylists(user.getUserID()));
         model.addAttribute("publicPlaylists", publicPlaylists);
         model.addAttribute("songs", songs); // Add the songs to the model
         model.addAttribute("selectedPlaylistId", selectedPlaylistId); // Add selectedPlaylistId to the model
@@ -119,11 +127,12 @@ public class PlaylistController {
             RedirectAttributes redirectAttributes
     ) {
         if (playlistId != null && newName != null && !newName.trim().isEmpty()) {
-            playlistDao.renamePlaylist(playlistId, newName);
+            if (playlistDao.renamePlaylist(playlistId, newName)) {
+                searchIndex.playlistRenamed(playlistId, newName);
+            }
         } else {
             redirectAttributes.addFlashAttribute("error", "Playlist name cannot be empty");
         }
-        getUserRatings(session, redirectAttributes);
         return "redirect:/playlists";
     }
 
@@ -142,12 +151,6 @@ public class PlaylistController {
             HttpSession session,
             Model model
     ) {
-        try {
-            authUtils.authenticateUser(session, model);
-        } catch (IOException e) {
-            log.error("Failed to authenticate user", e);
-        }
-
         boolean result = playlistSongsDao.addSongToPlaylist(playlistId, songId);
 
         if (result) {
@@ -155,10 +158,50 @@ public class PlaylistController {
         } else {
             model.addAttribute("error", "Failed to add song to playlist");
         }
-        getUserRatings(session, model);
         return "redirect:/playlists";
     }
 
+    /**
+     * Add a song to one of the user's playlists without reloading the page. Used by the add to playlist menu
+     * that is rendered once per page, so the page does not need a form for every song and playlist pair.
+     * @param playlistId the playlist ID
+     * @param songId the song ID
+     * @param session the session
+     * @return the outcome as JSON, 401 if not logged in, 403 if the playlist is not the user's,
+     * 409 if the song is already in the playlist
+     */
+    @PostMapping(value = "/api/playlists/songs", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<PlaylistSongResult> addSongToPlaylistJson(
+            @RequestParam(value = "playlistId") int playlistId,
+            @RequestParam(value = "songId") int songId,
+            HttpSession session
+    ) {
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new PlaylistSongResult(playlistId, songId, false, "You must be logged in to use this feature"));
+        }
+        Playlist playlist = playlistDao.getPlaylistById(playlistId);
+        if (playlist == null || playlist.getUserId() != user.getUserID()) {
+            log.warn("User {} attempted to add song {} to playlist {} they do not own", user.getUserName(), songId, playlistId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(new PlaylistSongResult(playlistId, songId, false, "You can only add songs to your own playlists"));
+        }
+
+        if (playlistSongsDao.addSongToPlaylist(playlistId, songId)) {
+            log.info("User {} added song {} to playlist {}", user.getUserName(), songId, playlistId);
+            return ResponseEntity.ok(new PlaylistSongResult(playlistId, songId, true, "Song added to " + playlist.getName()));
+        }
+        // The insert also fails when the song is already there, tell the two cases apart only when it failed
+        if (playlistSongsDao.doesSongExistInPlaylist(songId, playlistId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new PlaylistSongResult(playlistId, songId, false, "Song is already in " + playlist.getName()));
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new PlaylistSongResult(playlistId, songId, false, "Failed to add song to playlist"));
+    }
+
     /**
      * Remove a song from us playlist
      * @param playlistId the playlist ID
@@ -174,12 +217,6 @@ public class PlaylistController {
             HttpSession session,
             Model model
     ) {
-        try {
-            authUtils.authenticateUser(session, model);
-        } catch (IOException e) {
-            log.error("Failed to authenticate user", e);
-        }
-
         boolean result = playlistSongsDao.removeSongFromPlaylist(playlistId, songId);
 
         if (result) {
@@ -187,24 +224,15 @@ public class PlaylistController {
         } else {
             model.addAttribute("error", "Failed to remove song from playlist");
         }
-        getUserRatings(session, model);
         return "redirect:/playlists";
     }
 
 
     private String getUserRatings(HttpSession session, Model model) {
-        User user = (User) session.getAttribute("loggedInUser");
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
         if (user != null) {
-            List<Rating> userRatings = ratingDao.getRatingsByUserID(user.getUserID());
-
-            // Create a map of Song ID to Rating Value for the current user
-            Map<Integer, Integer> userRatingsMap = userRatings.stream()
-                    .collect(Collectors.toMap(Rating::getSongID, Rating::getRatingValue));
-
-            // Add a map of Song ID to Rating Value for the current user
-            model.addAttribute("userRatings", userRatingsMap);
-
-            log.info("Fetched {} ratings for user {}", userRatings.size(), user.getUserName());
+            // Map of Song ID to Rating Value for the current user, read from the database only on first use
+            model.addAttribute("userRatings", userRatingsSnapshots.getRatings(user.getUserID()));
         }
         return "playlists";
     }
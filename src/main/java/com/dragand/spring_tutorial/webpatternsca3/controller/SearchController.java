@@ -1,28 +1,32 @@
 package com.dragand.spring_tutorial.webpatternsca3.controller;
 
 
+import com.dragand.spring_tutorial.webpatternsca3.business.Album;
+import com.dragand.spring_tutorial.webpatternsca3.business.Artist;
 import com.dragand.spring_tutorial.webpatternsca3.business.Playlist;
-import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
+import com.dragand.spring_tutorial.webpatternsca3.business.SessionUser;
 import com.dragand.spring_tutorial.webpatternsca3.business.Song;
-import com.dragand.spring_tutorial.webpatternsca3.business.User;
 import com.dragand.spring_tutorial.webpatternsca3.business.dto.SearchResponse;
 import com.dragand.spring_tutorial.webpatternsca3.persistence.*;
-import com.dragand.spring_tutorial.webpatternsca3.utils.AuthUtils;
+import com.dragand.spring_tutorial.webpatternsca3.utils.ParallelTasks;
+import com.dragand.spring_tutorial.webpatternsca3.utils.collections.IntHashSet;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
 @RequiredArgsConstructor
 @Controller
@@ -30,76 +34,76 @@ public class SearchController {
 
 
     private static final Logger log = LoggerFactory.getLogger(SearchController.class);
-    private final AlbumDAO albumDao;
-    private final ArtistDAO artistDao;
-    private final SongDAO songDao;
     private final PlaylistDAO playlistDao;
-    private final PlaylistSongsDaoImpl playlistSongsDao;
-    private final AuthUtils authUtils;
-    private final RatingDAO ratingDao;
+    private final PlaylistSongsDAO playlistSongsDao;
+    private final UserRatingsSnapshots userRatingsSnapshots;
+    private final SongRatingAggregator ratingAggregator;
+    private final CatalogSearchIndex searchIndex;
+
+    @Value("${search.deadline:2s}")
+    private Duration searchDeadline;
 
     /**
      * Search for songs, artists, albums, and playlists
      * @param query the search query
      * @param model the model to add the search results to
-     * @param session the session to check if the user is logged in
-     * @param redirectAttributes the redirect attributes to add errors to
+     * @param session the session of the logged in user
      * @return the search page with the search results
      */
     @GetMapping("/search")
     public String search(
             @RequestParam(value = "search", required = false) String query,
             Model model,
-            HttpSession session,
-            RedirectAttributes redirectAttributes
+            HttpSession session
     ) {
-
-        try {
-            authUtils.authenticateUser(session, model);
-        } catch (IOException e) {
-            log.error("Error authenticating user", e);
-        }
-        String subscriptionCheckResult = authUtils.isSubscriptionActive(session, redirectAttributes);
-        if (subscriptionCheckResult != null) {
-            return subscriptionCheckResult;
-        }
-
-
+        // Login and subscription are checked by the interceptors registered in WebConfig
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
         if (query != null && !query.trim().isEmpty()) {
-            // Perform search in the database and get results
-            SearchResponse searchResponse = new SearchResponse(
-                    songDao.getAllSongsByTitle(query),
-                    artistDao.getAllArtistsWhereNameLike(query),
-                    albumDao.getAllAlbumsWhereNameLike(query),
-                    playlistDao.getAllPlaylistbyName(query, true)
-
-            );
-
-            model.addAttribute("searchResponse", searchResponse);
+            // The four searches and the user's ratings are independent, run them at the same time
+            try (ParallelTasks tasks = new ParallelTasks()) {
+                Future<List<Song>> songs = tasks.fork(() -> searchIndex.searchSongs(query));
+                Future<List<Artist>> artists = tasks.fork(() -> searchIndex.searchArtists(query));
+                Future<List<Album>> albums = tasks.fork(() -> searchIndex.searchAlbums(query));
+                Future<List<Playlist>> playlists = tasks.fork(() -> searchIndex.searchPlaylists(query));
+                Future<Map<Integer, Integer>> ratings = user != null ? tasks.fork(() -> userRatingsSnapshots.getRatings(user.getUserID())) : null;
+                // For the add to playlist menu of the song results
+                Future<List<Playlist>> userPlaylists = user != null ? tasks.fork(() -> playlistDao.getPlaylistByUserID(user.getUserID())) : null;
+                Future<Map<Integer, IntHashSet>> playlistSongs = user != null ? tasks.fork(() -> playlistSongsDao.getSongIdsInUserPlaylists(user.getUserID())) : null;
+                tasks.join(searchDeadline);
+
+                SearchResponse searchResponse = new SearchResponse(
+                        ratingAggregator.withPendingChanges(songs.resultNow()),
+                        artists.resultNow(),
+                        albums.resultNow(),
+                        playlists.resultNow()
+                );
+                model.addAttribute("searchResponse", searchResponse);
+                if (user != null) {
+                    model.addAttribute("userRatings", ratings.resultNow());
+                    model.addAttribute("userPlaylists", userPlaylists.resultNow());
+                    model.addAttribute("playlistSongs", playlistSongs.resultNow());
+                }
+                log.info("Search results for query '{}': {}", query, searchResponse);
+            } catch (TimeoutException e) {
+                log.warn("Search for '{}' did not finish within {} ms", query, searchDeadline.toMillis());
+                model.addAttribute("searchResponse", new SearchResponse(null, null, null, null));
+                model.addAttribute("searchError", "search.error.timeout");
+            } catch (ExecutionException e) {
+                log.error("Search for '{}' failed", query, e.getCause());
+                model.addAttribute("searchResponse", new SearchResponse(null, null, null, null));
+                model.addAttribute("searchError", "search.error.failed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                model.addAttribute("searchResponse", new SearchResponse(null, null, null, null));
+            }
             model.addAttribute("searchQuery", query); // Store the query in the model to display on the results page
-            log.info("Search results for query '{}': {}", query, searchResponse);
         } else {
             model.addAttribute("searchResponse", new SearchResponse(null, null, null, null)); // Empty response if no query is provided
+            if (user != null) {
+                model.addAttribute("userRatings", userRatingsSnapshots.getRatings(user.getUserID()));
+            }
         }
-        getUserRatings(session, model);
         session.setAttribute("currentPage", "search");
         return "search"; // Return to the search.html page
     }
-
-    private String getUserRatings(HttpSession session, Model model) {
-        User user = (User) session.getAttribute("loggedInUser");
-        if (user != null) {
-            List<Rating> userRatings = ratingDao.getRatingsByUserID(user.getUserID());
-
-            // Create a map of Song ID to Rating Value for the current user
-            Map<Integer, Integer> userRatingsMap = userRatings.stream()
-                    .collect(Collectors.toMap(Rating::getSongID, Rating::getRatingValue));
-
-            // Add a map of Song ID to Rating Value for the current user
-            model.addAttribute("userRatings", userRatingsMap);
-
-            log.info("Fetched {} ratings for user {}", userRatings.size(), user.getUserName());
-        }
-        return "songs";
-    }
-}
\ No newline at end of file
+}
@@ -1,26 +1,33 @@
 package com.dragand.spring_tutorial.webpatternsca3.controller;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Playlist;
-import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
+import com.dragand.spring_tutorial.webpatternsca3.business.SessionUser;
 import com.dragand.spring_tutorial.webpatternsca3.business.Song;
-import com.dragand.spring_tutorial.webpatternsca3.business.User;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.SongRatingResult;
 import com.dragand.spring_tutorial.webpatternsca3.persistence.PlaylistDAO;
-import com.dragand.spring_tutorial.webpatternsca3.persistence.RatingDAO;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.PlaylistSongsDAO;
 import com.dragand.spring_tutorial.webpatternsca3.persistence.SongDAO;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.SongRatingAggregator;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.SongSort;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.UserRatingsSnapshots;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 @RequiredArgsConstructor
 @Controller
@@ -29,14 +36,24 @@ public class SongController {
     private static final Logger log = LoggerFactory.getLogger(SongController.class);
     private final SongDAO songDao;
     private final PlaylistDAO playlistDao;
-    private final RatingDAO ratingDao;
+    private final PlaylistSongsDAO playlistSongsDao;
+    private final UserRatingsSnapshots userRatingsSnapshots;
+    private final SongRatingAggregator ratingAggregator;
 
-    // This method displays all songs
+    @Value("${songs.page-size:50}")
+    private int pageSize;
+
+    // This method displays one page of songs, next/prev links carry the id of the last/first song shown
     @GetMapping("/songs")
-    public String viewAllSongs(Model model, HttpSession session) {
+    public String viewAllSongs(
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "after", required = false) Integer after,
+            @RequestParam(value = "before", required = false) Integer before,
+            Model model,
+            HttpSession session
+    ) {
 
-        List<Song> songs = songDao.getAllSongs();
-        model.addAttribute("songs", songs);
+        addSongPage(SongSort.fromParam(sort), after, before, model, session);
         getUsersPlaylists(session, model);
         getUserRatings(session, model);
         session.setAttribute("currentPage", "songs");
@@ -51,15 +68,14 @@ public class SongController {
             HttpSession session
     ) {
         if (query != null && !query.trim().isEmpty()) {
-            List<Song> songs = songDao.getAllSongsByTitle(query); // Fetch songs by title
+            List<Song> songs = ratingAggregator.withPendingChanges(songDao.getAllSongsByTitle(query)); // Fetch songs by title
 
             model.addAttribute("songs", songs);
             model.addAttribute("searchQuery", query); // Store the query in the model
             getUsersPlaylists(session, model);
             getUserRatings(session, model);
         } else {
-            List<Song> songs = songDao.getAllSongs(); // Fetch all songs if no query
-            model.addAttribute("songs", songs);
+            addSongPage(SongSort.ID, null, null, model, session); // Fetch the first page of songs if no query
             getUsersPlaylists(session, model);
             getUserRatings(session, model);
         }
@@ -73,20 +89,22 @@ public class SongController {
             HttpSession session,
             Model model
     ) {
-        User user = (User) session.getAttribute("loggedInUser");
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
         if (user == null) {
             log.warn("Unauthenticated user attempted to rate a song.");
             return "redirect:/login";
         }
 
-        boolean success = ratingDao.addOrUpdateRating("song", songId, user.getUserID(), ratingValue);
+        // Saves the rating and records the change to the song's aggregates
+        boolean success = ratingAggregator.rateSong(songId, user.getUserID(), ratingValue) != null;
         if (success) {
+            userRatingsSnapshots.recordRating(user.getUserID(), songId, ratingValue);
             log.info("User {} rated song {} with value {}", user.getUserName(), songId, ratingValue);
         } else {
             log.error("Failed to submit rating for song {} by user {}", songId, user.getUserName());
         }
         if(session.getAttribute("currentPage").equals("songs")) {
-            return "redirect:/songs";
+            return "redirect:/songs" + Objects.toString(session.getAttribute("currentSongsPage"), "");
         } else if(session.getAttribute("currentPage").equals("search")) {
             return "redirect:/search";
         } else if(session.getAttribute("currentPage").equals("playlists")) {
@@ -97,6 +115,89 @@ public class SongController {
     }
 
 
+    /**
+     * Rate a song without reloading the page, used by the rating menu of the song cards when JavaScript is available.
+     * Costs the rating write only: the song's aggregates come from the song cache with the unflushed changes applied,
+     * so only a song that is not cached is read, by its id.
+     * @param songId the song to rate
+     * @param ratingValue the rating from 1 to 5
+     * @param session the session to get the user from
+     * @return the user's rating and the new aggregates of the song as JSON, 401 if not logged in, 400 for a bad value
+     */
+    @PostMapping(value = "/api/rateSong", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<SongRatingResult> rateSongJson(
+            @RequestParam("songId") int songId,
+            @RequestParam("ratingValue") int ratingValue,
+            HttpSession session
+    ) {
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
+        if (user == null) {
+            log.warn("Unauthenticated user attempted to rate a song.");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new SongRatingResult(songId, 0, 0, 0, "You must be logged in to use this feature"));
+        }
+        if (ratingValue < 1 || ratingValue > 5) {
+            return ResponseEntity.badRequest()
+                    .body(new SongRatingResult(songId, 0, 0, 0, "Rating must be between 1 and 5"));
+        }
+
+        if (ratingAggregator.rateSong(songId, user.getUserID(), ratingValue) == null) {
+            log.error("Failed to submit rating for song {} by user {}", songId, user.getUserName());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new SongRatingResult(songId, 0, 0, 0, "Failed to submit rating"));
+        }
+        userRatingsSnapshots.recordRating(user.getUserID(), songId, ratingValue);
+        log.info("User {} rated song {} with value {}", user.getUserName(), songId, ratingValue);
+
+        Song song = ratingAggregator.withPendingChanges(songDao.findSongById(songId));
+        if (song == null) {
+            return ResponseEntity.ok(new SongRatingResult(songId, ratingValue, 0, 0, null));
+        }
+        return ResponseEntity.ok(new SongRatingResult(songId, ratingValue, song.getRatingCount(), song.getAverageRating(), null));
+    }
+
+
+    /**
+     * Load one page of the catalog and the cursors of the pages around it.
+     * One extra song is read to know whether there is another page in the reading direction.
+     * @param sort the order of the catalog
+     * @param after id of the last song of the previous page, null if not paging forward
+     * @param before id of the first song of the next page, null if not paging backward
+     * @param model the model to add the songs and cursors to
+     * @param session the session to remember the page in, so rating a song returns to it
+     */
+    private void addSongPage(SongSort sort, Integer after, Integer before, Model model, HttpSession session) {
+        List<Song> songs;
+        boolean hasPrevious;
+        boolean hasNext;
+        if (before != null) {
+            songs = songDao.getSongsBefore(sort, before, pageSize + 1);
+            hasPrevious = songs.size() > pageSize;
+            if (hasPrevious) {
+                songs = songs.subList(1, songs.size());
+            }
+            hasNext = true;
+        } else {
+            int cursor = after == null ? 0 : after;
+            songs = songDao.getSongsAfter(sort, cursor, pageSize + 1);
+            hasNext = songs.size() > pageSize;
+            if (hasNext) {
+                songs = songs.subList(0, pageSize);
+            }
+            hasPrevious = cursor > 0;
+        }
+
+        String sortParam = sort.name().toLowerCase();
+        model.addAttribute("songs", ratingAggregator.withPendingChanges(songs));
+        model.addAttribute("sort", sortParam);
+        model.addAttribute("prevCursor", hasPrevious && !songs.isEmpty() ? songs.get(0).getSongID() : null);
+        model.addAttribute("nextCursor", hasNext && !songs.isEmpty() ? songs.get(songs.size() - 1).getSongID() : null);
+
+        String cursorParam = before != null ? "&before=" + before : after != null ? "&after=" + after : "";
+        session.setAttribute("currentSongsPage", "?sort=" + sortParam + cursorParam);
+    }
+
     /**
      * Get the playlists for the logged in user. Used to display the playlists on the songs page to be eble to add songs to them
      * @param session the session to get the user from
@@ -105,12 +206,14 @@ public class SongController {
      */
     public String getUsersPlaylists(HttpSession session, Model model) {
 
-        User user = (User) session.getAttribute("loggedInUser");
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
 
         List<Playlist> userPlaylists = playlistDao.getPlaylistByUserID(user.getUserID());
         log.info("Fetched {} playlists for user {}", userPlaylists.size(), user.getUserName());
 
         model.addAttribute("userPlaylists", userPlaylists);
+        // Song ids per playlist, so the add to playlist menu can mark the playlists a song is already in
+        model.addAttribute("playlistSongs", playlistSongsDao.getSongIdsInUserPlaylists(user.getUserID()));
         return "songs";
 
     }
@@ -124,18 +227,10 @@ public class SongController {
 
     // Get user ratings
     private String getUserRatings(HttpSession session, Model model) {
-        User user = (User) session.getAttribute("loggedInUser");
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
         if (user != null) {
-            List<Rating> userRatings = ratingDao.getRatingsByUserID(user.getUserID());
-
-            // Create a map of Song ID to Rating Value for the current user
-            Map<Integer, Integer> userRatingsMap = userRatings.stream()
-                    .collect(Collectors.toMap(Rating::getSongID, Rating::getRatingValue));
-
-            // Add a map of Song ID to Rating Value for the current user
-            model.addAttribute("userRatings", userRatingsMap);
-
-            log.info("Fetched {} ratings for user {}", userRatings.size(), user.getUserName());
+            // Map of Song ID to Rating Value for the current user, read from the database only on first use
+            model.addAttribute("userRatings", userRatingsSnapshots.getRatings(user.getUserID()));
         }
         return "songs";
     }
@@ -1,6 +1,6 @@
 package com.dragand.spring_tutorial.webpatternsca3.controller;
 
-import com.dragand.spring_tutorial.webpatternsca3.business.User;
+import com.dragand.spring_tutorial.webpatternsca3.business.SessionUser;
 import com.dragand.spring_tutorial.webpatternsca3.persistence.UserDAO;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
@@ -23,7 +23,7 @@ public class SubscriptionController {
     // Display the subscription page
     @GetMapping("/subscription")
     public String getSubscriptionPage(HttpSession session, Model model) {
-        User loggedInUser = (User) session.getAttribute("loggedInUser");
+        SessionUser loggedInUser = (SessionUser) session.getAttribute("loggedInUser");
         if (loggedInUser == null) {
             model.addAttribute("error", "You must be logged in to view your subscription.");
             return "login"; // Redirect to login if not authenticated
@@ -41,7 +41,7 @@ public class SubscriptionController {
             @RequestParam String cardNumber,
             HttpSession session,
             Model model) {
-        User loggedInUser = (User) session.getAttribute("loggedInUser");
+        SessionUser loggedInUser = (SessionUser) session.getAttribute("loggedInUser");
         if (loggedInUser == null) {
             model.addAttribute("error", "You must be logged in to renew your subscription.");
             return "login"; // Redirect to login if not authenticated
@@ -70,7 +70,7 @@ public class SubscriptionController {
             // Update in the database
             boolean success = userDAO.updateSubscriptionEndDate(loggedInUser.getUserID(), newEndDate);
             if (success) {
-                session.setAttribute("loggedInUser", loggedInUser); // Update session data
+                session.setAttribute("loggedInUser", loggedInUser.withSubscriptionEndDate(newEndDate.atStartOfDay())); // Update session data
                 model.addAttribute("message", "Subscription extended successfully until: " + newEndDate);
             } else {
                 model.addAttribute("error", "Failed to extend subscription. Please try again.");
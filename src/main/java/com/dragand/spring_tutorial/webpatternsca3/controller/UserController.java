@@ -1,19 +1,29 @@
 package com.dragand.spring_tutorial.webpatternsca3.controller;
 
+import com.dragand.spring_tutorial.webpatternsca3.business.SessionUser;
 import com.dragand.spring_tutorial.webpatternsca3.business.User;
 import com.dragand.spring_tutorial.webpatternsca3.business.dto.UserUpdateRequest;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.UsernameAvailability;
 import com.dragand.spring_tutorial.webpatternsca3.persistence.UserDAO;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.UserRatingsSnapshots;
+import com.dragand.spring_tutorial.webpatternsca3.persistence.UsernameFilter;
 import com.dragand.spring_tutorial.webpatternsca3.utils.AuthUtils;
 import com.dragand.spring_tutorial.webpatternsca3.utils.Hash;
+import com.dragand.spring_tutorial.webpatternsca3.utils.LoginRateLimiter;
+import com.dragand.spring_tutorial.webpatternsca3.utils.PasswordHashingBusyException;
 import com.dragand.spring_tutorial.webpatternsca3.utils.RegexUtils;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.IOException;
 import java.time.LocalDateTime;
 
 @RequiredArgsConstructor
@@ -27,15 +37,20 @@ public class UserController {
 
     private final UserDAO userDAO;
     private final Hash hashUtil;
+    private final LoginRateLimiter loginRateLimiter;
     private final AuthUtils authUtils;
     private final RegexUtils regexUtils;
+    private final UserRatingsSnapshots userRatingsSnapshots;
+    private final UsernameFilter usernameFilter;
 
     @PostMapping("/login")
     public String login(
             @RequestParam String userName,
             @RequestParam String password,
             Model model,
-            HttpSession session) {
+            HttpSession session,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         // Backend Validation
         if (userName == null || userName.trim().length() < 3) {
             model.addAttribute("error", "Invalid username or password.");
@@ -46,9 +61,19 @@ public class UserController {
             return "login";
         }
 
+        // Refuse over-limit attempts before the user lookup and the bcrypt verification
+        if (!loginRateLimiter.tryAcquire(userName, request.getRemoteAddr())) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            model.addAttribute("error", "Too many login attempts. Please try again later.");
+            return "login";
+        }
+
         User user = userDAO.getUserByName(userName.trim());
         if (user != null && hashUtil.checkPasswordWithUsername(password.trim(), user.getPassword())) {
-            session.setAttribute("loggedInUser", user);
+            loginRateLimiter.loginSucceeded(userName);
+            rehashIfNeeded(user, password.trim());
+            // Only the id, username and subscription end are kept in the session
+            session.setAttribute("loggedInUser", SessionUser.of(user));
             log.info("User with ID " + user.getUserID() + " logged in successfully.");
             return "index"; // Redirect to home page
         } else {
@@ -73,6 +98,12 @@ public class UserController {
             @RequestParam String cvv,
             Model model
     ) {
+        // Checked before the password is hashed, most free names need no query
+        if (!usernameFilter.isDefinitelyFree(userName) && userDAO.existsbyUserName(userName)) {
+            model.addAttribute("error", "This username is already taken.");
+            return "register";
+        }
+
         // Create a new User object
         User user = new User(firstName, lastName, userName, hashUtil.hashPassword(password), 0, LocalDateTime.now(), LocalDateTime.now().plusYears(1));
 
@@ -82,6 +113,7 @@ public class UserController {
         boolean isRegistered = userDAO.addUser(user);
 
         if (isRegistered) {
+            usernameFilter.userSaved(userName);
 
             model.addAttribute("message", "Registration successful! Your subscription ends on " + user.getSubscriptionEndDate());
             return "login"; // Redirect to the login page
@@ -91,11 +123,33 @@ public class UserController {
         }
     }
 
+    /**
+     * Check whether a username is free while it is typed on the registration page.
+     * Names the username filter has never seen are reported free without a query.
+     * @param userName the username to check
+     * @return the availability as JSON, 400 if the name is not a valid username
+     */
+    @GetMapping(value = "/api/users/availability", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<UsernameAvailability> checkUsernameAvailability(@RequestParam String userName) {
+        if (!regexUtils.isValidUserName(userName)) {
+            return ResponseEntity.badRequest().body(new UsernameAvailability(userName, false, false));
+        }
+        if (usernameFilter.isDefinitelyFree(userName)) {
+            return ResponseEntity.ok(new UsernameAvailability(userName, true, false));
+        }
+        return ResponseEntity.ok(new UsernameAvailability(userName, !userDAO.existsbyUserName(userName), true));
+    }
+
     /**
      * Handle user logout.
      */
     @GetMapping("/logout")
     public String logout(HttpSession session, Model model) {
+        SessionUser user = (SessionUser) session.getAttribute("loggedInUser");
+        if (user != null) {
+            userRatingsSnapshots.evict(user.getUserID());
+        }
         session.invalidate();
         log.info("User has been logged out.");
         model.addAttribute("message", "You have been successfully logged out.");
@@ -119,14 +173,13 @@ public class UserController {
         // Clear previous errors
         model.asMap().clear();
 
-        try {
-            authUtils.authenticateUser(session, model);
-        } catch (IOException e) {
-            log.error("Error authenticating user", e);
+        // The session only keeps the id and username, the form needs the names and the password hash
+        User user = authUtils.loadUser(session);
+        if (user == null) {
+            model.addAttribute("error", "Profile update failed. Please try again.");
+            return "profile";
         }
 
-        User user = (User) session.getAttribute("loggedInUser");
-
         // Update only the fields that have changed
         boolean isChanged = isChanged(userUpdateRequest, user, model);
 
@@ -139,7 +192,12 @@ public class UserController {
         // Save the updated user in the database
         if (isChanged && userDAO.updateUser(user)) {
             model.addAttribute("message", "Profile updated successfully.");
-            session.setAttribute("loggedInUser", user); // Update session data
+            SessionUser sessionUser = (SessionUser) session.getAttribute("loggedInUser");
+            if (!sessionUser.getUserName().equals(user.getUserName())) {
+                // The old name stays in the filter until the next rebuild, it only costs a query when someone picks it
+                usernameFilter.userSaved(user.getUserName());
+            }
+            session.setAttribute("loggedInUser", sessionUser.withUserName(user.getUserName())); // Update session data
         } else if (!isChanged) {
             // Only add this if there were no changes
             model.addAttribute("error", "No changes detected.");
@@ -147,6 +205,7 @@ public class UserController {
             model.addAttribute("error", "Profile update failed. Please try again.");
         }
 
+        model.addAttribute("user", user);
         return "profile";
     }
 
@@ -240,8 +299,9 @@ public class UserController {
         // Check if the current password (in patch request) matches the one in the database (in session)
         if (hashUtil.verify(requestOldPass, user.getPassword())) {
 
-            // Check if the new password is valid and different from the old password
-            if (regexUtils.isValidPassword(requestNewPass) && !hashUtil.verify(requestNewPass, user.getPassword())) {
+            // Check if the new password is valid and different from the old password. The old one matched the hash,
+            // so the new one matches it only if it is the same text, no second bcrypt verification is needed
+            if (regexUtils.isValidPassword(requestNewPass) && !requestNewPass.equals(requestOldPass)) {
                 // Hash the new password and set it in the user object
                 user.setPassword(hashUtil.hashPassword(requestNewPass));
                 log.debug("Password of user with ID:{} was different, adding to updated user object", user.getUserID());
@@ -259,6 +319,31 @@ public class UserController {
     }
 
 
+    /**
+     * Replace the stored password hash if it was made with a lower bcrypt cost than the current one,
+     * e.g. before the cost was raised. Done at login, the only time the plain password is known.
+     * A failure only logs, the user is logged in either way and the hash is replaced at a later login.
+     * @param user - the user that has just logged in
+     * @param password - the password the user logged in with
+     */
+    private void rehashIfNeeded(User user, String password) {
+        if (!hashUtil.needsRehash(user.getPassword())) {
+            return;
+        }
+        try {
+            user.setPassword(hashUtil.hashPassword(password));
+        } catch (PasswordHashingBusyException e) {
+            log.info("Skipped rehashing the password of user with ID:{}, hashing is busy", user.getUserID());
+            return;
+        }
+        if (userDAO.updateUser(user)) {
+            log.info("Rehashed the password of user with ID:{} with bcrypt cost {}", user.getUserID(), hashUtil.getCost());
+        } else {
+            log.warn("Failed to store the rehashed password of user with ID:{}", user.getUserID());
+        }
+    }
+
+
     /**
      * Validate the payment details.
      * @param cardNumber - Credit card number
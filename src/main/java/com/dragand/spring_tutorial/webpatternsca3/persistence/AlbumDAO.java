@@ -2,6 +2,7 @@ package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Album;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface AlbumDAO {
 
@@ -49,4 +50,10 @@ public interface AlbumDAO {
      */
     Album getAlbumByName(String albumName);
 
+    /**
+     * Stream all albums ordered by id, reading one row at a time.
+     * The stream holds a database connection until it is closed, use it in a try-with-resources block.
+     * @return - a lazily populated stream of all albums.
+     */
+    Stream<Album> streamAllAlbums();
 }
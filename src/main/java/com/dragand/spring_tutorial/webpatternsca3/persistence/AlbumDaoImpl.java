@@ -1,15 +1,20 @@
 package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Album;
+import com.dragand.spring_tutorial.webpatternsca3.config.CacheConfig;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Repository;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 @Slf4j
@@ -19,6 +24,15 @@ public class AlbumDaoImpl extends MySQLDao implements AlbumDAO{
         super();
     }
 
+    /**
+     * Constructor used by Spring. Connections are borrowed from the shared pool.
+     * @param dataSource - the pooled data source.
+     */
+    @Autowired
+    public AlbumDaoImpl(DataSource dataSource){
+        super(dataSource);
+    }
+
     public AlbumDaoImpl(Connection conn){
         super(conn);
     }
@@ -164,6 +178,7 @@ public class AlbumDaoImpl extends MySQLDao implements AlbumDAO{
      * @return - the album with the given id.
      */
     @Override
+    @Cacheable(cacheNames = CacheConfig.ALBUMS, unless = "#result == null")
     public Album getAlbumById(int albumId) {
 
         Album album = null;
@@ -226,10 +241,20 @@ public class AlbumDaoImpl extends MySQLDao implements AlbumDAO{
         return result;
     }
 
+    /**
+     * Stream all albums ordered by id.
+     * MySQL sends the rows one at a time, so every album can be processed with constant memory.
+     * @return - a lazily populated stream of all albums, empty if the query could not be started.
+     */
+    @Override
+    public Stream<Album> streamAllAlbums() {
+        return streamQuery("SELECT * FROM Albums ORDER BY albumID", AlbumDaoImpl::fromResultSet);
+    }
+
     private static Album fromResultSet(ResultSet rs) throws SQLException {
         Album album;
         album = Album.builder()
-                .albumId(rs.getInt("artistId"))
+                .albumId(rs.getInt("albumId"))
                 .title(rs.getString("title"))
                 .artistId(rs.getInt("artistId"))
                 .releaseDate(rs.getDate("releaseDate"))
@@ -245,6 +270,7 @@ public class AlbumDaoImpl extends MySQLDao implements AlbumDAO{
      * @return - the id of the album with the given name.
      */
     @Override
+    @Cacheable(cacheNames = CacheConfig.ALBUMS_BY_NAME, unless = "#result == null")
     public Album getAlbumByName(String albumName) {
             Album album = null;
             String query = "SELECT * FROM Albums WHERE title = ?";
@@ -259,7 +285,7 @@ public class AlbumDaoImpl extends MySQLDao implements AlbumDAO{
 
                     if (rs.next()) {
                         album = Album.builder()
-                                .albumId(rs.getInt("artistId"))
+                                .albumId(rs.getInt("albumId"))
                                 .title(rs.getString("title"))
                                 .artistId(rs.getInt("artistId"))
                                 .releaseDate(rs.getDate("releaseDate"))
@@ -4,6 +4,7 @@ package com.dragand.spring_tutorial.webpatternsca3.persistence;
 import com.dragand.spring_tutorial.webpatternsca3.business.Artist;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ArtistDAO {
 
@@ -33,4 +34,10 @@ public interface ArtistDAO {
      */
     List<Artist> getAllArtists();
 
+    /**
+     * Stream all artists ordered by id, reading one row at a time.
+     * The stream holds a database connection until it is closed, use it in a try-with-resources block.
+     * @return a lazily populated stream of all artists in the library.
+     */
+    Stream<Artist> streamAllArtists();
 }
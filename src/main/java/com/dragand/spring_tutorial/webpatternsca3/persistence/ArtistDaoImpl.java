@@ -1,15 +1,20 @@
 package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Artist;
+import com.dragand.spring_tutorial.webpatternsca3.config.CacheConfig;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Repository;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * @Author: Dmytro Drahan
@@ -23,6 +28,15 @@ public class ArtistDaoImpl extends MySQLDao implements ArtistDAO {
         super();
     }
 
+    /**
+     * Constructor used by Spring. Connections are borrowed from the shared pool.
+     * @param dataSource - the pooled data source.
+     */
+    @Autowired
+    public ArtistDaoImpl(DataSource dataSource){
+        super(dataSource);
+    }
+
     public ArtistDaoImpl(Connection conn){
         super(conn);
     }
@@ -37,6 +51,7 @@ public class ArtistDaoImpl extends MySQLDao implements ArtistDAO {
      * @return the artist with the given id, null if not found.
      */
     @Override
+    @Cacheable(cacheNames = CacheConfig.ARTISTS, unless = "#result == null")
     public Artist getArtistById(int id) {
 
 
@@ -76,6 +91,7 @@ public class ArtistDaoImpl extends MySQLDao implements ArtistDAO {
      * @return the artist with the given name, null if not found.
      */
     @Override
+    @Cacheable(cacheNames = CacheConfig.ARTISTS_BY_NAME, unless = "#result == null")
     public Artist getArtistByName(String name) {
 
 
@@ -198,4 +214,17 @@ public class ArtistDaoImpl extends MySQLDao implements ArtistDAO {
 
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Stream all artists ordered by id.
+     * MySQL sends the rows one at a time, so every artist can be processed with constant memory.
+     * @return a lazily populated stream of all artists, empty if the query could not be started.
+     */
+    @Override
+    public Stream<Artist> streamAllArtists() {
+        return streamQuery("SELECT * FROM Artists ORDER BY artistID", rs -> Artist.builder()
+                .artistId(rs.getInt("artistId"))
+                .name(rs.getString("name"))
+                .build());
+    }
+}
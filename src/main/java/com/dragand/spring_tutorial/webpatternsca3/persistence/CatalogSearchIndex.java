@@ -0,0 +1,298 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Album;
+import com.dragand.spring_tutorial.webpatternsca3.business.Artist;
+import com.dragand.spring_tutorial.webpatternsca3.business.Playlist;
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingDelta;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * In-memory search over song titles, artist names, album titles and playlist names.
+ * Answers the same queries as the {@code LIKE '%query%'} DAO methods used by the search page without touching the database.
+ * <p>
+ * The four indexes are built in parallel from the streaming DAO methods shortly after startup and rebuilt every
+ * {@code search.index.rebuild-interval-ms}. Songs added or deleted through the DAOs and playlists created, renamed or
+ * deleted through the application are applied straight away, including those that arrive during a rebuild. Changes to
+ * artists and albums, and to songs and playlists made outside the application, are only picked up by the next
+ * rebuild, so those results can be up to one rebuild interval stale.
+ * Until an index is built, or when it is empty, that part of the search falls back to the SQL query.
+ */
+@Slf4j
+@Component
+public class CatalogSearchIndex {
+
+    private final SongDAO songDao;
+    private final ArtistDAO artistDao;
+    private final AlbumDAO albumDao;
+    private final PlaylistDAO playlistDao;
+    private final SongRatingAggregator ratingAggregator;
+    private final boolean enabled;
+
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("catalog-index-build").daemon().factory());
+
+    private volatile Indexes current;
+
+    /**
+     * Changes made while a rebuild is running, replayed on the new indexes before they replace the old ones.
+     * Null when no rebuild is running. Guarded by this.
+     */
+    private List<Consumer<Indexes>> changesDuringRebuild;
+
+    /**
+     * @param ratingFlushes the number of the last rating flush already contained in the song rows
+     */
+    private record Indexes(
+            TrigramIndex<Song> songs,
+            long ratingFlushes,
+            TrigramIndex<Artist> artists,
+            TrigramIndex<Album> albums,
+            TrigramIndex<Playlist> playlists
+    ) {
+    }
+
+    private record SongIndex(
+            TrigramIndex<Song> songs,
+            long ratingFlushes
+    ) {
+    }
+
+    public CatalogSearchIndex(SongDAO songDao, ArtistDAO artistDao, AlbumDAO albumDao, PlaylistDAO playlistDao,
+                              SongRatingAggregator ratingAggregator,
+                              @Value("${search.index.enabled:true}") boolean enabled) {
+        this.songDao = songDao;
+        this.artistDao = artistDao;
+        this.albumDao = albumDao;
+        this.playlistDao = playlistDao;
+        this.ratingAggregator = ratingAggregator;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Search songs whose title contains the query.
+     * @param query - the text to search for.
+     * @return - the matching songs ordered by id.
+     */
+    public List<Song> searchSongs(String query) {
+        Indexes indexes = current;
+        return searchOrFallback(indexes == null ? null : indexes.songs(), query, song -> true,
+                () -> songDao.getAllSongsByTitle(query));
+    }
+
+    /**
+     * Search artists whose name contains the query.
+     * @param query - the text to search for.
+     * @return - the matching artists ordered by id.
+     */
+    public List<Artist> searchArtists(String query) {
+        Indexes indexes = current;
+        return searchOrFallback(indexes == null ? null : indexes.artists(), query, artist -> true,
+                () -> artistDao.getAllArtistsWhereNameLike(query));
+    }
+
+    /**
+     * Search albums whose title contains the query.
+     * @param query - the text to search for.
+     * @return - the matching albums ordered by id.
+     */
+    public List<Album> searchAlbums(String query) {
+        Indexes indexes = current;
+        return searchOrFallback(indexes == null ? null : indexes.albums(), query, album -> true,
+                () -> albumDao.getAllAlbumsWhereNameLike(query));
+    }
+
+    /**
+     * Search public playlists whose name contains the query.
+     * @param query - the text to search for.
+     * @return - the matching playlists ordered by id.
+     */
+    public List<Playlist> searchPlaylists(String query) {
+        Indexes indexes = current;
+        return searchOrFallback(indexes == null ? null : indexes.playlists(), query, Playlist::isPublic,
+                () -> playlistDao.getAllPlaylistbyName(query, true));
+    }
+
+    //Incremental updates
+
+    /**
+     * Index a playlist that was created, or re-index one that was changed.
+     * @param playlist - the playlist with its id.
+     */
+    public void playlistSaved(Playlist playlist) {
+        apply(indexes -> indexes.playlists().put(playlist));
+    }
+
+    /**
+     * Re-index a renamed playlist.
+     * @param playlistId - the id of the playlist.
+     * @param newName - the new name.
+     */
+    public void playlistRenamed(int playlistId, String newName) {
+        apply(indexes -> {
+            Playlist playlist = indexes.playlists().get(playlistId);
+            if (playlist != null) {
+                indexes.playlists().put(new Playlist(playlistId, playlist.getUserId(), newName, playlist.isPublic()));
+            }
+        });
+    }
+
+    /**
+     * Remove a deleted playlist.
+     * @param event - the deleted playlist.
+     */
+    @EventListener
+    public void onPlaylistDeleted(PlaylistDeletedEvent event) {
+        apply(indexes -> indexes.playlists().remove(event.playlistID()));
+    }
+
+    /**
+     * Index a song that was added.
+     * @param event - the added song with its id.
+     */
+    @EventListener
+    public void onSongAdded(SongAddedEvent event) {
+        apply(indexes -> indexes.songs().put(event.song()));
+    }
+
+    /**
+     * Remove a deleted song.
+     * @param event - the deleted song.
+     */
+    @EventListener
+    public void onSongDeleted(SongDeletedEvent event) {
+        apply(indexes -> indexes.songs().remove(event.songID()));
+    }
+
+    /**
+     * Keep the rating aggregates of the indexed songs in step with the Songs table.
+     * During a rebuild the event is also replayed on the new indexes, unless their song rows already contain the flush.
+     * @param event - the rating changes that were just written.
+     */
+    @EventListener
+    public void onRatingAggregatesFlushed(RatingAggregatesFlushedEvent event) {
+        apply(indexes -> {
+            // Adding a delta twice is not harmless
+            if (event.flushNumber() <= indexes.ratingFlushes()) {
+                return;
+            }
+            for (RatingDelta delta : event.deltas()) {
+                indexes.songs().update(delta.songID(), song -> {
+                    int count = (int) Math.max(0, song.getRatingCount() + delta.countDelta());
+                    int sum = (int) Math.max(0, song.getRatingsSum() + delta.sumDelta());
+                    double average = count == 0 ? 0 : Math.round(sum * 100.0 / count) / 100.0;
+                    return new Song(song.getSongID(), song.getTitle(), song.getAlbumID(), song.getArtistID(),
+                            song.getLength(), count, average, sum);
+                });
+            }
+        });
+    }
+
+    //Building
+
+    /**
+     * Start a rebuild in the background, the first one right after startup.
+     * Runs on its own thread so a slow build never holds up other scheduled tasks.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${search.index.rebuild-interval-ms:900000}")
+    public void scheduleRebuild() {
+        if (enabled) {
+            buildExecutor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Build all four indexes in parallel and swap them in. Does nothing if a rebuild is already running.
+     * If the catalog cannot be read the current indexes are kept.
+     */
+    void rebuild() {
+        synchronized (this) {
+            if (changesDuringRebuild != null) {
+                return;
+            }
+            changesDuringRebuild = new ArrayList<>();
+        }
+        try {
+            long start = System.nanoTime();
+            // The song rows are read between two rating flushes, so it is known which flush events they already contain
+            CompletableFuture<SongIndex> songs = async(() -> ratingAggregator.betweenFlushes(ratingFlushes ->
+                    new SongIndex(build(songDao::streamAllSongs, Song::getSongID, Song::getTitle), ratingFlushes)));
+            CompletableFuture<TrigramIndex<Artist>> artists = async(() -> build(artistDao::streamAllArtists, Artist::getArtistId, Artist::getName));
+            CompletableFuture<TrigramIndex<Album>> albums = async(() -> build(albumDao::streamAllAlbums, Album::getAlbumId, Album::getTitle));
+            CompletableFuture<TrigramIndex<Playlist>> playlists = async(() -> build(playlistDao::streamAllPlaylists, Playlist::getPlaylistId, Playlist::getName));
+
+            SongIndex songIndex = songs.join();
+            Indexes built = new Indexes(songIndex.songs(), songIndex.ratingFlushes(), artists.join(), albums.join(), playlists.join());
+            synchronized (this) {
+                changesDuringRebuild.forEach(change -> change.accept(built));
+                current = built;
+            }
+            log.info("Built search index in {} ms: {} songs, {} artists, {} albums, {} playlists",
+                    (System.nanoTime() - start) / 1_000_000, built.songs().size(), built.artists().size(),
+                    built.albums().size(), built.playlists().size());
+        } catch (RuntimeException e) {
+            log.error("Failed to build the search index, {}", current == null ? "searching with SQL" : "keeping the previous index", e);
+        } finally {
+            synchronized (this) {
+                changesDuringRebuild = null;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.shutdownNow();
+    }
+
+    //Helper methods
+
+    private static <T> CompletableFuture<T> async(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, Thread::startVirtualThread);
+    }
+
+    private static <T> TrigramIndex<T> build(Supplier<Stream<T>> rows, ToIntFunction<T> idOf, Function<T, String> textOf) {
+        try (Stream<T> stream = rows.get()) {
+            return TrigramIndex.build(stream, idOf, textOf);
+        }
+    }
+
+    /**
+     * Apply a change to the current indexes, and to the ones being built if a rebuild is running.
+     */
+    private synchronized void apply(Consumer<Indexes> change) {
+        if (current != null) {
+            change.accept(current);
+        }
+        if (changesDuringRebuild != null) {
+            changesDuringRebuild.add(change);
+        }
+    }
+
+    /**
+     * An index that is empty was either never filled or its table could not be read, SQL gives the right answer in both cases.
+     */
+    private static <T> List<T> searchOrFallback(TrigramIndex<T> index, String query, Predicate<T> filter,
+                                                Supplier<List<T>> fallback) {
+        if (index == null || index.size() == 0) {
+            return fallback.get();
+        }
+        return index.search(query, filter);
+    }
+}
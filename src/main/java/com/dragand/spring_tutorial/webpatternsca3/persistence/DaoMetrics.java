@@ -0,0 +1,217 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Micrometer metrics of every DAO method, so a slow or failing query can be traced to the method that runs it.
+ * <p>
+ * {@link #instrument(Object, Class)} wraps a DAO in a proxy that times its calls, and an {@link InstrumentedDataSource}
+ * around the pool the DAOs borrow their connections from puts the time spent waiting for a connection and the
+ * SQL errors the DAOs catch and log themselves down to the DAO method that was running.
+ * <p>
+ * Metrics, all tagged by dao (the interface, e.g. SongDAO) and method, with percentile histograms:
+ * <ul>
+ *     <li>{@code dao.calls} timer, also tagged by outcome (success or error) and exception (none if there was none).
+ *     Calls answered from the catalog cache are included.</li>
+ *     <li>{@code dao.rows} summary of the rows returned by methods that return entities, lists or maps.
+ *     Rows of a returned stream are counted when it is closed.</li>
+ *     <li>{@code dao.connection.acquire} timer of the time spent borrowing connections from the pool.</li>
+ * </ul>
+ * A DAO method called by another one is measured on its own as well as within its caller.
+ */
+public final class DaoMetrics {
+
+    /**
+     * The DAO interfaces whose implementations are instrumented.
+     */
+    public static final List<Class<?>> DAO_INTERFACES = List.of(SongDAO.class, AlbumDAO.class, ArtistDAO.class,
+            PlaylistDAO.class, PlaylistSongsDAO.class, RatingDAO.class, UserDAO.class);
+
+    /**
+     * The DAO call running on this thread, the innermost one when DAOs call each other.
+     */
+    private static final ThreadLocal<Call> CURRENT_CALL = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Method, MethodMeters> methodMeters = new ConcurrentHashMap<>();
+
+    /**
+     * @param meterRegistry - registry for the metrics.
+     */
+    public DaoMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Wrap a DAO so every call of a method of the interface is measured.
+     * @param dao - the DAO to measure.
+     * @param daoInterface - the interface the callers use, one of {@link #DAO_INTERFACES}.
+     * @return - a proxy implementing the interface that calls the DAO.
+     * @param <T> - the type of the interface.
+     */
+    public <T> T instrument(T dao, Class<T> daoInterface) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(dao, args);
+            }
+            return call(methodMeters.computeIfAbsent(method, m -> new MethodMeters(daoInterface, m)), dao, method, args);
+        };
+        return daoInterface.cast(Proxy.newProxyInstance(daoInterface.getClassLoader(), new Class<?>[]{daoInterface}, handler));
+    }
+
+    //Calls
+
+    private Object call(MethodMeters meters, Object dao, Method method, Object[] args) throws Throwable {
+        Call call = new Call(meters, CURRENT_CALL.get());
+        CURRENT_CALL.set(call);
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = method.invoke(dao, args);
+        } catch (InvocationTargetException e) {
+            call.failed(e.getCause());
+            throw e.getCause();
+        } finally {
+            if (call.parent == null) {
+                CURRENT_CALL.remove();
+            } else {
+                CURRENT_CALL.set(call.parent);
+            }
+            meters.recordCall(System.nanoTime() - start, call.error);
+        }
+        return meters.recordRows(result);
+    }
+
+    /**
+     * @return - true if a DAO call is running on this thread.
+     */
+    static boolean inCall() {
+        return CURRENT_CALL.get() != null;
+    }
+
+    /**
+     * Record the time the running DAO call waited for a connection, if there is one.
+     * @param nanos - time spent in getConnection.
+     */
+    static void connectionAcquired(long nanos) {
+        Call call = CURRENT_CALL.get();
+        if (call != null) {
+            call.meters.connectionAcquire.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Mark the running DAO call as failed, if there is one, even when the DAO catches the exception.
+     * @param e - the exception of the database.
+     */
+    static void sqlFailed(SQLException e) {
+        Call call = CURRENT_CALL.get();
+        if (call != null) {
+            call.failed(e);
+        }
+    }
+
+    private static final class Call {
+        private final MethodMeters meters;
+        private final Call parent;
+        private Throwable error;
+
+        private Call(MethodMeters meters, Call parent) {
+            this.meters = meters;
+            this.parent = parent;
+        }
+
+        private void failed(Throwable e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * The meters of one DAO method, registered once and reused by every call.
+     */
+    private final class MethodMeters {
+        private final String dao;
+        private final String method;
+        private final Map<Class<?>, Timer> callTimers = new ConcurrentHashMap<>();
+        private final Timer successTimer;
+        private final DistributionSummary rows; // null if the method does not return rows
+        private final Timer connectionAcquire;
+
+        private MethodMeters(Class<?> daoInterface, Method method) {
+            this.dao = daoInterface.getSimpleName();
+            this.method = method.getName();
+            // Primitives and their wrappers are ids, counts and success flags, not rows
+            Class<?> returnType = method.getReturnType();
+            boolean returnsRows = !returnType.isPrimitive() && !Number.class.isAssignableFrom(returnType)
+                    && returnType != Boolean.class;
+            this.successTimer = callTimer("success", "none");
+            this.rows = !returnsRows ? null : DistributionSummary.builder("dao.rows")
+                    .description("Rows returned by a DAO method")
+                    .baseUnit("rows")
+                    .tags("dao", dao, "method", this.method)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.connectionAcquire = Timer.builder("dao.connection.acquire")
+                    .description("Time a DAO method waited for a connection from the pool")
+                    .tags("dao", dao, "method", this.method)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(10_000))
+                    .register(meterRegistry);
+        }
+
+        private Timer callTimer(String outcome, String exception) {
+            return Timer.builder("dao.calls")
+                    .description("Time spent in a DAO method")
+                    .tags("dao", dao, "method", method, "outcome", outcome, "exception", exception)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        private void recordCall(long nanos, Throwable error) {
+            Timer timer = error == null ? successTimer
+                    : callTimers.computeIfAbsent(error.getClass(), type -> callTimer("error", type.getSimpleName()));
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return - the result, a stream wrapped to count its rows.
+         */
+        private Object recordRows(Object result) {
+            if (rows == null) {
+                return result;
+            }
+            if (result instanceof Stream<?> stream) {
+                LongAdder count = new LongAdder();
+                return stream.peek(row -> count.increment()).onClose(() -> rows.record(count.sum()));
+            }
+            rows.record(switch (result) {
+                case null -> 0;
+                case Collection<?> collection -> collection.size();
+                case Map<?, ?> map -> map.size();
+                case Optional<?> optional -> optional.isPresent() ? 1 : 0;
+                case Object[] array -> array.length;
+                default -> 1;
+            });
+            return result;
+        }
+    }
+}
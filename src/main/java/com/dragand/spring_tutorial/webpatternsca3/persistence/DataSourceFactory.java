@@ -0,0 +1,81 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds pooled data sources from the database properties files used by the DAOs.
+ */
+public final class DataSourceFactory {
+
+    /**
+     * Default properties file used by the application.
+     */
+    public static final String DEFAULT_PROPERTIES = "database.properties";
+
+    /**
+     * Properties file of the embedded H2 database used by the "embedded" profile.
+     */
+    public static final String EMBEDDED_PROPERTIES = "database-embedded.properties";
+
+    private static final Map<String, HikariDataSource> SHARED = new ConcurrentHashMap<>();
+
+    private DataSourceFactory() {
+    }
+
+    /**
+     * Create a pooled data source from a properties file on the classpath.
+     * The pool itself is started lazily when the first connection is requested.
+     * @param propertiesFilename - the name of the properties file (driver, url, database, username, password).
+     * @return - a pooled data source for the configured database.
+     */
+    public static HikariDataSource createPooledDataSource(String propertiesFilename) {
+        Properties properties = loadProperties(propertiesFilename);
+
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setDriverClassName(properties.getProperty("driver"));
+        dataSource.setJdbcUrl(properties.getProperty("url") + properties.getProperty("database"));
+        dataSource.setUsername(properties.getProperty("username"));
+        dataSource.setPassword(properties.getProperty("password", ""));
+        return dataSource;
+    }
+
+    /**
+     * Get the pool for a properties file, creating it the first time the file is used.
+     * Used by DAOs that are created outside of Spring so they do not re-read the file or open their own connections.
+     * @param propertiesFilename - the name of the properties file.
+     * @return - the shared pooled data source for that file.
+     */
+    public static HikariDataSource getSharedDataSource(String propertiesFilename) {
+        return SHARED.computeIfAbsent(propertiesFilename, DataSourceFactory::createPooledDataSource);
+    }
+
+    /**
+     * Load properties from a file.
+     * @param propertiesFilename - the name of the properties file.
+     * @return - the loaded properties.
+     */
+    private static Properties loadProperties(String propertiesFilename) {
+        Properties properties = new Properties();
+        try (InputStream input = Thread.currentThread()
+                .getContextClassLoader()
+                .getResourceAsStream(propertiesFilename)) {
+
+            if (input == null) {
+                throw new FileNotFoundException("Property file '" + propertiesFilename + "' not found in the classpath");
+            }
+
+            properties.load(input);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load properties from: " + propertiesFilename, e);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,157 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Data source of the DAOs that reports to {@link DaoMetrics}: the time each DAO call spends borrowing connections,
+ * and the SQL errors of its connections and statements, which the DAOs catch and only log.
+ * With a {@link SlowQueryLog}, every statement run on its connections is timed and recorded there as well,
+ * with the values bound to it.
+ * <p>
+ * Without a slow query log, connections borrowed outside of a DAO call are handed out as they are.
+ * Still a {@link DelegatingDataSource}, so the pool metrics and health check find the pool behind it.
+ */
+public final class InstrumentedDataSource extends DelegatingDataSource {
+
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final SlowQueryLog slowQueryLog;
+
+    /**
+     * @param targetDataSource - the pooled data source.
+     * @param slowQueryLog - where to record the statements, null or disabled to not time them.
+     */
+    public InstrumentedDataSource(DataSource targetDataSource, SlowQueryLog slowQueryLog) {
+        super(targetDataSource);
+        this.slowQueryLog = slowQueryLog != null && slowQueryLog.isEnabled() ? slowQueryLog : null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return watch(obtainTargetDataSource().getConnection());
+        } catch (SQLException e) {
+            DaoMetrics.sqlFailed(e);
+            throw e;
+        } finally {
+            DaoMetrics.connectionAcquired(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return watch(obtainTargetDataSource().getConnection(username, password));
+        } catch (SQLException e) {
+            DaoMetrics.sqlFailed(e);
+            throw e;
+        } finally {
+            DaoMetrics.connectionAcquired(System.nanoTime() - start);
+        }
+    }
+
+    //Helper methods
+
+    private Connection watch(Connection con) {
+        if (slowQueryLog == null && !DaoMetrics.inCall()) {
+            return con;
+        }
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(con, method, args);
+            if (result instanceof Statement statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                // prepareStatement and prepareCall take the SQL first, createStatement gets it with each execute
+                String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : null;
+                return proxy(statement, method.getReturnType(), new StatementHandler(statement, sql));
+            }
+            return result;
+        };
+        return proxy(con, Connection.class, handler);
+    }
+
+    /**
+     * Call the target, reporting an SQLException to the running DAO call.
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                DaoMetrics.sqlFailed(sqlException);
+            }
+            throw e.getCause();
+        }
+    }
+
+    private static <T> T proxy(Object target, Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * Remembers the values bound to a statement and times its executions.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String sql;
+        private Object[] values = NO_VALUES;
+
+        private StatementHandler(Statement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (slowQueryLog == null) {
+                return InstrumentedDataSource.invoke(target, method, args);
+            }
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            // setInt(1, 5), setString(2, "x"), setNull(3, Types.VARCHAR)...: the index of the placeholder comes first
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index
+                    && method.getDeclaringClass() != Statement.class) {
+                bind(index, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                values = NO_VALUES;
+            }
+            return InstrumentedDataSource.invoke(target, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            boolean ownSql = args != null && args.length > 0 && args[0] instanceof String;
+            String executed = ownSql ? (String) args[0] : sql;
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = InstrumentedDataSource.invoke(target, method, args);
+                failed = false;
+                return result;
+            } finally {
+                slowQueryLog.record(executed, ownSql ? null : values, System.nanoTime() - start, failed);
+            }
+        }
+
+        private void bind(int index, Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (index > values.length) {
+                values = Arrays.copyOf(values, index);
+            }
+            values[index - 1] = value;
+        }
+    }
+}
@@ -1,26 +1,37 @@
 package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
+import javax.sql.DataSource;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
-import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Slf4j
-public class MySQLDao {
-    private Properties properties;
+public class MySQLDao implements ApplicationEventPublisherAware {
+    /**
+     * Rows fetched per round trip by streamQuery on databases other than MySQL.
+     */
+    private static final int STREAM_FETCH_SIZE = 1_000;
+
     private Connection conn;
+    private DataSource dataSource;
+    private ApplicationEventPublisher eventPublisher;
 
     /**
-     * Default constructor. Loads properties from the default file name(database.properties).
+     * Default constructor. Uses the shared pool for the default file name(database.properties).
      */
     public MySQLDao() {
-        loadProperties("database.properties"); // Default file name
+        this(DataSourceFactory.DEFAULT_PROPERTIES); // Default file name
     }
 
     /**
@@ -31,13 +42,22 @@ public class MySQLDao {
         this.conn = conn;
     }
 
+    /**
+     * Constructor that takes a pooled data source as a parameter.
+     * Connections are borrowed from the pool and returned to it when closed.
+     * @param dataSource - the pooled data source shared by the DAOs.
+     */
+    public MySQLDao(DataSource dataSource){
+        this.dataSource = dataSource;
+    }
+
     /**
      * Constructor that takes a properties file name as a parameter.
+     * The properties file is only read the first time it is used, every DAO created with the same file shares one pool.
      * @param propertiesFilename - the name of the properties file.
      */
     public MySQLDao(String propertiesFilename){
-        properties = new Properties();
-        loadProperties(propertiesFilename);
+        this.dataSource = DataSourceFactory.getSharedDataSource(propertiesFilename);
     }
 
     /**
@@ -49,48 +69,149 @@ public class MySQLDao {
             return conn;
         }
 
-        String driver = properties.getProperty("driver");
-        String url = properties.getProperty("url");
-        String database = properties.getProperty("database");
-        String username = properties.getProperty("username");
-        String password = properties.getProperty("password", "");
         try{
-            Class.forName(driver);
-
-            try{
-                Connection conn = DriverManager.getConnection(url+database, username, password);
-                return conn;
-            }catch(SQLException e){
-                log.error("{}: An SQLException  occurred while trying to connect to the {}database.", LocalDateTime.now(), url);
-                log.error("Error: {}", e.getMessage());
-//                e.printStackTrace();
-            }
-        }catch(ClassNotFoundException e){
-            log.error("{}: A ClassNotFoundException occurred while trying to load the MySQL driver.", LocalDateTime.now());
+            return dataSource.getConnection();
+        }catch(SQLException | RuntimeException e){
+            // Hikari reports a pool that cannot be started with a RuntimeException
+            log.error("{}: An exception occurred while trying to borrow a connection from the pool.", LocalDateTime.now());
             log.error("Error: {}", e.getMessage());
-//            e.printStackTrace();
         }
         return null;
     }
 
     /**
-     * Load properties from a file.
-     * @param propertiesFilename - the name of the properties file.
+     * Get the data source connections are borrowed from.
+     * Used to build collaborating DAOs on the same pool.
+     * @return - the data source, or null if this DAO was created with a single connection.
      */
-    private void loadProperties(String propertiesFilename) {
-        properties = new Properties();
-        try (InputStream input = Thread.currentThread()
-                .getContextClassLoader()
-                .getResourceAsStream(propertiesFilename)) {
-
-            if (input == null) {
-                throw new FileNotFoundException("Property file '" + propertiesFilename + "' not found in the classpath");
-            }
+    protected DataSource getDataSource(){
+        return dataSource;
+    }
+
+    /**
+     * Set by Spring for DAO beans. DAOs created outside the application context have no publisher.
+     * @param eventPublisher - the publisher of the application context.
+     */
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher){
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Tell the application about a change made by this DAO, e.g. so the search index can apply it.
+     * Does nothing for DAOs created outside the application context.
+     * @param event - the event to publish.
+     */
+    protected void publishEvent(Object event){
+        if(eventPublisher != null){
+            eventPublisher.publishEvent(event);
+        }
+    }
+
+    /**
+     * Run a query and return its rows as a lazily populated stream.
+     * MySQL sends the rows one by one (fetch size Integer.MIN_VALUE), so memory use does not depend on the number of rows.
+     * Other databases, such as the embedded H2 one, are read in pages of STREAM_FETCH_SIZE rows.
+     * The connection is held until the stream is closed or fully read, so always close it, e.g. with try-with-resources.
+     * While the stream is open no other query can be run on that connection.
+     * @param sql - the query to run, without parameters.
+     * @param mapper - maps the current row of the result set to an object.
+     * @return - the rows of the query, an empty stream if the query could not be started.
+     * @param <T> - the type of the mapped rows.
+     */
+    protected <T> Stream<T> streamQuery(String sql, RowMapper<T> mapper){
+        Connection con = getConnection();
+        if(con == null){
+            return Stream.empty();
+        }
+        try{
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Connector/J only streams with this fetch size, other drivers (H2) reject it and page on their own
+            ps.setFetchSize(isMySQL(con) ? Integer.MIN_VALUE : STREAM_FETCH_SIZE);
+            ResultSet rs = ps.executeQuery();
+            RowSpliterator<T> rows = new RowSpliterator<>(con, ps, rs, mapper);
+            return StreamSupport.stream(rows, false).onClose(rows::close);
+        }catch(SQLException e){
+            log.error("{}: An exception occurred while trying to stream the query: {}", LocalDateTime.now(), sql);
+            log.error("Error: {}", e.getMessage());
+            closeQuietly(con);
+        }
+        return Stream.empty();
+    }
+
+    /**
+     * Check whether a connection is to MySQL, for the statements other databases (the embedded H2 one) do not support.
+     * @param con - an open connection.
+     * @return - true for MySQL.
+     */
+    protected static boolean isMySQL(Connection con) throws SQLException{
+        return "MySQL".equals(con.getMetaData().getDatabaseProductName());
+    }
 
-            properties.load(input);
+    private static void closeQuietly(AutoCloseable resource){
+        try{
+            resource.close();
+        }catch(Exception e){
+            log.warn("Error while closing {}: {}", resource.getClass().getSimpleName(), e.getMessage());
+        }
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load properties from: " + propertiesFilename, e);
+    /**
+     * Maps the current row of a result set to an object.
+     * @param <T> - the type of the mapped row.
+     */
+    @FunctionalInterface
+    protected interface RowMapper<T> {
+        T mapRow(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Reads a result set one row at a time and releases the statement and connection
+     * as soon as the last row has been read or the stream is closed.
+     */
+    private static final class RowSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private final Connection con;
+        private final PreparedStatement ps;
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+        private boolean closed;
+
+        private RowSpliterator(Connection con, PreparedStatement ps, ResultSet rs, RowMapper<T> mapper){
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.con = con;
+            this.ps = ps;
+            this.rs = rs;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action){
+            if(closed){
+                return false;
+            }
+            try{
+                if(!rs.next()){
+                    close();
+                    return false;
+                }
+                action.accept(mapper.mapRow(rs));
+                return true;
+            }catch(SQLException e){
+                close();
+                // A half read stream must not look like a complete one
+                throw new IllegalStateException("Failed to read the next row from the database", e);
+            }
+        }
+
+        private void close(){
+            if(closed){
+                return;
+            }
+            closed = true;
+            // A streaming result set has to be closed before the connection can be used again
+            closeQuietly(rs);
+            closeQuietly(ps);
+            closeQuietly(con);
         }
     }
 
@@ -1,6 +1,7 @@
 package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import java.util.List;
+import java.util.stream.Stream;
 import com.dragand.spring_tutorial.webpatternsca3.business.*;
 
 public interface PlaylistDAO {
@@ -92,4 +93,12 @@ public interface PlaylistDAO {
     boolean renamePlaylist(int playlistId, String newName);
 
 //Extended Functionality
+
+    /**
+     * Stream all playlists, public and private, ordered by id, reading one row at a time.
+     * The stream holds a database connection until it is closed, use it in a try-with-resources block.
+     *
+     * @return a lazily populated stream of all playlists in the database
+     */
+    Stream<Playlist> streamAllPlaylists();
 }
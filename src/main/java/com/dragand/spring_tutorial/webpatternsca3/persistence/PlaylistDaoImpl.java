@@ -3,14 +3,17 @@ package com.dragand.spring_tutorial.webpatternsca3.persistence;
 import com.dragand.spring_tutorial.webpatternsca3.business.*;
 import com.dragand.spring_tutorial.webpatternsca3.persistence.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Playlist DAO implementation used to interact with the database
@@ -22,12 +25,32 @@ import java.util.List;
 @Slf4j
 public class PlaylistDaoImpl extends MySQLDao implements PlaylistDAO{
 
+    private final UserDAO userDao;
 
     /**
      * Default constructor (uses default database set)
      */
     public PlaylistDaoImpl(){
-        super();
+        this(DataSourceFactory.getSharedDataSource(DataSourceFactory.DEFAULT_PROPERTIES));
+    }
+
+    /**
+     * Constructor that builds the user DAO on the same pool.
+     * @param dataSource - the pooled data source.
+     */
+    public PlaylistDaoImpl(DataSource dataSource){
+        this(dataSource, new UserDaoImpl(dataSource));
+    }
+
+    /**
+     * Constructor used by Spring. Connections are borrowed from the shared pool.
+     * @param dataSource - the pooled data source.
+     * @param userDao - the user DAO used to resolve usernames.
+     */
+    @Autowired
+    public PlaylistDaoImpl(DataSource dataSource, UserDAO userDao){
+        super(dataSource);
+        this.userDao = userDao;
     }
     //Search query methods
 
@@ -70,7 +93,7 @@ public class PlaylistDaoImpl extends MySQLDao implements PlaylistDAO{
 
         try(Connection con = super.getConnection();
             PreparedStatement ps = con.prepareStatement(queryStr)) {
-            ps.setInt(1, new UserDaoImpl().getUserByName(username).getUserID());
+            ps.setInt(1, userDao.getUserByName(username).getUserID());
             ps.setString(2, "%" + query + "%");
             try(ResultSet rs = ps.executeQuery()) {
                 playlists = mapToPlaylists(rs);
@@ -108,7 +131,7 @@ public class PlaylistDaoImpl extends MySQLDao implements PlaylistDAO{
     /**
      * Retrieve a playlist by the username of the user who created it
      * This method accomplishes this by first retrieving the id of the user from the username
-     * using the UserDaoImpl class and then using the id to retrieve the playlists.
+     * using the injected UserDAO and then using the id to retrieve the playlists.
      *
      * @param username the username of the user who created the playlist.
      * @return a list of all playlists created by the user
@@ -117,9 +140,9 @@ public class PlaylistDaoImpl extends MySQLDao implements PlaylistDAO{
     public List<Playlist> getPlaylistByUsername(String username) {
         List<Playlist> playlists = new ArrayList<>();
 
-        //Retrieve the user id from the username using the UserDaoImpl class
+        //Retrieve the user id from the username using the injected UserDAO
         //to make sure DAO integrity is maintained
-        int userId = new UserDaoImpl().getUserByName(username).getUserID();
+        int userId = userDao.getUserByName(username).getUserID();
 
         String query = "SELECT * FROM playlists WHERE userID = ?";
 
@@ -262,6 +285,7 @@ public class PlaylistDaoImpl extends MySQLDao implements PlaylistDAO{
     /**
      * Deletes a playlist from the database by its id using a prepared statement
      * The method returns {@code true} if the playlist was deleted successfully, if not {@code false}
+     * A {@link PlaylistDeletedEvent} is published for the search index.
      *
      * @param id the id of the playlist to be deleted
      * @return {@code true} if the playlist was deleted successfully, if not {@code false}
@@ -274,7 +298,11 @@ public class PlaylistDaoImpl extends MySQLDao implements PlaylistDAO{
             PreparedStatement ps = con.prepareStatement(query)) {
             ps.setInt(1, id);
             int affectedRows = ps.executeUpdate();
-            return affectedRows > 0;
+            if (affectedRows == 0) {
+                return false;
+            }
+            publishEvent(new PlaylistDeletedEvent(id));
+            return true;
         } catch (SQLException e) {
             logError("SQLException occurred while deleting playlist", e);
         }
@@ -312,6 +340,17 @@ public class PlaylistDaoImpl extends MySQLDao implements PlaylistDAO{
     //To be implemented in the future
 
 
+    /**
+     * Stream all playlists ordered by id.
+     * MySQL sends the rows one at a time, so every playlist can be processed with constant memory.
+     *
+     * @return a lazily populated stream of all playlists, empty if the query could not be started
+     */
+    @Override
+    public Stream<Playlist> streamAllPlaylists() {
+        return streamQuery("SELECT * FROM playlists ORDER BY playlistID", this::mapToPlaylist);
+    }
+
     //Helper methods
     /**
      * Maps a result set to a playlist object to maintain readability
@@ -0,0 +1,10 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+/**
+ * Published by {@link PlaylistDaoImpl#deletePlaylist(int)} after a playlist has been deleted.
+ * @param playlistID the id of the deleted playlist
+ */
+public record PlaylistDeletedEvent(
+        int playlistID
+) {
+}
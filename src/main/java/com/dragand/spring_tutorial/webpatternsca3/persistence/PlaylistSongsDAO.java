@@ -1,8 +1,10 @@
 package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.*;
+import com.dragand.spring_tutorial.webpatternsca3.utils.collections.IntHashSet;
 
 import java.util.List;
+import java.util.Map;
 
 public interface PlaylistSongsDAO {
     //Search query methods
@@ -43,6 +45,14 @@ public interface PlaylistSongsDAO {
      * @return {@code true} if the song exists in the playlist, if not {@code false}
      */
     boolean doesSongExistInPlaylist(int songId, int playlistId);
+
+    /**
+     * Retrieve the ids of the songs in every playlist belonging to a user, in one query
+     *
+     * @param userId the id of the user whose playlists to read
+     * @return a map of playlist id to the ids of its songs, playlists without songs are left out
+     */
+    Map<Integer, IntHashSet> getSongIdsInUserPlaylists(int userId);
     //Database Data Entry/Edit query
     /**
      * Adds a song to a playlist
@@ -2,33 +2,60 @@ package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Playlist;
 import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.utils.collections.IntHashSet;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.sql.init.dependency.DatabaseInitializationDependencyConfigurer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 @Slf4j
 public class PlaylistSongsDaoImpl extends MySQLDao implements PlaylistSongsDAO{
 
+    private final PlaylistDAO playlistDao;
+
     //Constructor
     /**
      * Constructor for the PlaylistSongsDaoImpl class
-     * Calls the super constructor to initialize the connection to the database
+     * Uses the shared pool for the default database
      */
     public PlaylistSongsDaoImpl() {
-        super();
+        this(DataSourceFactory.getSharedDataSource(DataSourceFactory.DEFAULT_PROPERTIES));
+    }
+
+    /**
+     * Constructor that builds the playlist DAO on the same pool.
+     * @param dataSource - the pooled data source.
+     */
+    public PlaylistSongsDaoImpl(DataSource dataSource) {
+        this(dataSource, new PlaylistDaoImpl(dataSource));
+    }
+
+    /**
+     * Constructor used by Spring. Connections are borrowed from the shared pool.
+     * @param dataSource - the pooled data source.
+     * @param playlistDao - the playlist DAO used to resolve playlists.
+     */
+    @Autowired
+    public PlaylistSongsDaoImpl(DataSource dataSource, PlaylistDAO playlistDao) {
+        super(dataSource);
+        this.playlistDao = playlistDao;
     }
 
     //Search methods
     /**
      * Retrieve a list of songs in a playlist by the playlist id
-     * This method accomplishes this by retrieving the songs from the playlistsongs table using the prepared statement
+     * This method accomplishes this by joining the playlistsongs table to the Songs table in a single prepared statement,
+     * so the whole playlist costs one connection and one round trip. Songs are returned ordered by song id.
      *
      * @param playlistId the id of the playlist to retrieve the songs from
      * @return a list of songs in the playlist
@@ -36,9 +63,10 @@ public class PlaylistSongsDaoImpl extends MySQLDao implements PlaylistSongsDAO{
     @Override
     public List<Song> getSongsInPlaylistByPlaylistId(int playlistId) {
         List<Song> songs = new ArrayList<>();
-        SongDaoImpl songDao = new SongDaoImpl();
 
-        String query = "SELECT songID FROM playlistsongs WHERE playlistID = ?";
+        String query = "SELECT s.songID, s.title, s.albumID, s.artistID, s.length, s.ratingCount, s.averageRating, s.ratingsSum " +
+                "FROM playlistsongs ps JOIN Songs s ON s.songID = ps.songID " +
+                "WHERE ps.playlistID = ? ORDER BY ps.songID";
 
         try (Connection con = super.getConnection();
              var ps = con.prepareStatement(query)) {
@@ -46,7 +74,7 @@ public class PlaylistSongsDaoImpl extends MySQLDao implements PlaylistSongsDAO{
 
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()){
-                    songs.add(songDao.findSongById(rs.getInt("songID")));
+                    songs.add(SongDaoImpl.mapSongFromResultSet(rs));
                 }
             }
         } catch (SQLException e) {
@@ -58,7 +86,7 @@ public class PlaylistSongsDaoImpl extends MySQLDao implements PlaylistSongsDAO{
 
     /**
      * Retrieve a list of songs in a playlist by the playlist name
-     * This method accomplishes this by first getting the playlist id by name from the playlistDaoImpl
+     * This method accomplishes this by first getting the playlist id by name from the injected PlaylistDAO
      * this is then used to retrieve the songs from the playlistsongs table using the prepared statement
      *
      * @param playlistName the name of the playlist to retrieve the songs from
@@ -68,7 +96,7 @@ public class PlaylistSongsDaoImpl extends MySQLDao implements PlaylistSongsDAO{
     public List<Song> getSongsInPlaylistByPlaylistName(String playlistName) {
         List<Song> songs = new ArrayList<>();
 
-        int playlistId = new PlaylistDaoImpl().getPlaylistByName(playlistName).getPlaylistId();
+        int playlistId = playlistDao.getPlaylistByName(playlistName).getPlaylistId();
 
         return getSongsInPlaylistByPlaylistId(playlistId);
     }
@@ -84,7 +112,7 @@ public class PlaylistSongsDaoImpl extends MySQLDao implements PlaylistSongsDAO{
      */
     @Override
     public boolean doesSongExistInUserPlaylists(int songId, int userId) {
-        List<Playlist> userPlaylists = new PlaylistDaoImpl().getPlaylistByUserID(userId);
+        List<Playlist> userPlaylists = playlistDao.getPlaylistByUserID(userId);
 
         for (Playlist playlist : userPlaylists) {
             if(doesSongExistInPlaylist(songId, playlist.getPlaylistId())){
@@ -120,6 +148,36 @@ public class PlaylistSongsDaoImpl extends MySQLDao implements PlaylistSongsDAO{
         }
     }
 
+    /**
+     * Retrieve the ids of the songs in every playlist belonging to a user
+     * Joins the playlists table to the playlistsongs table so all of the user's playlists cost one round trip.
+     * Only the ids are read and kept in primitive sets, the song rows are not needed to check membership.
+     *
+     * @param userId the id of the user whose playlists to read
+     * @return a map of playlist id to the ids of its songs, empty if the user has no songs in playlists
+     */
+    @Override
+    public Map<Integer, IntHashSet> getSongIdsInUserPlaylists(int userId) {
+        Map<Integer, IntHashSet> songIds = new HashMap<>();
+        String query = "SELECT ps.playlistID, ps.songID FROM playlists p " +
+                "JOIN playlistsongs ps ON ps.playlistID = p.playlistID WHERE p.userID = ?";
+
+        try (Connection con = super.getConnection();
+             var ps = con.prepareStatement(query)) {
+            ps.setInt(1, userId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    songIds.computeIfAbsent(rs.getInt(1), id -> new IntHashSet()).add(rs.getInt(2));
+                }
+            }
+        } catch (SQLException e) {
+            logError("An error occurred while retrieving the playlist songs of the user with id: " + userId, e);
+        }
+
+        return songIds;
+    }
+
 
     //Database Data Entry/Edit methods
 
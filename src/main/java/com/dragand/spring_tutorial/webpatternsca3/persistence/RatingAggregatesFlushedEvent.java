@@ -0,0 +1,17 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingDelta;
+
+import java.util.List;
+
+/**
+ * Published by {@link SongRatingAggregator} after rating changes have been written to the Songs table,
+ * so components holding copies of songs can apply the same changes.
+ * @param flushNumber the number of the flush, counting up from 1, see {@link SongRatingAggregator#betweenFlushes}
+ * @param deltas the changes that were written, one per song
+ */
+public record RatingAggregatesFlushedEvent(
+        long flushNumber,
+        List<RatingDelta> deltas
+) {
+}
@@ -3,7 +3,9 @@ package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingUpsertResult;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Rating DAO interface used to define the methods that will be implemented in the RatingDAOImpl class
@@ -14,15 +16,8 @@ import java.util.List;
 public interface RatingDAO {
 
     /**
-     * Adds a rating to the database
-     *
-     * @param rating The rating to add to the database
-     * @return {@code true} if the rating was added successfully, otherwise {@code false}
-     */
-    boolean addRating(Rating rating);
-
-    /**
-     * Removes a rating from the database
+     * Removes a rating from the database, only if it still has the song and value of the given rating.
+     * The aggregates of the song are not changed, remove ratings through {@link SongRatingAggregator#deleteRating(Rating)}
      *
      * @param rating The rating to remove from the database
      * @return {@code true} if the rating was removed successfully, otherwise {@code false}
@@ -41,7 +36,7 @@ public interface RatingDAO {
      * Gets all ratings made by a specific user using their ID
      *
      * @param userID The ID of the user to find ratings for
-     * @return A list of {@link Rating} objects made by the user
+     * @return A list of {@link Rating} objects made by the user, empty if there are none, {@code null} if the query failed
      */
     List<Rating> getRatingsByUserID(int userID);
 
@@ -54,16 +49,9 @@ public interface RatingDAO {
      */
     Rating getRatingByUserIDandSongID(int songID, int userID);
 
-    /**
-     * Updates an existing rating in the database
-     *
-     * @param rating The rating to update
-     * @return {@code true} if the rating was updated successfully, otherwise {@code false}
-     */
-    boolean updateRating(Rating rating);
-
     /**
      * Adds or updates a rating for a specified entity type.
+     * Song aggregates are not changed, rate songs through {@link SongRatingAggregator#rateSong(int, int, int)}
      *
      * @param type The type of entity (e.g., "song", "playlist").
      * @param entityID The ID of the entity being rated.
@@ -74,5 +62,23 @@ public interface RatingDAO {
 
     boolean addOrUpdateRating(String type, int entityID, int userID, int ratingValue);
 
+    /**
+     * Adds a song rating or replaces the user's existing one, in a single atomic statement on MySQL.
+     * The aggregates of the song are not changed, rate songs through {@link SongRatingAggregator#rateSong(int, int, int)}
+     * Relies on the unique (userID, songID) key of the ratings table.
+     *
+     * @param songID The ID of the song being rated
+     * @param userID The ID of the user providing the rating
+     * @param ratingValue The rating value
+     * @return A {@link RatingUpsertResult} telling whether the rating was inserted or updated, or {@code null} if the operation failed
+     */
+    RatingUpsertResult upsertRating(int songID, int userID, int ratingValue);
 
-}
\ No newline at end of file
+    /**
+     * Streams every rating ordered by id, reading one row at a time
+     * The stream holds a database connection until it is closed, use it in a try-with-resources block
+     *
+     * @return A lazily populated stream of all {@link Rating} objects
+     */
+    Stream<Rating> streamAllRatings();
+}
@@ -1,15 +1,21 @@
 package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingUpsertResult;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Implementation of RatingDAO interface for managing rating-related database operations.
@@ -27,8 +33,19 @@ public class RatingDaoImpl extends MySQLDao implements RatingDAO {
         super();
     }
 
+    /**
+     * Constructor used by Spring. Connections are borrowed from the shared pool.
+     * @param dataSource - the pooled data source.
+     */
+    @Autowired
+    public RatingDaoImpl(DataSource dataSource) {
+        super(dataSource);
+    }
+
     /**
      * Deletes a rating from the database.
+     * The song and value are part of the condition, so a caller keeping the song aggregates in sync
+     * knows exactly what was removed.
      *
      * @param rating The rating to be deleted.
      * @return True if the rating is deleted successfully, false otherwise.
@@ -39,14 +56,16 @@ public class RatingDaoImpl extends MySQLDao implements RatingDAO {
             return false;
         }
 
-        String sql = "DELETE FROM ratings WHERE ratingID = ?";
+        String sql = "DELETE FROM ratings WHERE ratingID = ? AND songID = ? AND ratingValue = ?";
         try (Connection conn = super.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, rating.getRatingID());
+            ps.setInt(2, rating.getSongID());
+            ps.setInt(3, rating.getRatingValue());
             return ps.executeUpdate() > 0;
 
-        } catch (SQLException | NullPointerException e) {
+        } catch (SQLException e) {
             logException("Error deleting rating", e);
             return false;
         }
@@ -54,6 +73,7 @@ public class RatingDaoImpl extends MySQLDao implements RatingDAO {
 
     /**
      * Adds or updates a rating for a specific entity.
+     * Uses the same upsert as {@link #upsertRating(int, int, int)}.
      *
      * @param type        The entity type (e.g., song, playlist, etc.).
      * @param entityID    The ID of the entity being rated.
@@ -63,76 +83,27 @@ public class RatingDaoImpl extends MySQLDao implements RatingDAO {
      */
     @Override
     public boolean addOrUpdateRating(String type, int entityID, int userID, int ratingValue) {
-        String table = getTableName(type);
-
-        String checkSql = "SELECT ratingID FROM ratings WHERE userID = ? AND " + table + "ID = ?";
-        String updateSql = "UPDATE ratings SET ratingValue = ? WHERE userID = ? AND " + table + "ID = ?";
-        String insertSql = "INSERT INTO ratings (userID, " + table + "ID, ratingValue) VALUES (?, ?, ?)";
-
-        try (Connection conn = super.getConnection()) {
-            // Check if rating exists
-            try (PreparedStatement checkPs = conn.prepareStatement(checkSql)) {
-                checkPs.setInt(1, userID);
-                checkPs.setInt(2, entityID);
-                try (ResultSet rs = checkPs.executeQuery()) {
-                    if (rs.next()) {
-                        // Update the rating
-                        try (PreparedStatement updatePs = conn.prepareStatement(updateSql)) {
-                            updatePs.setInt(1, ratingValue);
-                            updatePs.setInt(2, userID);
-                            updatePs.setInt(3, entityID);
-                            return updatePs.executeUpdate() > 0;
-                        }
-                    }
-                }
-            }
-            // Insert a new rating
-            try (PreparedStatement insertPs = conn.prepareStatement(insertSql)) {
-                insertPs.setInt(1, userID);
-                insertPs.setInt(2, entityID);
-                insertPs.setInt(3, ratingValue);
-                return insertPs.executeUpdate() > 0;
-            }
-        } catch (SQLException e) {
-            logException("Error adding or updating rating", e);
-            return false;
-        }
+        return upsert(getTableName(type), entityID, userID, ratingValue) != null;
     }
 
     /**
-     * Updates an existing rating.
+     * Adds a song rating or replaces the user's existing one.
      *
-     * @param rating The rating to be updated.
-     * @return True if the update is successful, false otherwise.
+     * @param songID      The ID of the song being rated.
+     * @param userID      The ID of the user providing the rating.
+     * @param ratingValue The rating value.
+     * @return Whether the rating was inserted or updated (with the replaced value), or null if the operation failed.
      */
     @Override
-    public boolean updateRating(Rating rating) {
-        if (rating == null) {
-            return false;
-        }
-
-        String sql = "UPDATE ratings SET userID = ?, songID = ?, ratingValue = ? WHERE ratingID = ?";
-        try (Connection conn = super.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, rating.getUserID());
-            ps.setInt(2, rating.getSongID());
-            ps.setInt(3, rating.getRatingValue());
-            ps.setInt(4, rating.getRatingID());
-
-            return ps.executeUpdate() > 0;
-
-        } catch (SQLException | NullPointerException e) {
-            logException("Error updating rating", e);
-            return false;
-        }
+    public RatingUpsertResult upsertRating(int songID, int userID, int ratingValue) {
+        return upsert("song", songID, userID, ratingValue);
     }
 
     /**
      * Retrieves all ratings provided by a specific user.
      *
      * @param userID The ID of the user.
-     * @return A list of ratings provided by the user.
+     * @return A list of ratings provided by the user, or null if they could not be read.
      */
     @Override
     public List<Rating> getRatingsByUserID(int userID) {
@@ -151,6 +122,7 @@ public class RatingDaoImpl extends MySQLDao implements RatingDAO {
 
         } catch (SQLException | NullPointerException e) {
             logException("Error retrieving ratings by user ID", e);
+            return null;
         }
 
         return ratings;
@@ -213,28 +185,117 @@ public class RatingDaoImpl extends MySQLDao implements RatingDAO {
     }
 
     /**
-     * Adds a new rating to the database.
+     * Inserts a rating or replaces the existing one, in a single statement on MySQL.
      *
-     * @param rating The rating to be added.
-     * @return True if the rating is added successfully, false otherwise.
+     * @param table       The resolved entity name, used as the prefix of the ID column.
+     * @param entityID    The ID of the entity being rated.
+     * @param userID      The ID of the user providing the rating.
+     * @param ratingValue The rating value.
+     * @return The outcome of the upsert, or null if the operation failed.
      */
-    @Override
-    public boolean addRating(Rating rating) {
-        String sql = "INSERT INTO Ratings (userID, songID, ratingValue) VALUES (?, ?, ?)";
-        try (Connection conn = super.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+    private RatingUpsertResult upsert(String table, int entityID, int userID, int ratingValue) {
+        try (Connection conn = super.getConnection()) {
+            if (conn == null) {
+                return null;
+            }
+            return isMySQL(conn)
+                    ? upsertOnDuplicateKey(conn, table, entityID, userID, ratingValue)
+                    : upsertWithRowLock(conn, table, entityID, userID, ratingValue);
+        } catch (SQLException e) {
+            logException("Error adding or updating rating", e);
+            return null;
+        }
+    }
 
-            ps.setInt(1, rating.getUserID());
-            ps.setInt(2, rating.getSongID());
-            ps.setInt(3, rating.getRatingValue());
-            return ps.executeUpdate() > 0;
+    /**
+     * MySQL: INSERT ... ON DUPLICATE KEY UPDATE, one round trip for a new and a replaced rating alike.
+     * On a duplicate the old value is handed back through LAST_INSERT_ID(expr) and read from the generated keys,
+     * and updatedAt always changes so the affected row count is 1 for an insert and 2 for an update.
+     */
+    private RatingUpsertResult upsertOnDuplicateKey(Connection conn, String table, int entityID, int userID,
+                                                    int ratingValue) throws SQLException {
+        String sql = "INSERT INTO ratings (userID, " + table + "ID, ratingValue) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE ratingValue = ? + 0 * LAST_INSERT_ID(ratingValue), updatedAt = CURRENT_TIMESTAMP(6)";
+
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, userID);
+            ps.setInt(2, entityID);
+            ps.setInt(3, ratingValue);
+            ps.setInt(4, ratingValue);
 
+            if (ps.executeUpdate() == 1) {
+                return new RatingUpsertResult(true, 0);
+            }
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    System.out.println(LocalDateTime.now() + ": Replaced a rating but the driver returned no previous value.");
+                    return null;
+                }
+                return new RatingUpsertResult(false, keys.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Other databases (the embedded H2 one) have no LAST_INSERT_ID(expr). The insert is tried first; if the user
+     * already rated the entity the existing row is locked, read for its old value and updated in one transaction.
+     */
+    private RatingUpsertResult upsertWithRowLock(Connection conn, String table, int entityID, int userID,
+                                                 int ratingValue) throws SQLException {
+        String insertSql = "INSERT INTO ratings (userID, " + table + "ID, ratingValue) VALUES (?, ?, ?)";
+        String selectSql = "SELECT ratingValue FROM ratings WHERE userID = ? AND " + table + "ID = ? FOR UPDATE";
+        String updateSql = "UPDATE ratings SET ratingValue = ?, updatedAt = CURRENT_TIMESTAMP(6) WHERE userID = ? AND " + table + "ID = ?";
+
+        try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
+            ps.setInt(1, userID);
+            ps.setInt(2, entityID);
+            ps.setInt(3, ratingValue);
+            ps.executeUpdate();
+            return new RatingUpsertResult(true, 0);
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // Already rated, or a bad rating value or entity, which the update below rejects as well
+        }
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement select = conn.prepareStatement(selectSql);
+             PreparedStatement update = conn.prepareStatement(updateSql)) {
+            select.setInt(1, userID);
+            select.setInt(2, entityID);
+            int previousValue;
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    conn.rollback();
+                    return null;
+                }
+                previousValue = rs.getInt("ratingValue");
+            }
+
+            update.setInt(1, ratingValue);
+            update.setInt(2, userID);
+            update.setInt(3, entityID);
+            update.executeUpdate();
+            conn.commit();
+            return new RatingUpsertResult(false, previousValue);
         } catch (SQLException e) {
-            logException("Error adding rating", e);
-            return false;
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
         }
     }
 
+    /**
+     * Streams every rating in the ratings table ordered by id.
+     * MySQL sends the rows one at a time, so all ratings can be processed with constant memory.
+     *
+     * @return A lazily populated stream of Rating objects, empty if the query could not be started.
+     */
+    @Override
+    public Stream<Rating> streamAllRatings() {
+        return streamQuery("SELECT ratingID, userID, songID, ratingValue FROM ratings ORDER BY ratingID", this::extractRating);
+    }
+
     /**
      * Extracts a Rating object from the current row of a ResultSet.
      *
@@ -0,0 +1,151 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Applies versioned schema scripts to a database. Scripts are named {@code V<version>__<description>.sql},
+ * are run in version order, and each version is recorded in the schema_version table so it is only ever run once.
+ * An existing database is brought up to date by running only the scripts it has not seen yet.
+ */
+@Slf4j
+public final class SchemaMigrator {
+
+    /**
+     * Classpath folder of the scripts of the embedded database.
+     */
+    public static final String EMBEDDED_SCHEMA = "db/embedded";
+
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Run the scripts of a folder that the database has not seen yet.
+     * @param dataSource - the database to migrate.
+     * @param location - classpath folder holding the scripts.
+     * @return - the number of scripts that were run.
+     */
+    public static int migrate(DataSource dataSource, String location) {
+        List<Script> scripts = findScripts(location);
+        try (Connection con = dataSource.getConnection()) {
+            try (Statement st = con.createStatement()) {
+                st.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                        + "version INT PRIMARY KEY, "
+                        + "description VARCHAR(200) NOT NULL, "
+                        + "installedOn TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            }
+            int current = currentVersion(con);
+            int applied = 0;
+            for (Script script : scripts) {
+                if (script.version() > current) {
+                    apply(con, script);
+                    applied++;
+                }
+            }
+            if (applied > 0) {
+                log.info("Schema {} migrated from version {} to {}", location, current, scripts.getLast().version());
+            }
+            return applied;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to migrate the schema in " + location, e);
+        }
+    }
+
+    /**
+     * @param dataSource - the database.
+     * @return - the highest version applied to it, 0 if none.
+     */
+    public static int currentVersion(DataSource dataSource) {
+        try (Connection con = dataSource.getConnection()) {
+            return currentVersion(con);
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+
+    //Helper methods
+
+    private static int currentVersion(Connection con) throws SQLException {
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Run one script and record its version in the same transaction, where the database allows DDL in transactions.
+     */
+    private static void apply(Connection con, Script script) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try {
+            ScriptUtils.executeSqlScript(con, script.resource());
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                ps.setInt(1, script.version());
+                ps.setString(2, script.description());
+                ps.executeUpdate();
+            }
+            con.commit();
+            log.info("Applied schema version {}: {}", script.version(), script.description());
+        } catch (SQLException | RuntimeException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static List<Script> findScripts(String location) {
+        Resource[] resources;
+        try {
+            resources = new PathMatchingResourcePatternResolver().getResources("classpath*:" + location + "/V*__*.sql");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list the schema scripts in " + location, e);
+        }
+        List<Script> scripts = Stream.of(resources)
+                .map(SchemaMigrator::toScript)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingInt(Script::version))
+                .toList();
+        if (scripts.isEmpty()) {
+            throw new IllegalStateException("No schema scripts found in " + location);
+        }
+        for (int i = 1; i < scripts.size(); i++) {
+            if (scripts.get(i).version() == scripts.get(i - 1).version()) {
+                throw new IllegalStateException("Two schema scripts have version " + scripts.get(i).version() + " in " + location);
+            }
+        }
+        return scripts;
+    }
+
+    private static Script toScript(Resource resource) {
+        Matcher name = SCRIPT_NAME.matcher(Objects.requireNonNullElse(resource.getFilename(), ""));
+        if (!name.matches()) {
+            log.warn("Ignoring schema script with an unexpected name: {}", resource.getFilename());
+            return null;
+        }
+        return new Script(Integer.parseInt(name.group(1)), name.group(2).replace('_', ' '), resource);
+    }
+
+    private record Script(int version, String description, Resource resource) {
+    }
+}
@@ -0,0 +1,45 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * /actuator/slowqueries: the queries that took the most database time over the window of the {@link SlowQueryLog},
+ * with samples of their slow executions. A DELETE starts the totals over.
+ * Served over HTTP only when added to management.endpoints.web.exposure.include, as nothing checks a login
+ * on /actuator/**.
+ */
+@Component
+@Endpoint(id = "slowqueries")
+public class SlowQueryEndpoint {
+
+    private final SlowQueryLog slowQueryLog;
+
+    /**
+     * The report of the endpoint.
+     * @param threshold - queries taking longer are counted as slow and sampled.
+     * @param window - time the totals cover.
+     * @param queries - the top queries, most total time first.
+     */
+    public record SlowQueryReport(Duration threshold, Duration window, List<SlowQueryLog.QueryStats> queries) {
+    }
+
+    public SlowQueryEndpoint(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @ReadOperation
+    public SlowQueryReport slowQueries() {
+        return new SlowQueryReport(slowQueryLog.getThreshold(), slowQueryLog.getWindow(), slowQueryLog.top());
+    }
+
+    @DeleteOperation
+    public void reset() {
+        slowQueryLog.reset();
+    }
+}
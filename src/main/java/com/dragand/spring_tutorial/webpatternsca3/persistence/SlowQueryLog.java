@@ -0,0 +1,286 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Times every statement run on the DAO data source (see {@link InstrumentedDataSource}) by its {@link SqlFingerprint},
+ * logs the ones slower than {@code slow-query.threshold}, with their bound values unless {@code slow-query.log-values}
+ * is off (values of statements on Users are always masked), and keeps the totals of the last
+ * {@code slow-query.window} so the queries taking the most database time overall can be listed
+ * by the slowqueries actuator endpoint. A fast query run a thousand times a page (an N+1) ranks above one slow query.
+ * <p>
+ * The window is split into slices that are cleared in turn as time moves on, so the totals cover between
+ * five sixths of the window and the whole of it, and memory does not grow with time.
+ * Fingerprints are cached per SQL string, the DAOs use a small fixed set of them.
+ * <p>
+ * The time of a query is the time of its execute call. Rows of a streamed result are read after it returns,
+ * so a streaming query is timed until its first rows arrive.
+ */
+@Slf4j
+@Component
+public class SlowQueryLog {
+
+    private static final int SLICES = 6;
+    /**
+     * Most fingerprints kept per slice, in case statements are built with their values in them.
+     */
+    private static final int MAX_FINGERPRINTS = 1_000;
+    private static final int MAX_VALUE_LENGTH = 100;
+    /**
+     * Statements on these tables carry usernames and password hashes, their values are never shown.
+     */
+    private static final Pattern MASKED_TABLES = Pattern.compile("(?i)\\bUsers\\b");
+    private static final String MASKED = "***";
+
+    private final boolean enabled;
+    private final long thresholdNanos;
+    private final Duration window;
+    private final int top;
+    private final int samples;
+    private final boolean logValues;
+    private final long sliceNanos;
+    private final Slice[] slices = new Slice[SLICES];
+    private final Cache<String, SqlFingerprint> fingerprints = Caffeine.newBuilder().maximumSize(10_000).build();
+    private final LongSupplier ticker;
+
+    /**
+     * One line of the top list.
+     * @param fingerprint - the shape of the query.
+     * @param count - executions in the window.
+     * @param totalMs - time of all of them together.
+     * @param meanMs - mean time of one.
+     * @param maxMs - time of the slowest.
+     * @param slow - executions over the threshold.
+     * @param errors - executions that threw an SQLException.
+     * @param samples - the latest slow executions, newest first.
+     */
+    public record QueryStats(String fingerprint, long count, double totalMs, double meanMs, double maxMs,
+                             long slow, long errors, List<Sample> samples) {
+    }
+
+    /**
+     * @param at - when the query finished.
+     * @param millis - time it took.
+     * @param values - the values bound to its placeholders, in order, empty if values are not logged.
+     */
+    public record Sample(Instant at, double millis, List<String> values) {
+    }
+
+    /**
+     * @param enabled - false to not time statements at all.
+     * @param threshold - queries taking longer are logged.
+     * @param window - time the totals are kept for.
+     * @param top - length of the top list.
+     * @param samples - slow executions kept per query.
+     * @param logValues - false to leave the bound values out of the log and the samples.
+     */
+    @Autowired
+    public SlowQueryLog(@Value("${slow-query.enabled:true}") boolean enabled,
+                        @Value("${slow-query.threshold:200ms}") Duration threshold,
+                        @Value("${slow-query.window:15m}") Duration window,
+                        @Value("${slow-query.top:20}") int top,
+                        @Value("${slow-query.samples:5}") int samples,
+                        @Value("${slow-query.log-values:true}") boolean logValues) {
+        this(enabled, threshold, window, top, samples, logValues, System::nanoTime);
+    }
+
+    SlowQueryLog(boolean enabled, Duration threshold, Duration window, int top, int samples, boolean logValues,
+                 LongSupplier ticker) {
+        this.enabled = enabled;
+        this.thresholdNanos = threshold.toNanos();
+        this.window = window;
+        this.top = top;
+        this.samples = samples;
+        this.logValues = logValues;
+        this.sliceNanos = Math.max(1, window.toNanos() / SLICES);
+        this.ticker = ticker;
+        for (int i = 0; i < SLICES; i++) {
+            slices[i] = new Slice();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getThreshold() {
+        return Duration.ofNanos(thresholdNanos);
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    /**
+     * Record one execution.
+     * @param sql - the statement as sent to the driver.
+     * @param values - the values bound to its placeholders, the value of placeholder n at index n - 1. May be null.
+     * @param nanos - time the execute call took.
+     * @param failed - true if it threw an SQLException.
+     */
+    public void record(String sql, Object[] values, long nanos, boolean failed) {
+        if (!enabled || sql == null) {
+            return;
+        }
+        String fingerprint = fingerprints.get(sql, SqlFingerprint::of).withLikePatterns(values);
+        boolean slow = nanos >= thresholdNanos;
+        List<String> shownValues = slow && logValues ? describe(sql, values) : List.of();
+        if (slow) {
+            log.warn("Slow query ({} ms): {} values {}", String.format(Locale.ROOT, "%.1f", nanos / 1e6), fingerprint, shownValues);
+        }
+
+        long epoch = ticker.getAsLong() / sliceNanos;
+        Slice slice = slices[(int) Math.floorMod(epoch, SLICES)];
+        Totals totals = slice.current(epoch).totals(fingerprint);
+        if (totals == null) {
+            return;
+        }
+        totals.count.increment();
+        totals.totalNanos.add(nanos);
+        totals.maxNanos.accumulate(nanos);
+        if (failed) {
+            totals.errors.increment();
+        }
+        if (slow) {
+            totals.slow.increment();
+            totals.addSample(new Sample(Instant.now(), nanos / 1e6, shownValues), samples);
+        }
+    }
+
+    /**
+     * @return - the queries that took the most time in the window, most first.
+     */
+    public List<QueryStats> top() {
+        long epoch = ticker.getAsLong() / sliceNanos;
+        Map<String, QueryStats> merged = new HashMap<>();
+        for (Slice slice : slices) {
+            if (slice.epoch <= epoch - SLICES) {
+                continue;
+            }
+            slice.byFingerprint.forEach((fingerprint, totals) -> merged.merge(fingerprint, totals.stats(fingerprint), this::add));
+        }
+        return merged.values().stream()
+                .sorted(Comparator.comparingDouble(QueryStats::totalMs).reversed())
+                .limit(top)
+                .toList();
+    }
+
+    /**
+     * Forget all totals, e.g. after a fix was deployed.
+     */
+    public void reset() {
+        for (Slice slice : slices) {
+            slice.byFingerprint.clear();
+        }
+    }
+
+    //Helper methods
+
+    private QueryStats add(QueryStats a, QueryStats b) {
+        long count = a.count() + b.count();
+        double totalMs = a.totalMs() + b.totalMs();
+        List<Sample> samples = new ArrayList<>(a.samples());
+        samples.addAll(b.samples());
+        samples.sort(Comparator.comparing(Sample::at).reversed());
+        return new QueryStats(a.fingerprint(), count, totalMs, count == 0 ? 0 : totalMs / count,
+                Math.max(a.maxMs(), b.maxMs()), a.slow() + b.slow(), a.errors() + b.errors(),
+                List.copyOf(samples.subList(0, Math.min(samples.size(), this.samples))));
+    }
+
+    private static List<String> describe(String sql, Object[] values) {
+        if (values == null) {
+            return List.of();
+        }
+        if (MASKED_TABLES.matcher(sql).find()) {
+            return Arrays.stream(values).map(value -> MASKED).toList();
+        }
+        return Arrays.stream(values).map(SlowQueryLog::describe).toList();
+    }
+
+    private static String describe(Object value) {
+        return switch (value) {
+            case null -> "NULL";
+            case byte[] bytes -> "<" + bytes.length + " bytes>";
+            case String text -> "'" + (text.length() > MAX_VALUE_LENGTH ? text.substring(0, MAX_VALUE_LENGTH) + "..." : text) + "'";
+            default -> String.valueOf(value);
+        };
+    }
+
+    /**
+     * The totals of one part of the window.
+     */
+    private static final class Slice {
+        private final Map<String, Totals> byFingerprint = new ConcurrentHashMap<>();
+        private volatile long epoch = Long.MIN_VALUE;
+
+        /**
+         * @return - this slice, emptied first if it still holds an older part of the window.
+         */
+        private Slice current(long now) {
+            if (epoch != now) {
+                synchronized (this) {
+                    if (epoch != now) {
+                        byFingerprint.clear();
+                        epoch = now;
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return - the totals of the fingerprint, null if the slice is full.
+         */
+        private Totals totals(String fingerprint) {
+            Totals totals = byFingerprint.get(fingerprint);
+            if (totals == null && byFingerprint.size() < MAX_FINGERPRINTS) {
+                totals = byFingerprint.computeIfAbsent(fingerprint, f -> new Totals());
+            }
+            return totals;
+        }
+    }
+
+    private static final class Totals {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder slow = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final ArrayDeque<Sample> samples = new ArrayDeque<>();
+
+        private synchronized void addSample(Sample sample, int max) {
+            samples.addFirst(sample);
+            while (samples.size() > max) {
+                samples.removeLast();
+            }
+        }
+
+        private synchronized QueryStats stats(String fingerprint) {
+            long n = count.sum();
+            double totalMs = totalNanos.sum() / 1e6;
+            return new QueryStats(fingerprint, n, totalMs, n == 0 ? 0 : totalMs / n, maxNanos.get() / 1e6,
+                    slow.sum(), errors.sum(), List.copyOf(samples));
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+
+/**
+ * Published by {@link SongDaoImpl#addSong(Song)} after a song has been inserted.
+ * @param song the inserted song with its generated id
+ */
+public record SongAddedEvent(
+        Song song
+) {
+}
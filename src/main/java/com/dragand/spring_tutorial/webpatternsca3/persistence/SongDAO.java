@@ -1,8 +1,10 @@
 package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingDelta;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Song DAO interface used to define the methods that will be implemented in the SongDAOImpl class
@@ -76,6 +78,37 @@ public interface SongDAO {
      */
     List<Song> findAllFromAlbumById(int albumId);
 
+    //Keyset pagination, pages are read from an index instead of loading the whole table
+
+    /**
+     * Gets the next page of songs ordered by id
+     *
+     * @param afterSongId The id of the last song of the previous page, 0 for the first page
+     * @param limit The maximum number of songs to return
+     * @return A list of at most {@code limit} {@link Song} objects with an id greater than {@code afterSongId}
+     */
+    List<Song> getSongsAfter(int afterSongId, int limit);
+
+    /**
+     * Gets the next page of songs in the given order
+     *
+     * @param sort The order of the catalog
+     * @param afterSongId The id of the last song of the previous page, 0 for the first page
+     * @param limit The maximum number of songs to return
+     * @return A list of at most {@code limit} {@link Song} objects that come after the song in that order
+     */
+    List<Song> getSongsAfter(SongSort sort, int afterSongId, int limit);
+
+    /**
+     * Gets the previous page of songs in the given order
+     *
+     * @param sort The order of the catalog
+     * @param beforeSongId The id of the first song of the current page, 0 for the last page
+     * @param limit The maximum number of songs to return
+     * @return A list of at most {@code limit} {@link Song} objects that come before the song, still in that order
+     */
+    List<Song> getSongsBefore(SongSort sort, int beforeSongId, int limit);
+
 
     //Should be in the ratings table?
 
@@ -101,5 +134,19 @@ public interface SongDAO {
      */
     boolean deleteSong(int id);
 
+    /**
+     * Applies accumulated rating changes to the ratingCount, ratingsSum and averageRating of the songs in one batch
+     *
+     * @param deltas The changes to apply, at most one per song
+     * @return {@code true} if the whole batch was written, otherwise {@code false}
+     */
+    boolean applyRatingDeltas(List<RatingDelta> deltas);
 
+    /**
+     * Streams every song in the catalog ordered by id, reading one row at a time
+     * The stream holds a database connection until it is closed, use it in a try-with-resources block
+     *
+     * @return A lazily populated stream of all {@link Song} objects
+     */
+    Stream<Song> streamAllSongs();
 }
@@ -3,14 +3,21 @@ package com.dragand.spring_tutorial.webpatternsca3.persistence;
 import com.dragand.spring_tutorial.webpatternsca3.business.Album;
 import com.dragand.spring_tutorial.webpatternsca3.business.Artist;
 import com.dragand.spring_tutorial.webpatternsca3.business.Song;
-import lombok.RequiredArgsConstructor;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingDelta;
+import com.dragand.spring_tutorial.webpatternsca3.config.CacheConfig;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Repository;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Song DAO implementation class used to interact with the database
@@ -18,13 +25,40 @@ import java.util.List;
  * @author Aloysius Wilfred Pacheco D00253302
  */
 
-@RequiredArgsConstructor
 @Repository
 @Log4j2
 public class SongDaoImpl extends MySQLDao implements SongDAO{
 
+    private final ArtistDAO artistDao;
+    private final AlbumDAO albumDao;
+
+    public SongDaoImpl(){
+        this(DataSourceFactory.getSharedDataSource(DataSourceFactory.DEFAULT_PROPERTIES));
+    }
+
     public SongDaoImpl(String databaseName){
-        super(databaseName);
+        this(DataSourceFactory.getSharedDataSource(databaseName));
+    }
+
+    /**
+     * Constructor that builds the artist and album DAOs on the same pool.
+     * @param dataSource - the pooled data source.
+     */
+    public SongDaoImpl(DataSource dataSource){
+        this(dataSource, new ArtistDaoImpl(dataSource), new AlbumDaoImpl(dataSource));
+    }
+
+    /**
+     * Constructor used by Spring. Connections are borrowed from the shared pool.
+     * @param dataSource - the pooled data source.
+     * @param artistDao - the artist DAO used to resolve artist names.
+     * @param albumDao - the album DAO used to resolve album names.
+     */
+    @Autowired
+    public SongDaoImpl(DataSource dataSource, ArtistDAO artistDao, AlbumDAO albumDao){
+        super(dataSource);
+        this.artistDao = artistDao;
+        this.albumDao = albumDao;
     }
 
     //Search Queries
@@ -54,6 +88,7 @@ public class SongDaoImpl extends MySQLDao implements SongDAO{
      * @return A Song object if a matching song is found, otherwise null.
      */
     @Override
+    @Cacheable(cacheNames = CacheConfig.SONGS, unless = "#result == null")
     public Song findSongById(int id) {
         String sql = "SELECT songID, title, albumID, artistID, length, ratingCount, averageRating, ratingsSum " +
                 "FROM Songs WHERE songID = ?";
@@ -131,7 +166,7 @@ public class SongDaoImpl extends MySQLDao implements SongDAO{
     @Override
     public List<Song> findAllSongsFromArtist(String artist) {
         //uses method from artistDao implementation to maintain Dao integrity.
-        Artist ar = new ArtistDaoImpl().getArtistByName(artist);
+        Artist ar = artistDao.getArtistByName(artist);
         if(ar==null){
             return new ArrayList<>();
         }
@@ -185,7 +220,7 @@ public class SongDaoImpl extends MySQLDao implements SongDAO{
     @Override
     public List<Song> findAllFromAlbumByName(String albumName) {
         //uses method from albumDao implementation to maintain Dao integrity.
-        Album al = new AlbumDaoImpl().getAlbumByName(albumName);
+        Album al = albumDao.getAlbumByName(albumName);
         if(al==null){
             return new ArrayList<>();
         }
@@ -227,10 +262,67 @@ public class SongDaoImpl extends MySQLDao implements SongDAO{
         return new ArrayList<>();
     }
 
+    /**
+     * Gets the next page of songs ordered by id using {@code songID > ? ORDER BY songID LIMIT ?},
+     * which reads only {@code limit} rows from the primary key however large the table is.
+     *
+     * @param afterSongId The id of the last song of the previous page, 0 for the first page.
+     * @param limit The maximum number of songs to return.
+     * @return A list of Song objects after the given id.
+     */
+    @Override
+    public List<Song> getSongsAfter(int afterSongId, int limit) {
+        return getSongsAfter(SongSort.ID, afterSongId, limit);
+    }
+
+    /**
+     * Gets the next page of songs in the given order.
+     *
+     * @param sort The order of the catalog.
+     * @param afterSongId The id of the last song of the previous page, 0 for the first page.
+     * @param limit The maximum number of songs to return.
+     * @return A list of Song objects that come after the given song.
+     */
+    @Override
+    public List<Song> getSongsAfter(SongSort sort, int afterSongId, int limit) {
+        return findSongsPage(sort, afterSongId, limit, true);
+    }
+
+    /**
+     * Gets the previous page of songs in the given order.
+     * The rows are read backwards from the index and reversed, so the page is in the same order as the next pages.
+     *
+     * @param sort The order of the catalog.
+     * @param beforeSongId The id of the first song of the current page, 0 for the last page.
+     * @param limit The maximum number of songs to return.
+     * @return A list of Song objects that come before the given song.
+     */
+    @Override
+    public List<Song> getSongsBefore(SongSort sort, int beforeSongId, int limit) {
+        List<Song> songs = findSongsPage(sort, beforeSongId, limit, false);
+        Collections.reverse(songs);
+        return songs;
+    }
+
+    /**
+     * Streams every song in the Songs table ordered by id.
+     * MySQL sends the rows one at a time, so the whole catalog can be processed with constant memory.
+     *
+     * @return A lazily populated stream of Song objects, empty if the query could not be started.
+     */
+    @Override
+    public Stream<Song> streamAllSongs() {
+        String sql = "SELECT songID, title, albumID, artistID, length, ratingCount, averageRating, ratingsSum " +
+                "FROM Songs ORDER BY songID";
+        return streamQuery(sql, SongDaoImpl::mapSongFromResultSet);
+    }
+
     /**
      * Adds a new song to the Songs table The provided Song object is mapped to the SQL
      * parameters, and the song is inserted into the database
      *
+     * A {@link SongAddedEvent} with the generated id is published for the search index.
+     *
      * @param song The Song object to be added.
      * @return True if the song was added successfully, otherwise false.
      */
@@ -239,7 +331,7 @@ public class SongDaoImpl extends MySQLDao implements SongDAO{
         String sql = "INSERT INTO Songs (title, albumID, artistID, length, ratingCount, averageRating, ratingsSum) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?)";
         try (Connection con = super.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+             PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setString(1, song.getTitle());
             ps.setInt(2, song.getAlbumID());
             ps.setInt(3, song.getArtistID());
@@ -247,7 +339,17 @@ public class SongDaoImpl extends MySQLDao implements SongDAO{
             ps.setInt(5, song.getRatingCount());
             ps.setDouble(6, song.getAverageRating());
             ps.setInt(7, song.getRatingsSum());
-            return ps.executeUpdate() > 0;
+            if (ps.executeUpdate() == 0) {
+                return false;
+            }
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    publishEvent(new SongAddedEvent(new Song(keys.getInt(1), song.getTitle(), song.getAlbumID(),
+                            song.getArtistID(), song.getLength(), song.getRatingCount(), song.getAverageRating(),
+                            song.getRatingsSum())));
+                }
+            }
+            return true;
         } catch (SQLException e) {
             logError("An error occurred while adding the song", e);
         }
@@ -257,22 +359,73 @@ public class SongDaoImpl extends MySQLDao implements SongDAO{
     /**
      * Deletes a song from the Songs table by its song ID.
      *
+     * A {@link SongDeletedEvent} is published for the search index.
+     *
      * @param id The song's ID to be deleted.
      * @return True if the song was deleted successfully, otherwise false.
      */
     @Override
+    @CacheEvict(cacheNames = CacheConfig.SONGS, key = "#id")
     public boolean deleteSong(int id) {
         String sql = "DELETE FROM Songs WHERE songID = ?";
         try (Connection con = super.getConnection();
              PreparedStatement ps = con.prepareStatement(sql)) {
             ps.setInt(1, id);
-            return ps.executeUpdate() > 0;
+            if (ps.executeUpdate() == 0) {
+                return false;
+            }
+            publishEvent(new SongDeletedEvent(id));
+            return true;
         } catch (SQLException e) {
             logError("An error occurred while deleting the song", e);
         }
         return false;
     }
 
+    /**
+     * Applies accumulated rating changes to the Songs table as a single JDBC batch inside one transaction.
+     * The average is computed from the old columns plus the bound deltas, not from the just assigned count and sum,
+     * as databases differ in whether later assignments of an UPDATE see the earlier ones.
+     *
+     * @param deltas The changes to apply, at most one per song.
+     * @return True if the whole batch was written, otherwise false and nothing is written.
+     */
+    @Override
+    public boolean applyRatingDeltas(List<RatingDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return true;
+        }
+        String sql = "UPDATE Songs SET ratingCount = ratingCount + ?, ratingsSum = ratingsSum + ?, " +
+                "averageRating = COALESCE(CAST(ratingsSum + ? AS DECIMAL(12, 2)) / NULLIF(ratingCount + ?, 0), 0) " +
+                "WHERE songID = ?";
+        try (Connection con = super.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                for (RatingDelta delta : deltas) {
+                    ps.setLong(1, delta.countDelta());
+                    ps.setLong(2, delta.sumDelta());
+                    ps.setLong(3, delta.sumDelta());
+                    ps.setLong(4, delta.countDelta());
+                    ps.setInt(5, delta.songID());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                con.commit();
+                return true;
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            logError("An error occurred while applying rating changes to songs", e);
+        }
+        return false;
+    }
+
     //Extended functionality
     /**
      * Retrieves a limited number of songs based on their name. This can be used in places only limited results need to be shown.
@@ -283,14 +436,65 @@ public class SongDaoImpl extends MySQLDao implements SongDAO{
      */
 
 //Refactor methods (these methods are used in case of repetitive code from previous application)
+    /**
+     * Reads one page of songs starting next to the cursor song.
+     * For sorted orders the sort value of the cursor is looked up by its id, so
+     * {@code (column, songID)} can be compared against it and the page is read as a range of the index.
+     *
+     * @param sort The order of the catalog.
+     * @param cursorSongId The song the page starts next to, 0 to start at the beginning (or the end when reading backwards).
+     * @param limit The maximum number of songs to return.
+     * @param forward True to read the songs after the cursor, false to read the songs before it in reverse order.
+     * @return A list of Song objects, empty if an error occurs.
+     */
+    private List<Song> findSongsPage(SongSort sort, int cursorSongId, int limit, boolean forward) {
+        boolean ascending = sort.isAscending() == forward;
+        String comparison = ascending ? ">" : "<";
+        String direction = ascending ? "ASC" : "DESC";
+        String column = "s." + sort.getColumn();
+
+        StringBuilder sql = new StringBuilder("SELECT s.songID, s.title, s.albumID, s.artistID, s.length, " +
+                "s.ratingCount, s.averageRating, s.ratingsSum FROM Songs s");
+        if (cursorSongId > 0) {
+            if (sort == SongSort.ID) {
+                sql.append(" WHERE s.songID ").append(comparison).append(" ?");
+            } else {
+                sql.append(" JOIN (SELECT ").append(sort.getColumn()).append(" AS sortValue, songID FROM Songs WHERE songID = ?) c")
+                        .append(" ON ").append(column).append(' ').append(comparison).append(" c.sortValue")
+                        .append(" OR (").append(column).append(" = c.sortValue AND s.songID ").append(comparison).append(" c.songID)");
+            }
+        }
+        sql.append(" ORDER BY ");
+        if (sort != SongSort.ID) {
+            sql.append(column).append(' ').append(direction).append(", ");
+        }
+        sql.append("s.songID ").append(direction).append(" LIMIT ?");
+
+        try (Connection con = super.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql.toString())) {
+            int index = 1;
+            if (cursorSongId > 0) {
+                ps.setInt(index++, cursorSongId);
+            }
+            ps.setInt(index, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                return mapSongsFromResultSet(rs);
+            }
+        } catch (SQLException e) {
+            logError("An error occurred while fetching a page of songs", e);
+        }
+        return new ArrayList<>();
+    }
+
     /**
      * Maps a single row of the ResultSet to a Song object.
+     * Package-private so other DAOs that join onto the Songs table can reuse it.
      *
      * @param rs The ResultSet containing the song data.
      * @return A Song object with the data from the ResultSet.
      * @throws SQLException If an SQL error occurs while mapping the data.
      */
-    private Song mapSongFromResultSet(ResultSet rs) throws SQLException {
+    static Song mapSongFromResultSet(ResultSet rs) throws SQLException {
         return new Song(
                 rs.getInt("songID"),
                 rs.getString("title"),
@@ -0,0 +1,10 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+/**
+ * Published by {@link SongDaoImpl#deleteSong(int)} after a song has been deleted.
+ * @param songID the id of the deleted song
+ */
+public record SongDeletedEvent(
+        int songID
+) {
+}
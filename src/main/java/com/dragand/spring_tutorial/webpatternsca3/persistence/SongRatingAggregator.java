@@ -0,0 +1,277 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingDelta;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingUpsertResult;
+import com.dragand.spring_tutorial.webpatternsca3.config.CacheConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Keeps the ratingCount, ratingsSum and averageRating of every song in sync with the ratings table.
+ * <p>
+ * Every rating write is turned into a count and sum delta for its song and added to striped LongAdder counters,
+ * so concurrent raters of the same song do not contend on one lock or row. The deltas are written to the Songs table
+ * in one batch every {@code ratings.aggregation.flush-interval-ms} (and once more on shutdown). Until then
+ * {@link #withPendingChanges(List)} adds the unflushed deltas to songs read from the database.
+ * Flushed songs are evicted from the song cache so cached lookups pick up the new aggregates, and a
+ * {@link RatingAggregatesFlushedEvent} is published for other copies of the songs.
+ * <p>
+ * Pending deltas only live in memory: if the application crashes before a flush, the ratings are saved but their
+ * changes to the aggregates are lost for good. Run the rebuild in {@code sql/CA3_rating_aggregates.sql} after a crash
+ * to recompute the aggregates from the ratings table.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SongRatingAggregator {
+
+    private final SongDAO songDao;
+    private final RatingDAO ratingDao;
+    private final CacheManager cacheManager;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Map<Integer, PendingAggregate> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Number of flushes written so far. Guarded by this.
+     */
+    private long flushes;
+
+    /**
+     * Counters for one song. Count and sum are separate adders, so a flush can briefly see one without the other;
+     * nothing is lost, the rest is written by the next flush.
+     * An entry is retired when a flush removes it from the map, changes that still reach it move to a new entry.
+     */
+    private static final class PendingAggregate {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private volatile boolean retired;
+
+        private boolean isSettled() {
+            return count.sum() == 0 && sum.sum() == 0;
+        }
+    }
+
+    /**
+     * Rate a song and record the change to its aggregates.
+     * @param songID - the song being rated.
+     * @param userID - the user rating the song.
+     * @param ratingValue - the new rating value.
+     * @return - the upsert outcome, or null if the rating could not be saved.
+     */
+    public RatingUpsertResult rateSong(int songID, int userID, int ratingValue) {
+        RatingUpsertResult result = ratingDao.upsertRating(songID, userID, ratingValue);
+        if (result != null) {
+            recordUpsert(songID, result, ratingValue);
+        }
+        return result;
+    }
+
+    /**
+     * Record a rating that was saved with {@link RatingDAO#upsertRating(int, int, int)}.
+     * A new rating adds one to the count and its value to the sum, a changed rating only moves the sum by the difference.
+     * @param songID - the rated song.
+     * @param result - the outcome of the upsert.
+     * @param ratingValue - the value that was saved.
+     */
+    public void recordUpsert(int songID, RatingUpsertResult result, int ratingValue) {
+        if (result.inserted()) {
+            record(songID, 1, ratingValue);
+        } else if (ratingValue != result.previousValue()) {
+            record(songID, 0, ratingValue - result.previousValue());
+        }
+    }
+
+    /**
+     * Remove a rating and record the change to the aggregates of its song.
+     * @param rating - the rating as read from the database, not removed if its song or value changed since.
+     * @return - true if the rating was removed.
+     */
+    public boolean deleteRating(Rating rating) {
+        if (!ratingDao.deleteRating(rating)) {
+            return false;
+        }
+        recordRemoval(rating.getSongID(), rating.getRatingValue());
+        return true;
+    }
+
+    /**
+     * Record a rating that was removed from the ratings table.
+     * @param songID - the song the rating belonged to.
+     * @param ratingValue - the value of the removed rating.
+     */
+    private void recordRemoval(int songID, int ratingValue) {
+        record(songID, -1, -ratingValue);
+    }
+
+    /**
+     * Add a change to the pending counters of a song.
+     * If a flush retired the entry meanwhile, the change is taken back and added to the entry that replaces it.
+     * @param songID - the song that changed.
+     * @param countDelta - the change to the rating count.
+     * @param sumDelta - the change to the ratings sum.
+     */
+    private void record(int songID, long countDelta, long sumDelta) {
+        while (true) {
+            PendingAggregate aggregate = pending.computeIfAbsent(songID, id -> new PendingAggregate());
+            aggregate.count.add(countDelta);
+            aggregate.sum.add(sumDelta);
+            if (!aggregate.retired) {
+                return;
+            }
+            aggregate.count.add(-countDelta);
+            aggregate.sum.add(-sumDelta);
+        }
+    }
+
+    /**
+     * Get copies of the songs with the unflushed rating changes applied.
+     * Songs without pending changes are returned as they are.
+     * @param songs - songs as read from the database, may be null.
+     * @return - the songs with current aggregates, null if songs was null.
+     */
+    public List<Song> withPendingChanges(List<Song> songs) {
+        if (songs == null || pending.isEmpty()) {
+            return songs;
+        }
+        List<Song> current = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            current.add(withPendingChanges(song));
+        }
+        return current;
+    }
+
+    /**
+     * Get a copy of the song with the unflushed rating changes applied.
+     * @param song - the song as read from the database, may be null.
+     * @return - the song with current aggregates, the same instance if nothing is pending.
+     */
+    public Song withPendingChanges(Song song) {
+        if (song == null) {
+            return null;
+        }
+        PendingAggregate aggregate = pending.get(song.getSongID());
+        if (aggregate == null) {
+            return song;
+        }
+        long countDelta = aggregate.count.sum();
+        long sumDelta = aggregate.sum.sum();
+        if (countDelta == 0 && sumDelta == 0) {
+            return song;
+        }
+        int count = (int) Math.max(0, song.getRatingCount() + countDelta);
+        int sum = (int) Math.max(0, song.getRatingsSum() + sumDelta);
+        // Same precision as the DECIMAL(3,2) averageRating column
+        double average = count == 0 ? 0 : Math.round(sum * 100.0 / count) / 100.0;
+        return new Song(song.getSongID(), song.getTitle(), song.getAlbumID(), song.getArtistID(), song.getLength(),
+                count, average, sum);
+    }
+
+    /**
+     * Write the pending deltas to the Songs table in one batch.
+     * The counters are only reduced by what was written, so ratings recorded during the flush, or a failed batch,
+     * are simply picked up by the next flush. Songs whose counters are back at zero are removed from the map.
+     */
+    @Scheduled(fixedDelayString = "${ratings.aggregation.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        List<RatingDelta> deltas = new ArrayList<>();
+        for (Map.Entry<Integer, PendingAggregate> entry : pending.entrySet()) {
+            long countDelta = entry.getValue().count.sum();
+            long sumDelta = entry.getValue().sum.sum();
+            if (countDelta != 0 || sumDelta != 0) {
+                deltas.add(new RatingDelta(entry.getKey(), countDelta, sumDelta));
+            }
+        }
+        if (deltas.isEmpty()) {
+            removeSettled();
+            return;
+        }
+
+        boolean written;
+        try {
+            written = songDao.applyRatingDeltas(deltas);
+        } catch (RuntimeException e) {
+            log.error("Failed to flush rating changes for {} songs", deltas.size(), e);
+            written = false;
+        }
+        if (!written) {
+            log.warn("Rating changes for {} songs kept for the next flush", deltas.size());
+            return;
+        }
+
+        // Cached songs still hold the aggregates from before this flush. Evicting only after the deltas are
+        // subtracted keeps a reload from adding them on top of the new row, and a song read before the write
+        // but cached while the flush ran is evicted again at the end.
+        Cache cachedSongs = cacheManager.getCache(CacheConfig.SONGS);
+        for (RatingDelta delta : deltas) {
+            PendingAggregate aggregate = pending.get(delta.songID());
+            aggregate.count.add(-delta.countDelta());
+            aggregate.sum.add(-delta.sumDelta());
+            evict(cachedSongs, delta.songID());
+        }
+        eventPublisher.publishEvent(new RatingAggregatesFlushedEvent(++flushes, deltas));
+        removeSettled();
+        for (RatingDelta delta : deltas) {
+            evict(cachedSongs, delta.songID());
+        }
+        log.debug("Flushed rating changes for {} songs", deltas.size());
+    }
+
+    /**
+     * Remove the entries of songs without pending changes, so the map only holds songs that still need a flush.
+     * The entry is retired before its counters are checked: a change recorded after the check sees the flag and
+     * moves to a new entry, a change recorded before it keeps the entry in the map.
+     */
+    private void removeSettled() {
+        for (Map.Entry<Integer, PendingAggregate> entry : pending.entrySet()) {
+            PendingAggregate aggregate = entry.getValue();
+            aggregate.retired = true;
+            if (aggregate.isSettled()) {
+                pending.remove(entry.getKey(), aggregate);
+            } else {
+                aggregate.retired = false;
+            }
+        }
+    }
+
+    private static void evict(Cache cache, int songID) {
+        if (cache != null) {
+            cache.evict(songID);
+        }
+    }
+
+    /**
+     * Read from the Songs table while no flush can write to it, for copies of songs that are kept up to date with
+     * {@link RatingAggregatesFlushedEvent}s. The rows read contain the flushes up to the given number and none after it.
+     * Flushes wait until the read is done, ratings are still recorded meanwhile.
+     * @param read - gets the number of the last flush written, see {@link RatingAggregatesFlushedEvent#flushNumber()}.
+     * @return - the result of the read.
+     * @param <T> - the type of the result.
+     */
+    public synchronized <T> T betweenFlushes(LongFunction<T> read) {
+        return read.apply(flushes);
+    }
+
+    /**
+     * Write whatever is still pending before the application stops.
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
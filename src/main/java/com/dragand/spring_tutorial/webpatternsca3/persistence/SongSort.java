@@ -0,0 +1,43 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Orders the song catalog can be paged in.
+ * Every order ends with songID so a song id is enough to mark a position in it.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum SongSort {
+    ID("songID", true),
+    TITLE("title", true),
+    RATING("averageRating", false);
+
+    /**
+     * Column of the Songs table the songs are ordered by. Must be NOT NULL, pages are read by comparing against
+     * the value of the cursor song and NULL compares as neither lower nor higher.
+     */
+    private final String column;
+
+    /**
+     * True if the first page starts with the lowest value.
+     */
+    private final boolean ascending;
+
+    /**
+     * Get the order for a request parameter, case insensitive.
+     * @param param - the value of the sort parameter, may be null.
+     * @return - the matching order, or {@link #ID} if it is missing or unknown.
+     */
+    public static SongSort fromParam(String param) {
+        if (param != null) {
+            for (SongSort sort : values()) {
+                if (sort.name().equalsIgnoreCase(param.trim())) {
+                    return sort;
+                }
+            }
+        }
+        return ID;
+    }
+}
@@ -0,0 +1,191 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * The shape of an SQL statement, the same for every execution of the same query whatever its values:
+ * string and number literals become ?, comments and extra whitespace are dropped and lists of
+ * placeholders, e.g. {@code IN (?, ?, ?)} or the rows of a multi row insert, are collapsed.
+ * <p>
+ * LIKE patterns keep their wildcards at either end, so {@code name LIKE '%love%'} becomes {@code name LIKE '%?%'}
+ * and {@code name LIKE 'lo%'} becomes {@code name LIKE '?%'}: the first cannot use an index, the second can.
+ * A LIKE with a placeholder gets the shape of the value bound to it, see {@link #withLikePatterns(Object[])}.
+ */
+public final class SqlFingerprint {
+
+    /**
+     * Stands for a LIKE placeholder in the template until its bound value is known.
+     */
+    private static final char LIKE_PARAMETER = '\u0000';
+
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN ?\\(\\?(?:, ?\\?)*\\)");
+    private static final Pattern VALUES_ROWS = Pattern.compile("(\\(\\?(?:, ?\\?)*\\))(?:, ?\\1)+");
+
+    private final String template;
+    private final int[] likeParameters;
+
+    private SqlFingerprint(String template, int[] likeParameters) {
+        this.template = template;
+        this.likeParameters = likeParameters;
+    }
+
+    /**
+     * @param sql - the statement as sent to the driver.
+     * @return - its fingerprint.
+     */
+    public static SqlFingerprint of(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int[] likeParameters = new int[0];
+        int parameter = 0;
+        boolean afterLike = false;
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i = skipWhitespace(sql, i);
+                appendSpace(out);
+                continue;
+            }
+            if (c == '-' && sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? sql.length() : end;
+                continue;
+            }
+            if (c == '/' && sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? sql.length() : end + 2;
+                appendSpace(out);
+                continue;
+            }
+            boolean like = afterLike;
+            afterLike = false;
+            if (c == '\'') {
+                int end = endOfString(sql, i);
+                out.append(like ? "'" + likeShape(sql.substring(i + 1, Math.max(i + 1, end - 1))) + "'" : "?");
+                i = end;
+            } else if (c == '"' || c == '`') {
+                int end = sql.indexOf(c, i + 1);
+                end = end < 0 ? sql.length() : end + 1;
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == '?') {
+                parameter++;
+                if (like) {
+                    likeParameters = Arrays.copyOf(likeParameters, likeParameters.length + 1);
+                    likeParameters[likeParameters.length - 1] = parameter;
+                    out.append(LIKE_PARAMETER);
+                } else {
+                    out.append('?');
+                }
+                i++;
+            } else if (Character.isDigit(c)) {
+                i = endOfWord(sql, i);
+                out.append('?');
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = endOfWord(sql, i);
+                String word = sql.substring(i, end);
+                afterLike = word.equalsIgnoreCase("LIKE");
+                out.append(word);
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        String template = out.toString().strip();
+        template = IN_LIST.matcher(template).replaceAll("IN (?+)");
+        template = VALUES_ROWS.matcher(template).replaceAll("$1, ...");
+        return new SqlFingerprint(template, likeParameters);
+    }
+
+    /**
+     * @return - the fingerprint, with ? for the LIKE placeholders.
+     */
+    public String getText() {
+        return template.replace(LIKE_PARAMETER, '?');
+    }
+
+    /**
+     * The fingerprint of one execution, with the shape of the patterns bound to its LIKE placeholders.
+     * @param parameters - the bound values, the value of placeholder n at index n - 1.
+     * @return - the fingerprint, e.g. {@code ... name LIKE '%?%'}.
+     */
+    public String withLikePatterns(Object[] parameters) {
+        if (likeParameters.length == 0) {
+            return template;
+        }
+        StringBuilder out = new StringBuilder(template.length() + 8);
+        int like = 0;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c != LIKE_PARAMETER) {
+                out.append(c);
+                continue;
+            }
+            int index = likeParameters[like++] - 1;
+            Object value = parameters != null && index < parameters.length ? parameters[index] : null;
+            out.append(value instanceof String pattern ? "'" + likeShape(pattern) + "'" : "?");
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+
+    //Helper methods
+
+    /**
+     * ? with the wildcards of the pattern at either end.
+     */
+    static String likeShape(String pattern) {
+        boolean leading = pattern.startsWith("%") || pattern.startsWith("_");
+        boolean trailing = pattern.length() > 1 && (pattern.endsWith("%") || pattern.endsWith("_"));
+        return (leading ? "%" : "") + "?" + (trailing ? "%" : "");
+    }
+
+    private static void appendSpace(StringBuilder out) {
+        if (!out.isEmpty() && out.charAt(out.length() - 1) != ' ') {
+            out.append(' ');
+        }
+    }
+
+    private static int skipWhitespace(String sql, int i) {
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Words and numbers, including 1.5e3 and 0x1F.
+     */
+    private static int endOfWord(String sql, int i) {
+        while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '.')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return - the index after the closing quote, '' and backslash escapes included.
+     */
+    private static int endOfString(String sql, int start) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '\'' && i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                i += 2;
+            } else if (c == '\'') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return sql.length();
+    }
+}
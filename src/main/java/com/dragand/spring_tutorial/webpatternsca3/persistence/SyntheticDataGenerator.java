@@ -0,0 +1,624 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import com.dragand.spring_tutorial.webpatternsca3.utils.collections.IntHashSet;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fills an empty database with a synthetic catalog, users, ratings and playlists for load and performance tests.
+ * <p>
+ * The data only depends on the seed and the sizes: every row, id included, is the same on every run and every machine,
+ * so a slow query found on one box can be reproduced on another. Ratings are drawn from a skewed song popularity
+ * (a few songs get most of the ratings) and a skewed user activity, like real traffic. The song rating aggregates
+ * are computed from the generated ratings, so they match what SongRatingAggregator would have written.
+ * <p>
+ * Scales to 10M songs, 1M users and 100M ratings in under 200MB of heap, rows are written in JDBC batches and
+ * the ratings on several connections at once. Every user can log in as {@code user<id>} with password {@link #PASSWORD}.
+ * <pre>
+ * mvn -Pembedded compile exec:java -Dexec.mainClass=com.dragand.spring_tutorial.webpatternsca3.persistence.SyntheticDataGenerator \
+ *     -Dexec.args="--songs=10000000 --users=1000000 --ratings=100000000"
+ * </pre>
+ */
+@Slf4j
+public final class SyntheticDataGenerator {
+
+    /**
+     * Password of every generated user.
+     */
+    public static final String PASSWORD = "password";
+
+    /**
+     * Bcrypt cost of the generated password hash unless another one is given, the lowest cost Hash calibrates to.
+     */
+    public static final int DEFAULT_PASSWORD_COST = 12;
+
+    /**
+     * Words titles and names are made of, so that searches find something. Load tests search for them as well.
+     */
+    public static final List<String> WORDS = List.of(
+            "love", "night", "heart", "fire", "dream", "blue", "rain", "summer", "home", "light",
+            "road", "river", "gold", "wild", "star", "city", "moon", "shadow", "sky", "ocean",
+            "time", "song", "dance", "story", "broken", "young", "electric", "silver", "winter", "echo"
+    );
+    private static final String[] FIRST_NAMES = {
+            "Aoife", "Sean", "Ciara", "Conor", "Niamh", "Darragh", "Siobhan", "Cian", "Orla", "Eoin",
+            "Maria", "Dmytro", "Anna", "Lukas", "Sofia", "Jo", "Mateo", "Yuki", "Amir", "Zara"
+    };
+    private static final String[] LAST_NAMES = {
+            "Murphy", "Kelly", "Byrne", "Ryan", "O'Brien", "Walsh", "Doyle", "Lynch", "Nolan", "Quinn",
+            "Novak", "Schmidt", "Rossi", "Garcia", "Kowalski", "Tanaka", "Silva", "Ivanova", "Moreau", "Larsen"
+    };
+
+    /**
+     * Share of each rating value 1 to 5, in percent.
+     */
+    private static final int[] RATING_SHARES = {5, 10, 20, 35, 30};
+
+    /**
+     * Multiplier spreading song popularity ranks over the song ids, a prime larger than any song count.
+     */
+    private static final long RANK_SPREAD = 2_147_483_647L;
+
+    /**
+     * H2 error code of a call on a database that has been shut down.
+     */
+    private static final int DATABASE_CLOSED = 90121;
+
+    private static final int BATCH_SIZE = 5_000;
+    private static final int COMMIT_SIZE = 100_000;
+    private static final int SONGS_PER_ALBUM = 10;
+    private static final int ALBUMS_PER_ARTIST = 5;
+    private static final int SONGS_PER_PLAYLIST = 20;
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final Timestamp SUBSCRIPTION_END = Timestamp.valueOf(LocalDateTime.of(2099, 12, 31, 0, 0));
+
+    private final long seed;
+    private final int songs;
+    private final int albums;
+    private final int artists;
+    private final int users;
+    private final long ratings;
+    private final int playlists;
+    private final int threads;
+    private final int passwordCost;
+
+    /**
+     * @param seed - the seed every value is derived from.
+     * @param songs - number of songs, albums and artists are derived from it.
+     * @param users - number of users.
+     * @param ratings - number of ratings, at most half of all user and song pairs.
+     * @param playlists - number of playlists, each holding about 20 songs.
+     */
+    public SyntheticDataGenerator(long seed, int songs, int users, long ratings, int playlists) {
+        this(seed, songs, users, ratings, playlists, DEFAULT_PASSWORD_COST);
+    }
+
+    /**
+     * @param seed - the seed every value is derived from.
+     * @param songs - number of songs, albums and artists are derived from it.
+     * @param users - number of users.
+     * @param ratings - number of ratings, at most half of all user and song pairs.
+     * @param playlists - number of playlists, each holding about 20 songs.
+     * @param passwordCost - bcrypt cost of the password hash, the cost the application hashes with, so users are not
+     *                     rehashed on their first login.
+     */
+    public SyntheticDataGenerator(long seed, int songs, int users, long ratings, int playlists, int passwordCost) {
+        if (songs < 1 || users < 1 || ratings < 0 || playlists < 0) {
+            throw new IllegalArgumentException("Sizes must not be negative, songs and users must be at least 1");
+        }
+        if (passwordCost < 4 || passwordCost > 31) {
+            throw new IllegalArgumentException("Bcrypt cost must be between 4 and 31, not " + passwordCost);
+        }
+        if (ratings > (long) users * (songs / 2) || ratings > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many ratings (" + ratings + ") for " + users + " users and " + songs + " songs");
+        }
+        this.seed = seed;
+        this.songs = songs;
+        this.albums = Math.max(1, songs / SONGS_PER_ALBUM);
+        this.artists = Math.max(1, albums / ALBUMS_PER_ARTIST);
+        this.users = users;
+        this.ratings = ratings;
+        this.playlists = playlists;
+        this.threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        this.passwordCost = passwordCost;
+    }
+
+    /**
+     * Generate the data unless the database already has songs, e.g. from an earlier start.
+     * @param dataSource - the migrated database.
+     * @return - true if data was generated.
+     */
+    public boolean generateIfEmpty(DataSource dataSource) {
+        try (Connection con = dataSource.getConnection();
+             Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM Songs")) {
+            rs.next();
+            if (rs.getLong(1) > 0) {
+                log.info("Database already holds {} songs, no synthetic data generated", rs.getLong(1));
+                return false;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to check whether the database is empty", e);
+        }
+        generate(dataSource);
+        return true;
+    }
+
+    /**
+     * Insert all rows into an empty, migrated database.
+     * @param dataSource - the database, with a pool of at least as many connections as there are cores (up to 4).
+     */
+    public void generate(DataSource dataSource) {
+        long start = System.nanoTime();
+        log.info("Generating {} songs, {} albums, {} artists, {} users, {} ratings and {} playlists (seed {})",
+                songs, albums, artists, users, ratings, playlists, seed);
+        try {
+            insertArtists(dataSource);
+            insertAlbums(dataSource);
+            RatingPlan plan = planRatings();
+            insertSongs(dataSource, plan);
+            insertUsers(dataSource);
+            insertRatings(dataSource, plan);
+            insertPlaylists(dataSource);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to generate the synthetic data", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating the synthetic data", e);
+        }
+        log.info("Synthetic data generated in {}s", (System.nanoTime() - start) / 1_000_000_000);
+    }
+
+    /**
+     * Rewrite an H2 database file without the old row versions the bulk insert left behind, several times smaller.
+     * This closes the database, so it is the last thing to do with the data source.
+     * @param dataSource - a file based H2 database.
+     */
+    public static void compact(DataSource dataSource) {
+        long start = System.nanoTime();
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement()) {
+            st.execute("SHUTDOWN COMPACT");
+        } catch (SQLException e) {
+            // Closing the connection of a database that has just shut down reports that it is closed
+            if (e.getErrorCode() != DATABASE_CLOSED) {
+                log.warn("Failed to compact the database: {}", e.getMessage());
+                return;
+            }
+        }
+        log.info("Database compacted in {}s", (System.nanoTime() - start) / 1_000_000_000);
+    }
+
+    //Tables
+
+    private void insertArtists(DataSource dataSource) throws SQLException {
+        SplittableRandom random = random(1);
+        try (BatchInsert insert = new BatchInsert(dataSource, "Artists", "INSERT INTO Artists (artistID, name) VALUES (?, ?)")) {
+            for (int artistId = 1; artistId <= artists; artistId++) {
+                insert.ps.setInt(1, artistId);
+                // The id keeps the names unique
+                insert.ps.setString(2, capitalize(title(random, 2)) + " " + artistId);
+                insert.add();
+            }
+        }
+    }
+
+    private void insertAlbums(DataSource dataSource) throws SQLException {
+        SplittableRandom random = random(2);
+        try (BatchInsert insert = new BatchInsert(dataSource, "Albums",
+                "INSERT INTO Albums (albumID, title, artistID, releaseDate) VALUES (?, ?, ?, ?)")) {
+            for (int albumId = 1; albumId <= albums; albumId++) {
+                insert.ps.setInt(1, albumId);
+                insert.ps.setString(2, capitalize(title(random, 1 + random.nextInt(3))));
+                insert.ps.setInt(3, artistOfAlbum(albumId));
+                insert.ps.setDate(4, Date.valueOf(LocalDate.of(1960, 1, 1).plusDays(random.nextInt(64 * 365))));
+                insert.add();
+            }
+        }
+    }
+
+    private void insertSongs(DataSource dataSource, RatingPlan plan) throws SQLException {
+        SplittableRandom random = random(3);
+        try (BatchInsert insert = new BatchInsert(dataSource, "Songs",
+                "INSERT INTO Songs (songID, title, albumID, artistID, length, ratingCount, ratingsSum, averageRating) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int songId = 1; songId <= songs; songId++) {
+                int albumId = albumOfSong(songId);
+                int seconds = 90 + random.nextInt(330);
+                int count = plan.songRatingCounts[songId];
+                int sum = plan.songRatingSums[songId];
+                insert.ps.setInt(1, songId);
+                insert.ps.setString(2, capitalize(title(random, 1 + random.nextInt(4))));
+                insert.ps.setInt(3, albumId);
+                insert.ps.setInt(4, artistOfAlbum(albumId));
+                insert.ps.setString(5, String.format("00:%02d:%02d", seconds / 60, seconds % 60));
+                insert.ps.setInt(6, count);
+                insert.ps.setInt(7, sum);
+                insert.ps.setBigDecimal(8, count == 0 ? BigDecimal.ZERO
+                        : BigDecimal.valueOf(sum).divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP));
+                insert.add();
+            }
+        }
+    }
+
+    private void insertUsers(DataSource dataSource) throws SQLException {
+        SplittableRandom random = random(4);
+        String passwordHash = passwordHash();
+        try (BatchInsert insert = new BatchInsert(dataSource, "Users",
+                "INSERT INTO Users (userID, firstName, lastName, username, password, registrationDate, subscriptionEndDate) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int userId = 1; userId <= users; userId++) {
+                insert.ps.setInt(1, userId);
+                insert.ps.setString(2, FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+                insert.ps.setString(3, LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+                insert.ps.setString(4, "user" + userId);
+                insert.ps.setString(5, passwordHash);
+                LocalDateTime registered = EPOCH.minusSeconds(random.nextLong(3L * 365 * 24 * 3600));
+                insert.ps.setTimestamp(6, Timestamp.valueOf(registered));
+                insert.ps.setTimestamp(7, hasActiveSubscription(userId) ? SUBSCRIPTION_END : Timestamp.valueOf(registered.plusYears(1)));
+                insert.add();
+            }
+        }
+    }
+
+    /**
+     * Users are split into one contiguous range per thread, each range written on its own connection.
+     * The ids come from the plan, so the rows do not depend on which thread wrote them first.
+     */
+    private void insertRatings(DataSource dataSource, RatingPlan plan) throws SQLException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("synthetic-ratings-", 0).daemon().factory());
+        try {
+            List<Future<Void>> slices = new ArrayList<>();
+            for (int slice = 0; slice < threads; slice++) {
+                int from = 1 + (int) ((long) users * slice / threads);
+                int to = (int) ((long) users * (slice + 1) / threads);
+                slices.add(executor.submit(() -> {
+                    insertRatings(dataSource, plan, from, to);
+                    return null;
+                }));
+            }
+            for (Future<Void> slice : slices) {
+                slice.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new IllegalStateException("Failed to insert the ratings", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void insertRatings(DataSource dataSource, RatingPlan plan, int fromUser, int toUser) throws SQLException {
+        try (BatchInsert insert = new BatchInsert(dataSource, "Ratings",
+                "INSERT INTO Ratings (ratingID, userID, songID, ratingValue, createdAt, updatedAt) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int userId = fromUser; userId <= toUser; userId++) {
+                int ratingId = plan.firstRatingIds[userId];
+                SplittableRandom random = userRandom(userId);
+                for (int songId : ratedSongs(random, plan.userRatingCounts[userId])) {
+                    Timestamp ratedAt = Timestamp.valueOf(EPOCH.plusSeconds(random.nextLong(365L * 24 * 3600)));
+                    insert.ps.setInt(1, ratingId++);
+                    insert.ps.setInt(2, userId);
+                    insert.ps.setInt(3, songId);
+                    insert.ps.setInt(4, nextRatingValue(random));
+                    insert.ps.setTimestamp(5, ratedAt);
+                    insert.ps.setTimestamp(6, ratedAt);
+                    insert.add();
+                }
+            }
+        }
+    }
+
+    private void insertPlaylists(DataSource dataSource) throws SQLException {
+        SplittableRandom random = random(5);
+        try (BatchInsert playlistInsert = new BatchInsert(dataSource, "Playlists",
+                "INSERT INTO Playlists (playlistID, userID, name, isPublic) VALUES (?, ?, ?, ?)")) {
+            for (int playlistId = 1; playlistId <= playlists; playlistId++) {
+                playlistInsert.ps.setInt(1, playlistId);
+                playlistInsert.ps.setInt(2, 1 + random.nextInt(users));
+                playlistInsert.ps.setString(3, capitalize(title(random, 1 + random.nextInt(3))));
+                playlistInsert.ps.setBoolean(4, random.nextInt(100) < 30);
+                playlistInsert.add();
+            }
+        }
+        // Written after all playlists, the songs reference them
+        random = random(6);
+        try (BatchInsert songInsert = new BatchInsert(dataSource, "PlaylistSongs",
+                "INSERT INTO PlaylistSongs (playlistID, songID) VALUES (?, ?)")) {
+            int maxSize = Math.min(songs, 2 * SONGS_PER_PLAYLIST);
+            for (int playlistId = 1; playlistId <= playlists; playlistId++) {
+                int size = 1 + random.nextInt(maxSize);
+                IntHashSet added = new IntHashSet(size);
+                for (int i = 0; i < size; i++) {
+                    songInsert.ps.setInt(1, playlistId);
+                    songInsert.ps.setInt(2, nextRatedSong(random, added));
+                    songInsert.add();
+                }
+            }
+        }
+    }
+
+    //Ratings
+
+    /**
+     * How many ratings each user gives, the first rating id of each user, and the aggregates of each song.
+     * Found by generating every rating once without writing it.
+     */
+    private static final class RatingPlan {
+        final int[] userRatingCounts;
+        final int[] firstRatingIds;
+        final int[] songRatingCounts;
+        final int[] songRatingSums;
+
+        RatingPlan(int users, int songs) {
+            userRatingCounts = new int[users + 1];
+            firstRatingIds = new int[users + 1];
+            songRatingCounts = new int[songs + 1];
+            songRatingSums = new int[songs + 1];
+        }
+    }
+
+    private RatingPlan planRatings() {
+        RatingPlan plan = new RatingPlan(users, songs);
+
+        // Log-normal activity, a few users rate far more than the rest
+        SplittableRandom random = random(7);
+        double[] weights = new double[users + 1];
+        double totalWeight = 0;
+        for (int userId = 1; userId <= users; userId++) {
+            weights[userId] = Math.exp(gaussian(random));
+            totalWeight += weights[userId];
+        }
+        int maxPerUser = songs / 2;
+        long assigned = 0;
+        for (int userId = 1; userId <= users; userId++) {
+            plan.userRatingCounts[userId] = (int) Math.min(maxPerUser, (long) (weights[userId] / totalWeight * ratings));
+            assigned += plan.userRatingCounts[userId];
+        }
+        // Hand out what rounding and the cap left over, one per user and round
+        while (assigned < ratings) {
+            for (int userId = 1; userId <= users && assigned < ratings; userId++) {
+                if (plan.userRatingCounts[userId] < maxPerUser) {
+                    plan.userRatingCounts[userId]++;
+                    assigned++;
+                }
+            }
+        }
+
+        int nextId = 1;
+        for (int userId = 1; userId <= users; userId++) {
+            plan.firstRatingIds[userId] = nextId;
+            nextId += plan.userRatingCounts[userId];
+            // Same draws, in the same order, as insertRatings
+            SplittableRandom userRandom = userRandom(userId);
+            for (int songId : ratedSongs(userRandom, plan.userRatingCounts[userId])) {
+                userRandom.nextLong(365L * 24 * 3600);
+                plan.songRatingCounts[songId]++;
+                plan.songRatingSums[songId] += nextRatingValue(userRandom);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * The songs one user rates, in id order so that the rows of a user land next to each other in the unique key.
+     */
+    private int[] ratedSongs(SplittableRandom random, int count) {
+        IntHashSet rated = new IntHashSet(count);
+        for (int i = 0; i < count; i++) {
+            nextRatedSong(random, rated);
+        }
+        return rated.toSortedArray();
+    }
+
+    /**
+     * Pick a song that is not in the set yet and add it. Low popularity ranks are picked far more often,
+     * and the ranks are spread over the ids so that popular songs are not all on the first pages.
+     */
+    private int nextRatedSong(SplittableRandom random, IntHashSet taken) {
+        double u = random.nextDouble();
+        int songId = songOfRank((int) (songs * u * u * u), songs);
+        // Already taken, use the next free id. Callers never take every song, so there always is one
+        while (!taken.add(songId)) {
+            songId = songId % songs + 1;
+        }
+        return songId;
+    }
+
+    private static int nextRatingValue(SplittableRandom random) {
+        int roll = random.nextInt(100);
+        for (int value = 1; value < RATING_SHARES.length; value++) {
+            roll -= RATING_SHARES[value - 1];
+            if (roll < 0) {
+                return value;
+            }
+        }
+        return RATING_SHARES.length;
+    }
+
+    /**
+     * Every tenth generated user has a subscription that has run out, the others one that lasts.
+     * @param userId - the id of a generated user.
+     * @return - true if the user's subscription is active.
+     */
+    public static boolean hasActiveSubscription(int userId) {
+        return userId % 10 != 0;
+    }
+
+    /**
+     * The song at a popularity rank, the same mapping the generated ratings use. Lets a load test favour the songs
+     * that are popular in the generated data.
+     * @param rank - the rank, 0 for the most popular song.
+     * @param songs - number of songs the data was generated with.
+     * @return - the id of the song.
+     */
+    public static int songOfRank(int rank, int songs) {
+        return (int) (rank * RANK_SPREAD % songs) + 1;
+    }
+
+    //Helper methods
+
+    private int albumOfSong(int songId) {
+        return (int) ((long) (songId - 1) * albums / songs) + 1;
+    }
+
+    private int artistOfAlbum(int albumId) {
+        return (int) ((long) (albumId - 1) * artists / albums) + 1;
+    }
+
+    /**
+     * Random numbers for one table, independent of the other tables.
+     */
+    private SplittableRandom random(int table) {
+        return new SplittableRandom(seed * 31 + table);
+    }
+
+    /**
+     * Random numbers for the ratings of one user, so they can be generated again, in any order.
+     */
+    private SplittableRandom userRandom(int userId) {
+        return new SplittableRandom(seed ^ (userId * 0x9E3779B97F4A7C15L));
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller, SplittableRandom has no nextGaussian
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static String title(SplittableRandom random, int words) {
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                title.append(' ');
+            }
+            title.append(WORDS.get(random.nextInt(WORDS.size())));
+        }
+        return title.toString();
+    }
+
+    private static String capitalize(String text) {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    /**
+     * Bcrypt hash of {@link #PASSWORD} with a salt derived from the seed, hashed once for all users.
+     */
+    private String passwordHash() {
+        byte[] salt = new byte[16];
+        SplittableRandom random = random(8);
+        for (int i = 0; i < salt.length; i++) {
+            salt[i] = (byte) random.nextInt(256);
+        }
+        return new String(BCrypt.withDefaults().hash(passwordCost, salt, PASSWORD.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Prepared insert on its own connection, sent in batches of {@link #BATCH_SIZE} rows and committed every
+     * {@link #COMMIT_SIZE} rows. Fewer, larger commits keep H2 from writing a new chunk of its file for each batch.
+     */
+    private static final class BatchInsert implements AutoCloseable {
+        private final String table;
+        private final Connection con;
+        private final PreparedStatement ps;
+        private int pending;
+        private long rows;
+        private final long start = System.nanoTime();
+
+        BatchInsert(DataSource dataSource, String table, String sql) throws SQLException {
+            this.table = table;
+            this.con = dataSource.getConnection();
+            try {
+                con.setAutoCommit(false);
+                this.ps = con.prepareStatement(sql);
+            } catch (SQLException e) {
+                con.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Add the row whose parameters have been set.
+         */
+        void add() throws SQLException {
+            ps.addBatch();
+            rows++;
+            if (++pending == BATCH_SIZE) {
+                ps.executeBatch();
+                pending = 0;
+                if (rows % COMMIT_SIZE == 0) {
+                    con.commit();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try (con; ps) {
+                if (pending > 0) {
+                    ps.executeBatch();
+                }
+                con.commit();
+                log.info("Inserted {} rows into {} in {}ms", rows, table, (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+    }
+
+    //Command line
+
+    /**
+     * Migrate the H2 database of a properties file and fill it, unless it already has songs.
+     * Options: --songs, --users, --ratings, --playlists, --seed, --password-cost (default 12, use the cost the application
+     * logs at startup) and --properties (default database-embedded.properties).
+     * @param args - the options, e.g. --songs=10000000 --users=1000000 --ratings=100000000.
+     */
+    public static void main(String[] args) {
+        String properties = option(args, "properties", DataSourceFactory.EMBEDDED_PROPERTIES);
+        int users = Integer.parseInt(option(args, "users", "10000"));
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(
+                Long.parseLong(option(args, "seed", "42")),
+                Integer.parseInt(option(args, "songs", "100000")),
+                users,
+                Long.parseLong(option(args, "ratings", "1000000")),
+                Integer.parseInt(option(args, "playlists", String.valueOf(users / 2))),
+                Integer.parseInt(option(args, "password-cost", String.valueOf(DEFAULT_PASSWORD_COST))));
+        try (HikariDataSource dataSource = DataSourceFactory.createPooledDataSource(properties)) {
+            SchemaMigrator.migrate(dataSource, SchemaMigrator.EMBEDDED_SCHEMA);
+            if (generator.generateIfEmpty(dataSource)) {
+                compact(dataSource);
+            }
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,219 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.utils.collections.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * In-memory substring index over one text column, answering the same question as {@code LIKE '%query%'}.
+ * <p>
+ * Every lower-cased text is split into overlapping three character grams and each gram points to a sorted array of
+ * the ids containing it. A query of three or more characters intersects the arrays of its grams and checks the few
+ * candidates left, shorter queries scan the entries in memory.
+ * <p>
+ * Reads need no locking. Updates replace whole posting arrays, so a search running at the same time sees either the
+ * old or the new array and at worst misses an entry that is being changed.
+ *
+ * @param <T> the indexed entity
+ */
+final class TrigramIndex<T> {
+
+    private static final int GRAM_LENGTH = 3;
+
+    private final ToIntFunction<T> idOf;
+    private final Function<T, String> textOf;
+    private final Map<Integer, T> entries = new ConcurrentHashMap<>();
+    private final Map<Long, int[]> postings = new ConcurrentHashMap<>();
+
+    TrigramIndex(ToIntFunction<T> idOf, Function<T, String> textOf) {
+        this.idOf = idOf;
+        this.textOf = textOf;
+    }
+
+    /**
+     * Build an index in one pass. The posting arrays are collected in growable buffers and frozen at the end,
+     * which is much cheaper than inserting the entries one by one.
+     * @param items - the entities to index, ideally ordered by id.
+     * @param idOf - returns the id of an entity.
+     * @param textOf - returns the text to search in.
+     * @return - the built index.
+     */
+    static <T> TrigramIndex<T> build(Stream<T> items, ToIntFunction<T> idOf, Function<T, String> textOf) {
+        TrigramIndex<T> index = new TrigramIndex<>(idOf, textOf);
+        Map<Long, IntArrayList> building = new HashMap<>();
+        items.forEach(item -> {
+            int id = idOf.applyAsInt(item);
+            index.entries.put(id, item);
+            for (long gram : grams(normalize(textOf.apply(item)))) {
+                building.computeIfAbsent(gram, g -> new IntArrayList(4)).add(id);
+            }
+        });
+        building.forEach((gram, ids) -> {
+            int[] sorted = ids.toArray();
+            Arrays.sort(sorted);
+            index.postings.put(gram, sorted);
+        });
+        return index;
+    }
+
+    /**
+     * Find the entries whose text contains the query, ignoring case.
+     * @param query - the text to look for.
+     * @param filter - extra condition the entries must meet.
+     * @return - the matching entries ordered by id.
+     */
+    List<T> search(String query, Predicate<T> filter) {
+        String needle = normalize(query);
+        List<T> result = new ArrayList<>();
+
+        if (needle.length() < GRAM_LENGTH) {
+            for (T item : entries.values()) {
+                if (contains(item, needle) && filter.test(item)) {
+                    result.add(item);
+                }
+            }
+            result.sort(Comparator.comparingInt(idOf));
+            return result;
+        }
+
+        long[] grams = grams(needle);
+        int[][] lists = new int[grams.length][];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postings.get(grams[i]);
+            if (lists[i] == null) {
+                return result;
+            }
+        }
+        // Walk the shortest list and probe the others
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+        for (int id : lists[0]) {
+            if (inAll(lists, id)) {
+                T item = entries.get(id);
+                // The grams can all be present without the query being a substring, check the text itself
+                if (item != null && contains(item, needle) && filter.test(item)) {
+                    result.add(item);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add an entry or replace the entry with the same id, re-indexing its text.
+     * @param item - the entity to index.
+     */
+    synchronized void put(T item) {
+        int id = idOf.applyAsInt(item);
+        T old = entries.put(id, item);
+        if (old != null) {
+            for (long gram : grams(normalize(textOf.apply(old)))) {
+                postings.computeIfPresent(gram, (g, ids) -> without(ids, id));
+            }
+        }
+        for (long gram : grams(normalize(textOf.apply(item)))) {
+            postings.merge(gram, new int[]{id}, (ids, single) -> with(ids, id));
+        }
+    }
+
+    /**
+     * Replace an entry whose text does not change, e.g. to refresh other fields.
+     * @param id - the id of the entry.
+     * @param update - returns the new entry from the current one.
+     */
+    void update(int id, UnaryOperator<T> update) {
+        entries.computeIfPresent(id, (key, item) -> update.apply(item));
+    }
+
+    /**
+     * Remove an entry.
+     * @param id - the id of the entry to remove.
+     */
+    synchronized void remove(int id) {
+        T old = entries.remove(id);
+        if (old != null) {
+            for (long gram : grams(normalize(textOf.apply(old)))) {
+                postings.computeIfPresent(gram, (g, ids) -> without(ids, id));
+            }
+        }
+    }
+
+    T get(int id) {
+        return entries.get(id);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    //Helper methods
+
+    private boolean contains(T item, String needle) {
+        return normalize(textOf.apply(item)).contains(needle);
+    }
+
+    private static boolean inAll(int[][] lists, int id) {
+        for (int i = 1; i < lists.length; i++) {
+            if (Arrays.binarySearch(lists[i], id) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Distinct grams of a normalized text, each packed into a long (three 16 bit chars).
+     */
+    private static long[] grams(String text) {
+        if (text.length() < GRAM_LENGTH) {
+            return new long[0];
+        }
+        long[] grams = new long[text.length() - GRAM_LENGTH + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        return Arrays.stream(grams).distinct().toArray();
+    }
+
+    private static int[] with(int[] ids, int id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return ids;
+        }
+        int insertAt = -position - 1;
+        int[] result = new int[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, insertAt);
+        result[insertAt] = id;
+        System.arraycopy(ids, insertAt, result, insertAt + 1, ids.length - insertAt);
+        return result;
+    }
+
+    private static int[] without(int[] ids, int id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null; // removes the gram from the map
+        }
+        int[] result = new int[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        System.arraycopy(ids, position + 1, result, position, ids.length - position - 1);
+        return result;
+    }
+}
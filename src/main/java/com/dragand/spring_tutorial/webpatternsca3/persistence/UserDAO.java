@@ -3,6 +3,7 @@ package com.dragand.spring_tutorial.webpatternsca3.persistence;
 import com.dragand.spring_tutorial.webpatternsca3.business.User;
 
 import java.time.LocalDate;
+import java.util.stream.Stream;
 
 /**
  * User DAO interface used to define the methods that will be implemented in the UserDAOImpl class
@@ -71,5 +72,15 @@ public interface UserDAO {
 
     boolean updateSubscriptionEndDate(int userId, LocalDate newEndDate);
 
+//Extended Functionality
+
+    /**
+     * Stream the usernames of all users, reading one row at a time.
+     * The stream holds a database connection until it is closed, use it in a try-with-resources block.
+     *
+     * @return a lazily populated stream of every username in the database
+     */
+    Stream<String> streamAllUserNames();
+
 }
 
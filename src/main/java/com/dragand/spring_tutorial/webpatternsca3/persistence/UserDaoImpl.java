@@ -3,11 +3,14 @@ package com.dragand.spring_tutorial.webpatternsca3.persistence;
 import com.dragand.spring_tutorial.webpatternsca3.business.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.stream.Stream;
 
 /**
  * Implementation of UserDAO interface for managing user-related database operations.
@@ -27,6 +30,15 @@ public class UserDaoImpl extends MySQLDao implements UserDAO {
         super();
     }
 
+    /**
+     * Constructor used by Spring. Connections are borrowed from the shared pool.
+     * @param dataSource - the pooled data source.
+     */
+    @Autowired
+    public UserDaoImpl(DataSource dataSource) {
+        super(dataSource);
+    }
+
     /**
      * Adds a new user to the database.
      *
@@ -300,4 +312,15 @@ public class UserDaoImpl extends MySQLDao implements UserDAO {
             return false;
         }
     }
+
+    /**
+     * Stream every username.
+     * MySQL sends the rows one at a time, so the names can be processed with constant memory.
+     *
+     * @return a lazily populated stream of all usernames, empty if the query could not be started
+     */
+    @Override
+    public Stream<String> streamAllUserNames() {
+        return streamQuery("SELECT userName FROM Users", rs -> rs.getString("userName"));
+    }
 }
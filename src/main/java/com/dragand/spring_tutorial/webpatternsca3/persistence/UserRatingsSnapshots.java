@@ -0,0 +1,144 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
+import com.dragand.spring_tutorial.webpatternsca3.utils.collections.IntByteHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user snapshot of the ratings a user has given, as song ID to rating value.
+ * Used by every page that shows the user's stars next to songs.
+ * <p>
+ * A user's ratings are read from the database on first use and kept in a primitive int to byte map,
+ * also when the user has not rated anything yet. Only a failed read is not kept.
+ * Ratings made through the application are added to the snapshot instead of reloading it.
+ * A snapshot is dropped on logout, or once it has not been used for {@code ratings.snapshot.idle-timeout}.
+ * <p>
+ * Snapshots are replaced on every change rather than changed, so a page that is being rendered
+ * never sees a half updated map.
+ */
+@Slf4j
+@Component
+public class UserRatingsSnapshots {
+
+    private final RatingDAO ratingDao;
+    private final Duration idleTimeout;
+
+    private final Map<Integer, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Ratings of one user. The map is null until it has been loaded, loading and changes are guarded by the snapshot.
+     */
+    private static final class Snapshot {
+        private volatile IntByteHashMap ratings;
+        private volatile long lastUsedNanos = System.nanoTime();
+    }
+
+    public UserRatingsSnapshots(RatingDAO ratingDao,
+                                @Value("${ratings.snapshot.idle-timeout:30m}") Duration idleTimeout) {
+        this.ratingDao = ratingDao;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Get the ratings of a user, loading them on first use.
+     * @param userId - the user whose ratings to get.
+     * @return - a read-only map of song ID to rating value, empty if the user has not rated anything
+     * or the ratings could not be read.
+     */
+    public Map<Integer, Integer> getRatings(int userId) {
+        Snapshot snapshot = snapshots.computeIfAbsent(userId, id -> new Snapshot());
+        snapshot.lastUsedNanos = System.nanoTime();
+        IntByteHashMap ratings = snapshot.ratings;
+        if (ratings == null) {
+            synchronized (snapshot) {
+                ratings = snapshot.ratings;
+                if (ratings == null) {
+                    ratings = load(userId);
+                    if (ratings == null) {
+                        // Not kept, the next call tries the database again
+                        return Map.of();
+                    }
+                    snapshot.ratings = ratings;
+                }
+            }
+        }
+        return ratings.asMap();
+    }
+
+    /**
+     * Record a rating that was saved, so the snapshot of the user does not have to be reloaded.
+     * Does nothing if the user's ratings are not loaded, they are read fresh on next use.
+     * @param userId - the user who rated.
+     * @param songId - the rated song.
+     * @param ratingValue - the saved rating value.
+     */
+    public void recordRating(int userId, int songId, int ratingValue) {
+        Snapshot snapshot = snapshots.get(userId);
+        if (snapshot == null) {
+            return;
+        }
+        synchronized (snapshot) {
+            if (snapshot.ratings != null) {
+                IntByteHashMap updated = snapshot.ratings.copy();
+                updated.put(songId, (byte) ratingValue);
+                snapshot.ratings = updated;
+            }
+        }
+    }
+
+    /**
+     * Drop the snapshot of a user, e.g. on logout.
+     * @param userId - the user whose snapshot to drop.
+     */
+    public void evict(int userId) {
+        snapshots.remove(userId);
+    }
+
+    /**
+     * Drop the snapshots that have not been used for the idle timeout.
+     */
+    @Scheduled(fixedDelayString = "${ratings.snapshot.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        int before = snapshots.size();
+        snapshots.values().removeIf(snapshot -> now - snapshot.lastUsedNanos >= idleTimeout.toNanos());
+        int evicted = before - snapshots.size();
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rating snapshots", evicted);
+        }
+    }
+
+    /**
+     * @return - the number of users with a snapshot.
+     */
+    public int size() {
+        return snapshots.size();
+    }
+
+    //Helper methods
+
+    /**
+     * @return - the ratings of the user, null if they could not be read.
+     */
+    private IntByteHashMap load(int userId) {
+        List<Rating> ratings = ratingDao.getRatingsByUserID(userId);
+        if (ratings == null) {
+            log.warn("Could not load the ratings of user {}", userId);
+            return null;
+        }
+        IntByteHashMap map = new IntByteHashMap(ratings.size());
+        for (Rating rating : ratings) {
+            map.put(rating.getSongID(), (byte) rating.getRatingValue());
+        }
+        log.info("Loaded {} ratings for user {}", ratings.size(), userId);
+        return map;
+    }
+}
@@ -0,0 +1,144 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.utils.collections.StringBloomFilter;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter over every username in the Users table, so that most "is this username taken?" checks of the
+ * registration page are answered without a query. A name the filter has never seen is definitely free,
+ * only names it may have seen need {@link UserDAO#existsbyUserName(String)} to confirm.
+ * <p>
+ * Built from a streaming scan of the usernames shortly after startup and rebuilt every
+ * {@code users.name-filter.rebuild-interval-ms}. Names added or changed through the application are added straight away.
+ * A Bloom filter cannot forget, so a deleted or renamed name stays a possible match, checked against the database,
+ * until the next rebuild. Names are compared ignoring case, like the database does.
+ */
+@Slf4j
+@Component
+public class UsernameFilter {
+
+    private final UserDAO userDao;
+    private final int expectedUsers;
+    private final double falsePositiveRate;
+
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("username-filter-build").daemon().factory());
+
+    private volatile StringBloomFilter current;
+
+    /**
+     * The filter being built, names saved meanwhile are added to it as well. Guarded by this.
+     */
+    private StringBloomFilter building;
+
+    /**
+     * Number of names read by the last build, only used by the build thread.
+     */
+    private long lastCount;
+
+    /**
+     * @param userDao - the DAO to read the usernames with.
+     * @param expectedUsers - number of users the filter is sized for at least, larger if the last build found more.
+     * @param falsePositiveRate - share of free names that still need a query.
+     */
+    public UsernameFilter(UserDAO userDao,
+                          @Value("${users.name-filter.expected-users:100000}") int expectedUsers,
+                          @Value("${users.name-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.userDao = userDao;
+        this.expectedUsers = expectedUsers;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Check a username without touching the database.
+     * @param userName - the username to check.
+     * @return - true if no user has the name, false if one may have it or the filter is not built yet.
+     */
+    public boolean isDefinitelyFree(String userName) {
+        StringBloomFilter filter = current;
+        return filter != null && !filter.mightContain(normalize(userName));
+    }
+
+    /**
+     * Add the name of a user that was registered, or renamed.
+     * @param userName - the saved username.
+     */
+    public void userSaved(String userName) {
+        String name = normalize(userName);
+        synchronized (this) {
+            StringBloomFilter filter = current;
+            if (filter != null) {
+                filter.add(name);
+            }
+            if (building != null) {
+                building.add(name);
+            }
+        }
+    }
+
+    /**
+     * Start a rebuild in the background, the first one right after startup.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${users.name-filter.rebuild-interval-ms:3600000}")
+    public void scheduleRebuild() {
+        buildExecutor.execute(this::rebuild);
+    }
+
+    /**
+     * Read every username into a new filter and swap it in. If the names cannot be read the current filter is kept.
+     */
+    void rebuild() {
+        long start = System.nanoTime();
+        StringBloomFilter filter;
+        synchronized (this) {
+            if (building != null) {
+                return;
+            }
+            // Room for half as many users again as the last build found, so the filter stays accurate as users sign up
+            filter = new StringBloomFilter((int) Math.max(expectedUsers, lastCount + lastCount / 2), falsePositiveRate);
+            building = filter;
+        }
+        try (Stream<String> names = userDao.streamAllUserNames()) {
+            long[] count = {0};
+            names.forEach(name -> {
+                filter.add(normalize(name));
+                count[0]++;
+            });
+            if (count[0] == 0) {
+                // Also what a failed query looks like, an empty filter would call every name free
+                log.warn("No usernames read, {}", current == null ? "checking names with SQL" : "keeping the previous filter");
+                return;
+            }
+            synchronized (this) {
+                current = filter;
+            }
+            lastCount = count[0];
+            log.info("Built username filter in {} ms: {} names, {} KB",
+                    (System.nanoTime() - start) / 1_000_000, count[0], filter.bitCount() / 8 / 1024);
+        } catch (RuntimeException e) {
+            log.error("Failed to build the username filter, {}", current == null ? "checking names with SQL" : "keeping the previous filter", e);
+        } finally {
+            synchronized (this) {
+                building = null;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.shutdownNow();
+    }
+
+    private static String normalize(String userName) {
+        return userName.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -41,8 +41,11 @@ CREATE TABLE Songs (
                        artistID INT NOT NULL,
                        length TIME NOT NULL,
                        ratingCount INT NOT NULL DEFAULT 0,
-                       averageRating DECIMAL(3, 2) DEFAULT 0,
+                       averageRating DECIMAL(3, 2) NOT NULL DEFAULT 0,
                        ratingsSum INT DEFAULT 0,
+                       -- Keyset pagination of the catalog by title and by rating (songID is appended by InnoDB)
+                       INDEX idx_songs_title (title),
+                       INDEX idx_songs_average_rating (averageRating),
                        FOREIGN KEY (albumID) REFERENCES Albums(albumID) ON DELETE CASCADE,
                        FOREIGN KEY (artistID) REFERENCES Artists(artistID) ON DELETE CASCADE
 );
@@ -55,6 +58,8 @@ CREATE TABLE Ratings (
                          songID INT NOT NULL,
                          ratingValue TINYINT NOT NULL CHECK (ratingValue >= 1 AND ratingValue <= 5),
                          createdAt DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                         updatedAt DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+                         UNIQUE KEY uq_ratings_user_song (userID, songID),
                          FOREIGN KEY (userID) REFERENCES Users(userID) ON DELETE CASCADE,
                          FOREIGN KEY (songID) REFERENCES Songs(songID) ON DELETE CASCADE
 );
@@ -86,27 +91,5 @@ CREATE TABLE ArtistsSongs (
                               FOREIGN KEY (songID) REFERENCES Songs(songID) ON DELETE CASCADE
 );
 
--- Trigger for updating ratings
-DELIMITER //
-
-CREATE TRIGGER after_rating_insert
-    AFTER INSERT ON Ratings
-    FOR EACH ROW
-BEGIN
-    -- Update the ratingCount and ratingsSum first
-    UPDATE Songs
-    SET
-        ratingCount = ratingCount + 1,
-        ratingsSum = ratingsSum + NEW.ratingValue
-    WHERE
-        songID = NEW.songID;
-
-    -- Update the averageRating based on the updated ratingCount and ratingsSum
-    UPDATE Songs
-    SET
-        averageRating = ratingsSum / ratingCount
-    WHERE
-        songID = NEW.songID;
-END; //
-
-DELIMITER ;
\ No newline at end of file
+-- Song rating aggregates (ratingCount, ratingsSum, averageRating) are maintained by the application,
+-- see SongRatingAggregator. A trigger here would count every new rating twice.
\ No newline at end of file
@@ -166,15 +166,20 @@ INSERT INTO Ratings (userID, songID, ratingValue) VALUES
                                                       (4, 20, 5), -- User 4 rates Diamonds
                                                       (1, 5, 4),  -- User 1 rates Blank Space
                                                       (2, 18, 5), -- User 2 rates Circles
-                                                      (3, 8, 3),  -- User 3 rates Lose Yourself
                                                       (4, 12, 4), -- User 4 rates thank u, next
-                                                      (1, 3, 2),  -- User 1 rates Stairway to Heaven
                                                       (2, 6, 4),  -- User 2 rates Formation
                                                       (3, 10, 5), -- User 3 rates God's Plan
                                                       (4, 7, 4),  -- User 4 rates 7 Rings
                                                       (1, 14, 3), -- User 1 rates Shape of You
                                                       (2, 12, 5), -- User 2 rates thank u, next
                                                       (3, 20, 4), -- User 3 rates Diamonds
-                                                      (4, 8, 5),  -- User 4 rates Lose Yourself
-                                                      (1, 7, 3),  -- User 1 rates 7 Rings
-                                                      (2, 18, 5); -- User 2 rates Circles
\ No newline at end of file
+                                                      (1, 7, 3);  -- User 1 rates 7 Rings
+
+
+-- Seed the song rating aggregates from the inserted ratings, the application keeps them up to date from here on
+UPDATE Songs s
+JOIN (SELECT songID, COUNT(*) AS ratingCount, SUM(ratingValue) AS ratingsSum FROM Ratings GROUP BY songID) r
+    ON r.songID = s.songID
+SET s.ratingCount = r.ratingCount,
+    s.ratingsSum = r.ratingsSum,
+    s.averageRating = r.ratingsSum / r.ratingCount;
@@ -0,0 +1,13 @@
+-- Migration for existing databases: song rating aggregates move from the after_rating_insert trigger to the application.
+-- The trigger only handled inserts, so updated ratings left ratingsSum and averageRating stale. Run after CA3_ratings_upsert.sql.
+-- From here on ratings are written through SongRatingAggregator (rateSong, deleteRating), which keeps the aggregates.
+
+DROP TRIGGER IF EXISTS after_rating_insert;
+
+-- Rebuild the aggregates once so the application starts from correct values
+UPDATE Songs s
+LEFT JOIN (SELECT songID, COUNT(*) AS ratingCount, SUM(ratingValue) AS ratingsSum FROM Ratings GROUP BY songID) r
+    ON r.songID = s.songID
+SET s.ratingCount = COALESCE(r.ratingCount, 0),
+    s.ratingsSum = COALESCE(r.ratingsSum, 0),
+    s.averageRating = COALESCE(r.ratingsSum / r.ratingCount, 0);
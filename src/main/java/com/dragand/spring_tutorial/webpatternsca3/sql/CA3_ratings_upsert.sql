@@ -0,0 +1,16 @@
+-- Migration for existing databases: one rating per user and song, required by the rating upsert.
+-- Run against CA3 (and CA3_test) created before the unique key was added to CA3.sql.
+
+-- Keep only the latest rating of each user for a song
+DELETE older FROM Ratings older
+JOIN Ratings newer
+    ON older.userID = newer.userID
+    AND older.songID = newer.songID
+    AND older.ratingID < newer.ratingID;
+
+-- Changes on every upsert so an update is never reported as "0 rows changed"
+ALTER TABLE Ratings
+    ADD COLUMN updatedAt DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6);
+
+ALTER TABLE Ratings
+    ADD UNIQUE KEY uq_ratings_user_song (userID, songID);
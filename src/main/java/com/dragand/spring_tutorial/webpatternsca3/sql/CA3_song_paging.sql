@@ -0,0 +1,7 @@
+-- Migration for existing databases: indexes used by the keyset pagination of /songs.
+-- Every secondary index already ends with the primary key, so (title, songID) and (averageRating, songID)
+-- are both served without a sort.
+
+ALTER TABLE Songs
+    ADD INDEX idx_songs_title (title),
+    ADD INDEX idx_songs_average_rating (averageRating);
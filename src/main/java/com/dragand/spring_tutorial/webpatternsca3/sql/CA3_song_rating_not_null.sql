@@ -0,0 +1,8 @@
+-- Migration for existing databases: averageRating can no longer be NULL. Run after CA3_song_paging.sql.
+-- The keyset pagination of /songs by rating compares against the rating of the cursor song, and a NULL compares
+-- as neither lower nor higher, so a page starting at a song without a rating came back empty.
+
+UPDATE Songs SET averageRating = 0 WHERE averageRating IS NULL;
+
+ALTER TABLE Songs
+    MODIFY averageRating DECIMAL(3, 2) NOT NULL DEFAULT 0;
@@ -81,4 +81,13 @@ INSERT INTO Ratings (userID, songID, ratingValue) VALUES
                                                       (2, 2, 4),
                                                       (2, 3, 5),
                                                       (2, 4, 3),
-                                                      (2, 5, 4);
\ No newline at end of file
+                                                      (2, 5, 4);
+
+
+-- Seed the song rating aggregates from the inserted ratings, the application keeps them up to date from here on
+UPDATE Songs s
+JOIN (SELECT songID, COUNT(*) AS ratingCount, SUM(ratingValue) AS ratingsSum FROM Ratings GROUP BY songID) r
+    ON r.songID = s.songID
+SET s.ratingCount = r.ratingCount,
+    s.ratingsSum = r.ratingsSum,
+    s.averageRating = r.ratingsSum / r.ratingCount;
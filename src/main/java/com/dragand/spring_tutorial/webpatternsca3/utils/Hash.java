@@ -2,35 +2,123 @@ package com.dragand.spring_tutorial.webpatternsca3.utils;
 
 
 import at.favre.lib.crypto.bcrypt.BCrypt;
-import com.dragand.spring_tutorial.webpatternsca3.persistence.UserDAO;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-@Service
-@RequiredArgsConstructor
+import java.time.Duration;
+import java.util.function.IntToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Password hashing with bcrypt. The work runs on the {@link PasswordHashingExecutor} threads, not on the caller's,
+ * so every method may throw a {@link PasswordHashingBusyException} when too many hashes are waiting.
+ * <p>
+ * The bcrypt cost is {@code password.hashing.cost}, or when that is 0, calibrated at startup: the highest cost
+ * between {@code password.hashing.min-cost} and {@code password.hashing.max-cost} whose hash takes no longer than
+ * {@code password.hashing.target-latency} on this machine. A cost above the minimum is only picked when it fits the
+ * target, so the target must be at least twice the time of a hash at the minimum cost. Stored hashes with a lower cost are replaced on the
+ * next login, see {@link #needsRehash(String)}. Hashes with a higher cost are kept, so a node that calibrates lower,
+ * e.g. a busy or slower one, never weakens them.
+ */
+@Slf4j
+@Service
 public class Hash {
 
-private final UserDAO userDAO;
+    /**
+     * Version, cost and the rest of a bcrypt hash, e.g. {@code $2a$12$...}.
+     */
+    private static final Pattern BCRYPT_HASH = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$.{53}$");
+    private static final char[] CALIBRATION_PASSWORD = "Calibration#Password1".toCharArray();
+
+    private final PasswordHashingExecutor hashingExecutor;
+    private final int cost;
+
+    /**
+     * @param hashingExecutor - the threads to hash on.
+     * @param cost - fixed bcrypt cost, 0 to calibrate it.
+     * @param targetLatency - time one hash should take when calibrating.
+     * @param minCost - lowest cost calibration may pick.
+     * @param maxCost - highest cost calibration may pick.
+     */
+    public Hash(PasswordHashingExecutor hashingExecutor,
+                @Value("${password.hashing.cost:0}") int cost,
+                @Value("${password.hashing.target-latency:250ms}") Duration targetLatency,
+                @Value("${password.hashing.min-cost:12}") int minCost,
+                @Value("${password.hashing.max-cost:16}") int maxCost) {
+        this.hashingExecutor = hashingExecutor;
+        if (cost > 0) {
+            this.cost = cost;
+            log.info("Using configured bcrypt cost {}", cost);
+        } else {
+            timeHash(4); // warm up the JIT so the measurement is not of the interpreter
+            this.cost = calibrateCost(targetLatency, minCost, maxCost, Hash::timeHash);
+            log.info("Calibrated bcrypt cost {} for a target of {} ms", this.cost, targetLatency.toMillis());
+        }
+    }
 
     //Method to check hash password
     public boolean checkPasswordWithUsername(String password, String hashedPassword){
-        //Get the hashed password from the database
-
-        //Check if the password is correct
-        BCrypt.Result result = BCrypt.verifyer().verify(password.toCharArray(), hashedPassword);
-        return result.verified;
+        return verify(password, hashedPassword);
     }
 
     //Method to hash password
     public String hashPassword(String password){
-        return BCrypt.withDefaults().hashToString(12, password.toCharArray());
+        return hashingExecutor.run("hash", () -> BCrypt.withDefaults().hashToString(cost, password.toCharArray()));
     }
 
     public boolean verify(String plainPassword, String hashedPassword) {
         // Use BCrypt to verify the password
-        BCrypt.Result result = BCrypt.verifyer().verify(plainPassword.toCharArray(), hashedPassword);
-        return result.verified;
+        return hashingExecutor.run("verify", () -> BCrypt.verifyer().verify(plainPassword.toCharArray(), hashedPassword).verified);
+    }
+
+    /**
+     * Check whether a stored hash should be replaced, because it was made with a lower cost than the current one.
+     * Call it after a successful verification, when the plain password is at hand to hash again.
+     * @param hashedPassword - the stored hash.
+     * @return - true if the hash is a bcrypt hash with a lower cost.
+     */
+    public boolean needsRehash(String hashedPassword) {
+        if (hashedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_HASH.matcher(hashedPassword);
+        return matcher.matches() && Integer.parseInt(matcher.group(1)) < cost;
+    }
+
+    /**
+     * @return - the bcrypt cost used for new hashes.
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    //Helper methods
+
+    /**
+     * Pick the highest cost whose hash fits in the target. One hash is timed at the minimum cost,
+     * every cost above it doubles the work.
+     * @param targetLatency - time one hash may take.
+     * @param minCost - lowest cost, returned even if it is slower than the target.
+     * @param maxCost - highest cost.
+     * @param nanosAtCost - times one hash at a cost.
+     * @return - the cost.
+     */
+    static int calibrateCost(Duration targetLatency, int minCost, int maxCost, IntToLongFunction nanosAtCost) {
+        long nanos = nanosAtCost.applyAsLong(minCost);
+        int cost = minCost;
+        while (cost < maxCost && nanos * 2 <= targetLatency.toNanos()) {
+            nanos *= 2;
+            cost++;
+        }
+        return cost;
+    }
+
+    private static long timeHash(int cost) {
+        long start = System.nanoTime();
+        BCrypt.withDefaults().hash(cost, CALIBRATION_PASSWORD);
+        return System.nanoTime() - start;
     }
 
 }
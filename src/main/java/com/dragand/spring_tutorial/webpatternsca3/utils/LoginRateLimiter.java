@@ -0,0 +1,144 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits login attempts per username and per client address with token buckets, so that guessing passwords
+ * costs the attacker a wait instead of costing the server a bcrypt verification per guess.
+ * <p>
+ * Each bucket holds up to {@code capacity} attempts and gets one back every {@code refill-interval}.
+ * A bucket is a single {@link AtomicLong} updated with compare-and-set, so checking an attempt takes no lock.
+ * Buckets live in a Caffeine cache and are dropped once unused for long enough to have refilled completely,
+ * at which point a new bucket is the same as the old one. The cache is also capped in size, so a flood of
+ * made-up usernames cannot grow it without bound.
+ * <p>
+ * Metrics: {@code login.throttle.rejected} counter and {@code login.throttle.buckets} gauge, both tagged by key (user or ip).
+ */
+@Slf4j
+@Component
+public class LoginRateLimiter {
+
+    private final Limit userLimit;
+    private final Limit ipLimit;
+    private final LongSupplier ticker;
+    private final long startNanos;
+
+    /**
+     * @param userCapacity - attempts a username may make in a burst.
+     * @param userRefillInterval - time until a username gets one more attempt.
+     * @param ipCapacity - attempts a client address may make in a burst.
+     * @param ipRefillInterval - time until a client address gets one more attempt.
+     * @param maxBuckets - most buckets kept per key.
+     * @param meterRegistry - registry for the metrics.
+     */
+    @Autowired
+    public LoginRateLimiter(@Value("${login.throttle.user.capacity:5}") int userCapacity,
+                            @Value("${login.throttle.user.refill-interval:30s}") Duration userRefillInterval,
+                            @Value("${login.throttle.ip.capacity:20}") int ipCapacity,
+                            @Value("${login.throttle.ip.refill-interval:3s}") Duration ipRefillInterval,
+                            @Value("${login.throttle.max-buckets:100000}") long maxBuckets,
+                            MeterRegistry meterRegistry) {
+        this(userCapacity, userRefillInterval, ipCapacity, ipRefillInterval, maxBuckets, meterRegistry, System::nanoTime);
+    }
+
+    LoginRateLimiter(int userCapacity, Duration userRefillInterval, int ipCapacity, Duration ipRefillInterval,
+                     long maxBuckets, MeterRegistry meterRegistry, LongSupplier ticker) {
+        this.ticker = ticker;
+        this.startNanos = ticker.getAsLong();
+        this.userLimit = new Limit("user", userCapacity, userRefillInterval, maxBuckets, meterRegistry, ticker);
+        this.ipLimit = new Limit("ip", ipCapacity, ipRefillInterval, maxBuckets, meterRegistry, ticker);
+    }
+
+    /**
+     * Take one attempt from the buckets of the client address and of the username.
+     * @param userName - the username being logged in to.
+     * @param remoteAddress - the address of the client.
+     * @return - true if the attempt may go ahead, false if either bucket is empty.
+     */
+    public boolean tryAcquire(String userName, String remoteAddress) {
+        long now = ticker.getAsLong() - startNanos;
+        if (!ipLimit.tryAcquire(remoteAddress, now)) {
+            log.warn("Throttled login attempt from {}", remoteAddress);
+            return false;
+        }
+        if (!userLimit.tryAcquire(normalize(userName), now)) {
+            log.warn("Throttled login attempt for username: {}", userName);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Give a username its full allowance back after a successful login.
+     * @param userName - the username that logged in.
+     */
+    public void loginSucceeded(String userName) {
+        userLimit.buckets.invalidate(normalize(userName));
+    }
+
+    private static String normalize(String userName) {
+        return userName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The buckets of one key (username or address) and their size.
+     */
+    private static final class Limit {
+
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final Cache<String, AtomicLong> buckets;
+        private final Counter rejected;
+
+        Limit(String key, int capacity, Duration refillInterval, long maxBuckets, MeterRegistry meterRegistry, LongSupplier ticker) {
+            this.intervalNanos = refillInterval.toNanos();
+            this.toleranceNanos = intervalNanos * (capacity - 1);
+            this.buckets = Caffeine.newBuilder()
+                    .expireAfterAccess(refillInterval.multipliedBy(capacity))
+                    .maximumSize(maxBuckets)
+                    .ticker(ticker::getAsLong)
+                    .build();
+            this.rejected = Counter.builder("login.throttle.rejected")
+                    .description("Login attempts refused because a bucket was empty")
+                    .tag("key", key)
+                    .register(meterRegistry);
+            Gauge.builder("login.throttle.buckets", buckets, Cache::estimatedSize)
+                    .description("Login throttling buckets in memory")
+                    .tag("key", key)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * The bucket holds the time at which it would be full again if no attempt was made in between
+         * (the token bucket in its "generic cell rate" form). An attempt moves that time one interval on,
+         * and is refused if the time would then lie further ahead than the capacity allows.
+         */
+        boolean tryAcquire(String id, long now) {
+            AtomicLong fullAt = buckets.get(id, k -> new AtomicLong());
+            while (true) {
+                long current = fullAt.get();
+                long from = Math.max(current, now);
+                if (from - now > toleranceNanos) {
+                    rejected.increment();
+                    return false;
+                }
+                if (fullAt.compareAndSet(current, from + intervalNanos)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
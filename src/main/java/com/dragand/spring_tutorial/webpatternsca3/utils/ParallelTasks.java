@@ -0,0 +1,88 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a handful of independent blocking calls (e.g. the queries behind one page) at the same time, each on its own
+ * virtual thread, so the caller waits for the slowest call instead of the sum of all of them.
+ * <p>
+ * Used as a scope: fork the tasks, {@link #join(Duration)} them, then read the futures. If one task fails or the
+ * deadline passes, the remaining tasks are cancelled. Closing the scope cancels whatever is still running.
+ * <pre>{@code
+ * try (ParallelTasks tasks = new ParallelTasks()) {
+ *     Future<List<Song>> songs = tasks.fork(() -> songDao.getAllSongsByTitle(query));
+ *     Future<List<Album>> albums = tasks.fork(() -> albumDao.getAllAlbumsWhereNameLike(query));
+ *     tasks.join(Duration.ofSeconds(2));
+ *     ...
+ * }
+ * }</pre>
+ */
+public final class ParallelTasks implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CompletionService<Object> completion = new ExecutorCompletionService<>(executor);
+    private final List<Future<?>> forked = new ArrayList<>();
+
+    /**
+     * Start a task on a new virtual thread.
+     * @param task - the call to run.
+     * @return - the future of the task, complete once {@link #join(Duration)} has returned normally.
+     * @param <T> - the result type.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> fork(Callable<T> task) {
+        Future<T> future = (Future<T>) completion.submit((Callable<Object>) task);
+        forked.add(future);
+        return future;
+    }
+
+    /**
+     * Wait until every task has finished, at most until the deadline.
+     * @param deadline - how long to wait for all tasks together.
+     * @throws ExecutionException - if a task failed, the other tasks are cancelled.
+     * @throws TimeoutException - if the deadline passed first, the unfinished tasks are cancelled.
+     * @throws InterruptedException - if the waiting thread was interrupted, all tasks are cancelled.
+     */
+    public void join(Duration deadline) throws ExecutionException, TimeoutException, InterruptedException {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        try {
+            for (int done = 0; done < forked.size(); done++) {
+                long remaining = deadlineNanos - System.nanoTime();
+                Future<Object> next = completion.poll(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    throw new TimeoutException("Tasks did not finish within " + deadline.toMillis() + " ms");
+                }
+                next.get(); // throws if the task failed
+            }
+        } catch (ExecutionException | TimeoutException | InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancel the tasks that are still running and release the threads.
+     */
+    @Override
+    public void close() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    private void cancelAll() {
+        for (Future<?> future : forked) {
+            future.cancel(true);
+        }
+    }
+}
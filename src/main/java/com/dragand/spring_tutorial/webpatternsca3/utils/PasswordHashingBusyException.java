@@ -0,0 +1,17 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils;
+
+/**
+ * Thrown when a password could not be hashed or verified because the hashing threads are saturated,
+ * either the queue was full or the request waited longer than {@code password.hashing.max-wait}.
+ * The request should be retried later, it says nothing about the password itself.
+ */
+public class PasswordHashingBusyException extends RuntimeException {
+
+    public PasswordHashingBusyException(String message) {
+        super(message);
+    }
+
+    public PasswordHashingBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,148 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the bcrypt work of login, registration and profile updates on a small fixed pool of its own.
+ * <p>
+ * A bcrypt hash takes a whole core for a few hundred milliseconds. Run on the request threads, a burst of logins
+ * takes every core and the catalog pages stall behind it. Here at most {@code password.hashing.threads} hashes run
+ * at once, at most {@code password.hashing.queue-capacity} wait, and a caller that would wait longer than
+ * {@code password.hashing.max-wait} gets a {@link PasswordHashingBusyException} straight away instead.
+ * <p>
+ * Metrics: {@code password.hashing.queue.depth} and {@code password.hashing.active} gauges,
+ * {@code password.hashing.wait} and {@code password.hashing.latency} (tagged by operation) timers
+ * and a {@code password.hashing.rejected} counter.
+ */
+@Slf4j
+@Component
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final Duration maxWait;
+    private final MeterRegistry meterRegistry;
+    private final Timer waitTimer;
+    private final Counter rejected;
+    private final Map<String, Timer> latencyTimers = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads - number of hashing threads, 0 for half of the available cores.
+     * @param queueCapacity - number of hashes that may wait for a thread.
+     * @param maxWait - longest time a caller waits for its result, queueing included.
+     * @param meterRegistry - registry for the metrics.
+     */
+    public PasswordHashingExecutor(@Value("${password.hashing.threads:0}") int threads,
+                                   @Value("${password.hashing.queue-capacity:64}") int queueCapacity,
+                                   @Value("${password.hashing.max-wait:2s}") Duration maxWait,
+                                   MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("password-hash-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.maxWait = maxWait;
+        this.meterRegistry = meterRegistry;
+        this.waitTimer = Timer.builder("password.hashing.wait")
+                .description("Time a password hash waited for a hashing thread")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("password.hashing.rejected")
+                .description("Password hashes refused because the queue was full or the wait too long")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.queue.depth", executor, e -> e.getQueue().size())
+                .description("Password hashes waiting for a hashing thread")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashes being computed")
+                .register(meterRegistry);
+        log.info("Password hashing uses {} threads and a queue of {}", poolSize, queueCapacity);
+    }
+
+    /**
+     * Run a hashing task on the hashing threads and wait for its result.
+     * @param operation - name of the operation for the latency metric, e.g. hash or verify.
+     * @param task - the hashing work.
+     * @return - the result of the task.
+     * @param <T> - the result type.
+     * @throws PasswordHashingBusyException - if the queue is full or the result did not come within the max wait.
+     */
+    public <T> T run(String operation, Supplier<T> task) {
+        Timer latency = latencyTimers.computeIfAbsent(operation, op -> Timer.builder("password.hashing.latency")
+                .description("Time spent computing a password hash")
+                .tag("operation", op)
+                .register(meterRegistry));
+        long queuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                return latency.record(task);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("Password hashing queue is full, rejecting {}", operation);
+            throw new PasswordHashingBusyException("Password hashing queue is full", e);
+        }
+
+        try {
+            return future.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            cancel(future);
+            rejected.increment();
+            log.warn("Password {} did not finish within {} ms", operation, maxWait.toMillis());
+            throw new PasswordHashingBusyException("Password hashing took longer than " + maxWait.toMillis() + " ms", e);
+        } catch (InterruptedException e) {
+            cancel(future);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Drop a task nobody waits for any more. A cancelled task would otherwise keep its queue slot until a thread
+     * takes it, so it is removed from the queue as well. A hash that is already running cannot be interrupted,
+     * bcrypt does not check, and keeps its thread until it is done.
+     * @param future - the task, as returned by submit.
+     */
+    private void cancel(Future<?> future) {
+        future.cancel(true);
+        if (future instanceof Runnable queued) {
+            executor.remove(queued);
+        }
+    }
+
+    /**
+     * @return - the number of hashes waiting for a thread.
+     */
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
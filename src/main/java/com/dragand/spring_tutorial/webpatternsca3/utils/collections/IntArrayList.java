@@ -0,0 +1,94 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Growable list of int values backed by one int array. 4 bytes per value instead of a boxed Integer and a reference.
+ * Not thread safe.
+ */
+public final class IntArrayList {
+
+    private int[] values;
+    private int size;
+
+    public IntArrayList() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize - number of values the list should hold without growing.
+     */
+    public IntArrayList(int expectedSize) {
+        values = new int[Math.max(1, expectedSize)];
+    }
+
+    /**
+     * @param value - the value to append.
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * @param index - position of the value.
+     * @return - the value at the position.
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * @return - the last value added.
+     */
+    public int last() {
+        return get(size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return - a copy of the values in list order.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @return - a read-only {@code List<Integer>} view backed by this list, e.g. for a template.
+     */
+    public List<Integer> asList() {
+        return new ReadOnlyView();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private final class ReadOnlyView extends AbstractList<Integer> implements RandomAccess {
+        @Override
+        public Integer get(int index) {
+            return IntArrayList.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
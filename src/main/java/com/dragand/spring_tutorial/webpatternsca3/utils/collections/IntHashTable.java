@@ -0,0 +1,164 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils.collections;
+
+/**
+ * Open addressing hash table of int keys shared by the primitive maps and set.
+ * Keys are stored in one flat array and a collision moves on to the next slot (linear probing),
+ * subclasses keep their values in a parallel array of the same length.
+ * <p>
+ * Key 0 is reserved as the empty slot marker, which is fine for auto-increment ids. Not thread safe.
+ *
+ * @param <A> the type of the value array, Void for a set
+ */
+public abstract class IntHashTable<A> {
+
+    static final int EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    int[] keys;
+    A values;
+    int size;
+    private int resizeAt;
+
+    IntHashTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Copy constructor, the arrays must already be copies.
+     */
+    IntHashTable(IntHashTable<A> source, int[] keys, A values) {
+        this.keys = keys;
+        this.values = values;
+        this.size = source.size;
+        this.resizeAt = source.resizeAt;
+    }
+
+    /**
+     * @param capacity - number of slots.
+     * @return - a value array with that many slots.
+     */
+    abstract A newValues(int capacity);
+
+    /**
+     * Copy one value between slots, of the same or of two different value arrays.
+     */
+    abstract void copyValue(A from, int fromSlot, A to, int toSlot);
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    //Slot operations for the subclasses
+
+    /**
+     * @return - the slot holding the key, or -1 if the key is missing.
+     */
+    final int indexOf(int key) {
+        if (key == EMPTY) {
+            return -1;
+        }
+        int slot = probe(key);
+        return keys[slot] == key ? slot : -1;
+    }
+
+    /**
+     * Find the slot of a key, adding the key if it is missing. The caller writes the value.
+     * @return - the slot of the key.
+     */
+    final int slotFor(int key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        int slot = probe(key);
+        if (keys[slot] == key) {
+            return slot;
+        }
+        if (size + 1 > resizeAt) {
+            grow();
+            slot = probe(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Remove a key and its value. The entries after it are shifted back so no probe chain is broken.
+     * @return - true if the key was present.
+     */
+    final boolean removeKey(int key) {
+        int gap = indexOf(key);
+        if (gap < 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = mix(keys[next]) & mask;
+            // The entry may fill the gap if the gap lies between its home slot and where it sits now
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                copyValue(values, next, values, gap);
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    /**
+     * @return - the first used slot from the given one on, or the table length if there is none.
+     */
+    final int nextUsedSlot(int from) {
+        while (from < keys.length && keys[from] == EMPTY) {
+            from++;
+        }
+        return from;
+    }
+
+    //Helper methods
+
+    /**
+     * Slot holding the key, or the empty slot where it would go.
+     */
+    private int probe(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Spreads sequential ids over the table (Murmur3 finalizer).
+     */
+    private static int mix(int key) {
+        int h = key * 0x85ebca6b;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = newValues(capacity);
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        A oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = probe(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                copyValue(oldValues, i, values, slot);
+            }
+        }
+    }
+}
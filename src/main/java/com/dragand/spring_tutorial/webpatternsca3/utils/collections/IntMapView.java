@@ -0,0 +1,79 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils.collections;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Read-only {@code Map<Integer, V>} over one of the primitive tables, for code that only understands maps.
+ * Thymeleaf and SpEL index it like any map ({@code userRatings[song.songID]}), but a lookup goes straight to the
+ * primitive arrays: no entry objects, and only the returned value is boxed.
+ * Writes through the map are rejected, change the backing table instead.
+ *
+ * @param <V> the boxed value type
+ */
+final class IntMapView<V> extends AbstractMap<Integer, V> {
+
+    private final IntHashTable<?> table;
+    private final IntFunction<V> valueAtSlot;
+
+    /**
+     * @param table - the table to read.
+     * @param valueAtSlot - returns the boxed value stored in a slot.
+     */
+    IntMapView(IntHashTable<?> table, IntFunction<V> valueAtSlot) {
+        this.table = table;
+        this.valueAtSlot = valueAtSlot;
+    }
+
+    @Override
+    public V get(Object key) {
+        int slot = key instanceof Integer intKey ? table.indexOf(intKey) : -1;
+        return slot < 0 ? null : valueAtSlot.apply(slot);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer intKey && table.indexOf(intKey) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Integer, V>> iterator() {
+                return new Iterator<>() {
+                    private int next = table.nextUsedSlot(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < table.keys.length;
+                    }
+
+                    @Override
+                    public Entry<Integer, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<Integer, V> entry = new SimpleImmutableEntry<>(table.keys[next], valueAtSlot.apply(next));
+                        next = table.nextUsedSlot(next + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return table.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+-- Schema of the embedded database (H2 in MySQL mode), the same tables as sql/CA3.sql.
+-- Applied once by SchemaMigrator. Never edit a script that has been released, add V2__..., V3__... instead.
+
+-- Create Artists table
+CREATE TABLE Artists (
+                         artistID INT AUTO_INCREMENT PRIMARY KEY,
+                         name VARCHAR(255) NOT NULL UNIQUE
+);
+
+-- Create Albums table
+CREATE TABLE Albums (
+                        albumID INT AUTO_INCREMENT PRIMARY KEY,
+                        title VARCHAR(255) NOT NULL,
+                        artistID INT NOT NULL,
+                        releaseDate DATE NOT NULL,
+                        FOREIGN KEY (artistID) REFERENCES Artists(artistID) ON DELETE CASCADE
+);
+
+-- Create Users table
+CREATE TABLE Users (
+                       userID INT AUTO_INCREMENT PRIMARY KEY,
+                       firstName VARCHAR(100) NOT NULL,
+                       lastName VARCHAR(100) NOT NULL,
+                       username VARCHAR(100) NOT NULL UNIQUE,
+                       password VARCHAR(255) NOT NULL,
+                       registrationDate DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                       subscriptionEndDate DATETIME
+
+);
+
+-- Create Songs table
+CREATE TABLE Songs (
+                       songID INT AUTO_INCREMENT PRIMARY KEY,
+                       title VARCHAR(255) NOT NULL,
+                       albumID INT NOT NULL,
+                       artistID INT NOT NULL,
+                       length TIME NOT NULL,
+                       ratingCount INT NOT NULL DEFAULT 0,
+                       averageRating DECIMAL(3, 2) DEFAULT 0,
+                       ratingsSum INT DEFAULT 0,
+                       -- Keyset pagination of the catalog by title and by rating (songID is appended by InnoDB)
+                       INDEX idx_songs_title (title),
+                       INDEX idx_songs_average_rating (averageRating),
+                       FOREIGN KEY (albumID) REFERENCES Albums(albumID) ON DELETE CASCADE,
+                       FOREIGN KEY (artistID) REFERENCES Artists(artistID) ON DELETE CASCADE
+);
+
+
+-- Create Ratings table
+CREATE TABLE Ratings (
+                         ratingID INT AUTO_INCREMENT PRIMARY KEY,
+                         userID INT NOT NULL,
+                         songID INT NOT NULL,
+                         ratingValue TINYINT NOT NULL CHECK (ratingValue >= 1 AND ratingValue <= 5),
+                         createdAt DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                         updatedAt DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+                         UNIQUE KEY uq_ratings_user_song (userID, songID),
+                         FOREIGN KEY (userID) REFERENCES Users(userID) ON DELETE CASCADE,
+                         FOREIGN KEY (songID) REFERENCES Songs(songID) ON DELETE CASCADE
+);
+
+-- Create Playlists table
+CREATE TABLE Playlists (
+                           playlistID INT AUTO_INCREMENT PRIMARY KEY,
+                           userID INT NOT NULL,
+                           name VARCHAR(255) NOT NULL,
+                           isPublic BOOLEAN DEFAULT FALSE,
+                           FOREIGN KEY (userID) REFERENCES Users(userID) ON DELETE CASCADE
+);
+
+-- Create PlaylistSongs table (Junction table for Playlists and Songs)
+CREATE TABLE PlaylistSongs (
+                               playlistID INT NOT NULL,
+                               songID INT NOT NULL,
+                               PRIMARY KEY (playlistID, songID),
+                               FOREIGN KEY (playlistID) REFERENCES Playlists(playlistID) ON DELETE CASCADE,
+                               FOREIGN KEY (songID) REFERENCES Songs(songID) ON DELETE CASCADE
+);
+
+-- Create ArtistsSongs table (Junction table for Artists and Songs)
+CREATE TABLE ArtistsSongs (
+                              artistID INT NOT NULL,
+                              songID INT NOT NULL,
+                              PRIMARY KEY (artistID, songID),
+                              FOREIGN KEY (artistID) REFERENCES Artists(artistID) ON DELETE CASCADE,
+                              FOREIGN KEY (songID) REFERENCES Songs(songID) ON DELETE CASCADE
+);
+
+-- Song rating aggregates (ratingCount, ratingsSum, averageRating) are maintained by the application,
+-- see SongRatingAggregator. A trigger here would count every new rating twice.
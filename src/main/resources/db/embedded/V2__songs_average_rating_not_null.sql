@@ -0,0 +1,6 @@
+-- averageRating can no longer be NULL, the same change as sql/CA3_song_rating_not_null.sql.
+-- The keyset pagination of /songs by rating compares against the rating of the cursor song, a NULL matches nothing.
+
+UPDATE Songs SET averageRating = 0 WHERE averageRating IS NULL;
+
+ALTER TABLE Songs ALTER COLUMN averageRating SET NOT NULL;
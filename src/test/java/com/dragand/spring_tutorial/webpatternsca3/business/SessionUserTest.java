@@ -0,0 +1,68 @@
+package com.dragand.spring_tutorial.webpatternsca3.business;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for SessionUser.
+ */
+class SessionUserTest {
+
+    private final LocalDateTime subscriptionEnd = LocalDateTime.now().plusYears(1).truncatedTo(ChronoUnit.SECONDS);
+
+    private final User user = new User("Jane", "Doe", "janedoe", "$2a$12$hash", 7,
+            LocalDateTime.now(), subscriptionEnd);
+
+    /**
+     * Only the id, username and subscription end are taken from the user.
+     */
+    @Test
+    void testOf() {
+        SessionUser sessionUser = SessionUser.of(user);
+
+        assertEquals(7, sessionUser.getUserID());
+        assertEquals("janedoe", sessionUser.getUserName());
+        assertEquals(subscriptionEnd, sessionUser.getSubscriptionEndDate());
+        assertTrue(sessionUser.hasActiveSubscription(Instant.now()));
+    }
+
+    /**
+     * A missing or past subscription end is not active.
+     */
+    @Test
+    void testInactiveSubscription() {
+        SessionUser noSubscription = SessionUser.of(user).withSubscriptionEndDate(null);
+        SessionUser expired = SessionUser.of(user).withSubscriptionEndDate(LocalDateTime.now().minusDays(1));
+
+        assertNull(noSubscription.getSubscriptionEndDate());
+        assertFalse(noSubscription.hasActiveSubscription(Instant.now()));
+        assertFalse(expired.hasActiveSubscription(Instant.now()));
+    }
+
+    /**
+     * The serialized form reads back to an equal principal and stays small.
+     */
+    @Test
+    void testSerializationRoundTrip() throws IOException, ClassNotFoundException {
+        SessionUser sessionUser = SessionUser.of(user);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(sessionUser);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(sessionUser, in.readObject());
+        }
+        assertTrue(bytes.size() < 150, "serialized size was " + bytes.size());
+    }
+}
@@ -0,0 +1,77 @@
+package com.dragand.spring_tutorial.webpatternsca3.config;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.SessionUser;
+import com.dragand.spring_tutorial.webpatternsca3.business.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.FlashMap;
+import org.springframework.web.servlet.support.SessionFlashMapManager;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for AuthInterceptor.
+ */
+class AuthInterceptorTest {
+
+    private final AuthInterceptor interceptor = new AuthInterceptor();
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        response = new MockHttpServletResponse();
+    }
+
+    /**
+     * A logged in user reaches the controller.
+     */
+    @Test
+    void testLoggedInUserPasses() throws Exception {
+        MockHttpServletRequest request = request("/songs");
+        request.getSession().setAttribute("loggedInUser", SessionUser.of(
+                new User("Jane", "Doe", "janedoe", "hash", 7, LocalDateTime.now(), null)));
+
+        assertTrue(interceptor.preHandle(request, response, null));
+        assertNull(response.getRedirectedUrl());
+    }
+
+    /**
+     * A page request without a user is sent to the login page with an error, without creating a session.
+     */
+    @Test
+    void testAnonymousPageRedirectsToLogin() throws Exception {
+        MockHttpServletRequest request = request("/playlists");
+
+        assertFalse(interceptor.preHandle(request, response, null));
+        assertEquals("/login", response.getRedirectedUrl());
+        FlashMap flashMap = (FlashMap) request.getAttribute(DispatcherServlet.OUTPUT_FLASH_MAP_ATTRIBUTE);
+        assertEquals("You must be logged in to use this feature", flashMap.get("error"));
+    }
+
+    /**
+     * A JSON request without a user gets a 401 instead of a redirect.
+     */
+    @Test
+    void testAnonymousApiRequestIsUnauthorized() throws Exception {
+        MockHttpServletRequest request = request("/api/rateSong");
+
+        assertFalse(interceptor.preHandle(request, response, null));
+        assertEquals(401, response.getStatus());
+        assertNull(response.getRedirectedUrl());
+    }
+
+    /**
+     * A request as the DispatcherServlet hands it to the interceptors, with the flash map set up.
+     */
+    static MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setAttribute(DispatcherServlet.OUTPUT_FLASH_MAP_ATTRIBUTE, new FlashMap());
+        request.setAttribute(DispatcherServlet.FLASH_MAP_MANAGER_ATTRIBUTE, new SessionFlashMapManager());
+        return request;
+    }
+}
@@ -0,0 +1,66 @@
+package com.dragand.spring_tutorial.webpatternsca3.config;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.SessionUser;
+import com.dragand.spring_tutorial.webpatternsca3.business.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for SubscriptionInterceptor.
+ */
+class SubscriptionInterceptorTest {
+
+    private final LocalDateTime now = LocalDateTime.of(2025, 1, 15, 12, 0);
+    private final SubscriptionInterceptor interceptor = new SubscriptionInterceptor(
+            Clock.fixed(now.atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault()));
+
+    /**
+     * A subscription ending after now passes.
+     */
+    @Test
+    void testActiveSubscriptionPasses() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(requestAs(now.plusDays(1), "/search"), response, null));
+        assertNull(response.getRedirectedUrl());
+    }
+
+    /**
+     * An ended or missing subscription sends a page request to the subscription page.
+     */
+    @Test
+    void testExpiredSubscriptionRedirects() throws Exception {
+        MockHttpServletResponse expired = new MockHttpServletResponse();
+        MockHttpServletResponse none = new MockHttpServletResponse();
+
+        assertFalse(interceptor.preHandle(requestAs(now, "/search"), expired, null));
+        assertFalse(interceptor.preHandle(requestAs(null, "/songs"), none, null));
+        assertEquals("/subscription", expired.getRedirectedUrl());
+        assertEquals("/subscription", none.getRedirectedUrl());
+    }
+
+    /**
+     * A JSON request with an ended subscription gets a 403.
+     */
+    @Test
+    void testExpiredSubscriptionApiRequestIsForbidden() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertFalse(interceptor.preHandle(requestAs(now.minusDays(1), "/api/playlists/songs"), response, null));
+        assertEquals(403, response.getStatus());
+    }
+
+    private static MockHttpServletRequest requestAs(LocalDateTime subscriptionEnd, String uri) {
+        MockHttpServletRequest request = AuthInterceptorTest.request(uri);
+        request.getSession().setAttribute("loggedInUser", SessionUser.of(
+                new User("Jane", "Doe", "janedoe", "hash", 7, LocalDateTime.now(), subscriptionEnd)));
+        return request;
+    }
+}
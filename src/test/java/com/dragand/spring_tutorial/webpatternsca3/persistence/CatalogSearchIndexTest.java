@@ -0,0 +1,153 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Playlist;
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingDelta;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingUpsertResult;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the incremental updates of CatalogSearchIndex, including those that arrive during a rebuild.
+ * The index is built from mocked DAOs, the events published by the DAOs are checked on an in-memory H2 database.
+ */
+class CatalogSearchIndexTest {
+
+    private SongDAO songDao;
+    private ArtistDAO artistDao;
+    private PlaylistDAO playlistDao;
+    private SongRatingAggregator ratingAggregator;
+    private CatalogSearchIndex index;
+
+    private final Song song = Song.builder().songID(1).title("Come Together").albumID(1).artistID(1)
+            .length(LocalTime.of(0, 4, 20)).ratingCount(2).averageRating(3.0).ratingsSum(6).build();
+    private final Playlist playlist = new Playlist(1, 1, "Road Trip", true);
+
+    @BeforeEach
+    void setUp() {
+        songDao = mock(SongDAO.class);
+        artistDao = mock(ArtistDAO.class);
+        AlbumDAO albumDao = mock(AlbumDAO.class);
+        playlistDao = mock(PlaylistDAO.class);
+        when(songDao.streamAllSongs()).thenAnswer(invocation -> Stream.of(song));
+        when(artistDao.streamAllArtists()).thenAnswer(invocation -> Stream.empty());
+        when(albumDao.streamAllAlbums()).thenAnswer(invocation -> Stream.empty());
+        when(playlistDao.streamAllPlaylists()).thenAnswer(invocation -> Stream.of(playlist));
+        ratingAggregator = new SongRatingAggregator(songDao, mock(RatingDAO.class), new ConcurrentMapCacheManager(),
+                event -> index.onRatingAggregatesFlushed((RatingAggregatesFlushedEvent) event));
+        index = new CatalogSearchIndex(songDao, artistDao, albumDao, playlistDao, ratingAggregator, true);
+        index.rebuild();
+    }
+
+    /**
+     * Added songs are found and deleted songs are not, without asking the database.
+     */
+    @Test
+    void testSongAddedAndDeleted() {
+        Song added = Song.builder().songID(2).title("Something").albumID(1).artistID(1)
+                .length(LocalTime.of(0, 3, 3)).build();
+        index.onSongAdded(new SongAddedEvent(added));
+        assertEquals(List.of(added), index.searchSongs("thing"));
+
+        index.onSongDeleted(new SongDeletedEvent(1));
+        assertEquals(List.of(), index.searchSongs("together"));
+        verify(songDao, never()).getAllSongsByTitle(anyString());
+    }
+
+    /**
+     * Deleted playlists are not found.
+     */
+    @Test
+    void testPlaylistDeleted() {
+        assertEquals(List.of(playlist), index.searchPlaylists("road"));
+
+        index.onPlaylistDeleted(new PlaylistDeletedEvent(1));
+        index.playlistSaved(new Playlist(2, 1, "Gym", true));
+
+        assertEquals(List.of(), index.searchPlaylists("road"));
+        verify(playlistDao, never()).getAllPlaylistbyName(anyString(), anyBoolean());
+    }
+
+    /**
+     * Flushed rating changes are applied to the indexed songs.
+     */
+    @Test
+    void testRatingFlushApplied() {
+        when(songDao.applyRatingDeltas(anyList())).thenReturn(true);
+        ratingAggregator.recordUpsert(1, new RatingUpsertResult(true, 0), 5);
+        ratingAggregator.flush();
+
+        Song indexed = index.searchSongs("together").get(0);
+        assertEquals(3, indexed.getRatingCount());
+        assertEquals(11, indexed.getRatingsSum());
+    }
+
+    /**
+     * Flushes that arrive during a rebuild are replayed on the new index, unless the song rows already contain them.
+     */
+    @Test
+    void testRatingFlushDuringRebuild() {
+        when(songDao.applyRatingDeltas(anyList())).thenReturn(true);
+        ratingAggregator.recordUpsert(1, new RatingUpsertResult(true, 0), 5);
+        ratingAggregator.flush();
+        // The rows read by the rebuild contain the first flush, the second one is written while the artists are read
+        when(songDao.streamAllSongs()).thenAnswer(invocation -> Stream.of(Song.builder().songID(1).title("Come Together")
+                .albumID(1).artistID(1).length(LocalTime.of(0, 4, 20)).ratingCount(3).averageRating(3.67).ratingsSum(11).build()));
+        when(artistDao.streamAllArtists()).thenAnswer(invocation -> {
+            index.onRatingAggregatesFlushed(new RatingAggregatesFlushedEvent(1, List.of(new RatingDelta(1, 1, 5))));
+            index.onRatingAggregatesFlushed(new RatingAggregatesFlushedEvent(2, List.of(new RatingDelta(1, 1, 1))));
+            return Stream.empty();
+        });
+
+        index.rebuild();
+
+        Song indexed = index.searchSongs("together").get(0);
+        assertEquals(4, indexed.getRatingCount());
+        assertEquals(12, indexed.getRatingsSum());
+        assertEquals(3.0, indexed.getAverageRating());
+    }
+
+    /**
+     * The DAOs publish an event for every song added or deleted and every playlist deleted, and none for failed changes.
+     */
+    @Test
+    void testDaosPublishChanges() {
+        try (HikariDataSource dataSource = new HikariDataSource()) {
+            dataSource.setJdbcUrl("jdbc:h2:mem:searchEvents;MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;IGNORECASE=TRUE");
+            dataSource.setUsername("sa");
+            SchemaMigrator.migrate(dataSource, SchemaMigrator.EMBEDDED_SCHEMA);
+            new SyntheticDataGenerator(42, 20, 5, 0, 3).generate(dataSource);
+            List<Object> events = new ArrayList<>();
+            SongDaoImpl songDaoImpl = new SongDaoImpl(dataSource);
+            PlaylistDaoImpl playlistDaoImpl = new PlaylistDaoImpl(dataSource);
+            songDaoImpl.setApplicationEventPublisher(events::add);
+            playlistDaoImpl.setApplicationEventPublisher(events::add);
+
+            Song added = Song.builder().title("Something").albumID(1).artistID(1).length(LocalTime.of(0, 3, 3)).build();
+            assertTrue(songDaoImpl.addSong(added));
+            assertTrue(songDaoImpl.deleteSong(5));
+            assertFalse(songDaoImpl.deleteSong(999));
+            assertTrue(playlistDaoImpl.deletePlaylist(2));
+            assertFalse(playlistDaoImpl.deletePlaylist(999));
+
+            assertEquals(3, events.size());
+            Song saved = assertInstanceOf(SongAddedEvent.class, events.get(0)).song();
+            assertEquals(saved, songDaoImpl.findSongById(saved.getSongID()));
+            assertEquals(new SongDeletedEvent(5), events.get(1));
+            assertEquals(new PlaylistDeletedEvent(2), events.get(2));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Playlist;
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for DaoMetrics.
+ * Runs against in-memory H2 databases in MySQL mode, so no MySQL server is needed.
+ */
+class DaoMetricsTest {
+
+    private static final int SONGS = 200;
+    private static final int USERS = 20;
+
+    private static final AtomicInteger DATABASE_NUMBER = new AtomicInteger();
+
+    private HikariDataSource pool;
+    private MeterRegistry meterRegistry;
+    private DaoMetrics daoMetrics;
+    private DataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:metrics" + DATABASE_NUMBER.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1");
+        pool.setUsername("sa");
+        SchemaMigrator.migrate(pool, SchemaMigrator.EMBEDDED_SCHEMA);
+        new SyntheticDataGenerator(42, SONGS, USERS, 500, 5).generate(pool);
+        meterRegistry = new SimpleMeterRegistry();
+        daoMetrics = new DaoMetrics(meterRegistry);
+        dataSource = new InstrumentedDataSource(pool, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Every call is timed and its rows and connection wait are recorded, tagged by DAO and method.
+     */
+    @Test
+    void testCallsRowsAndConnections() {
+        SongDAO songDao = daoMetrics.instrument(new SongDaoImpl(dataSource), SongDAO.class);
+
+        assertNotNull(songDao.findSongById(1));
+        assertNotNull(songDao.findSongById(2));
+        List<Song> page = songDao.getSongsAfter(0, 10);
+
+        assertEquals(2, calls("SongDAO", "findSongById", "success").count());
+        assertEquals(2, meterRegistry.get("dao.rows").tags("dao", "SongDAO", "method", "findSongById").summary().totalAmount());
+        assertEquals(page.size(), meterRegistry.get("dao.rows").tags("method", "getSongsAfter").summary().totalAmount());
+        assertTrue(meterRegistry.get("dao.connection.acquire").tags("dao", "SongDAO", "method", "findSongById").timer().count() >= 2);
+    }
+
+    /**
+     * Ids and success flags are not counted as rows.
+     */
+    @Test
+    void testNoRowsForWrites() {
+        PlaylistSongsDAO playlistSongsDao = daoMetrics.instrument(new PlaylistSongsDaoImpl(dataSource), PlaylistSongsDAO.class);
+
+        playlistSongsDao.doesSongExistInPlaylist(1, 1);
+
+        assertEquals(1, calls("PlaylistSongsDAO", "doesSongExistInPlaylist", "success").count());
+        assertNull(meterRegistry.find("dao.rows").tags("method", "doesSongExistInPlaylist").summary());
+    }
+
+    /**
+     * The rows of a stream are counted when it is closed.
+     */
+    @Test
+    void testStreamRows() {
+        UserDAO userDao = daoMetrics.instrument(new UserDaoImpl(dataSource), UserDAO.class);
+
+        try (Stream<String> names = userDao.streamAllUserNames()) {
+            assertEquals(0, meterRegistry.get("dao.rows").tags("method", "streamAllUserNames").summary().count());
+            assertEquals(USERS, names.count());
+        }
+
+        assertEquals(USERS, meterRegistry.get("dao.rows").tags("method", "streamAllUserNames").summary().totalAmount());
+    }
+
+    /**
+     * An SQL error the DAO catches and logs still counts as an error of the method.
+     */
+    @Test
+    void testCaughtSqlErrors() throws SQLException {
+        SongDAO songDao = daoMetrics.instrument(new SongDaoImpl(dataSource), SongDAO.class);
+        try (Connection con = pool.getConnection(); Statement st = con.createStatement()) {
+            st.execute("DROP TABLE Songs CASCADE");
+        }
+
+        assertNull(songDao.findSongById(1));
+
+        Timer errors = meterRegistry.get("dao.calls").tags("dao", "SongDAO", "method", "findSongById", "outcome", "error").timer();
+        assertEquals(1, errors.count());
+        assertNotEquals("none", errors.getId().getTag("exception"));
+        assertEquals(0, calls("SongDAO", "findSongById", "success").count());
+    }
+
+    /**
+     * A DAO used by another DAO is measured on its own.
+     */
+    @Test
+    void testNestedCalls() {
+        PlaylistDAO playlistDao = daoMetrics.instrument(new PlaylistDaoImpl(dataSource), PlaylistDAO.class);
+        PlaylistSongsDAO playlistSongsDao = daoMetrics.instrument(new PlaylistSongsDaoImpl(dataSource, playlistDao), PlaylistSongsDAO.class);
+        Playlist playlist = playlistDao.getPlaylistById(1);
+
+        playlistSongsDao.getSongsInPlaylistByPlaylistName(playlist.getName());
+
+        assertEquals(1, calls("PlaylistSongsDAO", "getSongsInPlaylistByPlaylistName", "success").count());
+        assertEquals(1, calls("PlaylistDAO", "getPlaylistByName", "success").count());
+    }
+
+    /**
+     * Connections borrowed outside of a DAO call are not wrapped.
+     */
+    @Test
+    void testConnectionsOutsideCalls() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            assertFalse(Proxy.isProxyClass(con.getClass()));
+        }
+        assertTrue(meterRegistry.find("dao.connection.acquire").timers().isEmpty());
+    }
+
+    //Helper methods
+
+    private Timer calls(String dao, String method, String outcome) {
+        return meterRegistry.get("dao.calls").tags("dao", dao, "method", method, "outcome", outcome).timer();
+    }
+}
@@ -0,0 +1,129 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingDelta;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingUpsertResult;
+import com.dragand.spring_tutorial.webpatternsca3.config.CacheConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the rating writes of RatingDaoImpl and SongDaoImpl on the embedded schema.
+ * Runs against in-memory H2 databases in MySQL mode, so no MySQL server is needed.
+ */
+class RatingAggregatesEmbeddedTest {
+
+    /**
+     * Named in-memory databases outlive their connections, every test gets a new name.
+     */
+    private static final AtomicInteger DATABASE_NUMBER = new AtomicInteger();
+
+    private HikariDataSource dataSource;
+    private SongDaoImpl songDao;
+    private RatingDaoImpl ratingDao;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:ratings" + DATABASE_NUMBER.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        SchemaMigrator.migrate(dataSource, SchemaMigrator.EMBEDDED_SCHEMA);
+        new SyntheticDataGenerator(42, 20, 10, 0, 0).generate(dataSource);
+        songDao = new SongDaoImpl(dataSource);
+        ratingDao = new RatingDaoImpl(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    /**
+     * The average is computed from the count and sum after the deltas, and is 0 once no ratings are left.
+     */
+    @Test
+    void testApplyRatingDeltas() {
+        assertTrue(songDao.applyRatingDeltas(List.of(new RatingDelta(1, 2, 9), new RatingDelta(2, 1, 4))));
+        assertAggregates(1, 2, 9, 4.5);
+        assertAggregates(2, 1, 4, 4.0);
+
+        assertTrue(songDao.applyRatingDeltas(List.of(new RatingDelta(1, 1, 1))));
+        assertAggregates(1, 3, 10, 3.33);
+
+        assertTrue(songDao.applyRatingDeltas(List.of(new RatingDelta(1, -3, -10))));
+        assertAggregates(1, 0, 0, 0.0);
+    }
+
+    /**
+     * A first rating is inserted, a second one replaces it and reports the replaced value.
+     */
+    @Test
+    void testUpsertRating() {
+        RatingUpsertResult inserted = ratingDao.upsertRating(3, 1, 2);
+        assertNotNull(inserted);
+        assertTrue(inserted.inserted());
+
+        RatingUpsertResult updated = ratingDao.upsertRating(3, 1, 5);
+        assertNotNull(updated);
+        assertFalse(updated.inserted());
+        assertEquals(2, updated.previousValue());
+        assertEquals(5, ratingDao.getRatingByUserIDandSongID(3, 1).getRatingValue());
+    }
+
+    /**
+     * A rating that breaks a constraint is not saved.
+     */
+    @Test
+    void testUpsertRatingFailure() {
+        assertNull(ratingDao.upsertRating(3, 1, 6));
+        assertNull(ratingDao.upsertRating(999, 1, 4));
+    }
+
+    /**
+     * Ratings saved, replaced and removed through the aggregator leave the song aggregates matching the ratings table.
+     */
+    @Test
+    void testAggregatesMatchRatingsAfterFlush() throws SQLException {
+        SongRatingAggregator aggregator = new SongRatingAggregator(songDao, ratingDao,
+                new ConcurrentMapCacheManager(CacheConfig.SONGS), event -> { });
+        aggregator.rateSong(4, 1, 3);
+        aggregator.rateSong(4, 2, 5);
+        aggregator.rateSong(4, 1, 1);
+        aggregator.rateSong(5, 3, 4);
+        assertTrue(aggregator.deleteRating(ratingDao.getRatingByUserIDandSongID(5, 3)));
+
+        aggregator.flush();
+
+        assertAggregates(4, 2, 6, 3.0);
+        assertAggregates(5, 0, 0, 0.0);
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM Songs s "
+                     + "LEFT JOIN (SELECT songID, COUNT(*) AS c, SUM(ratingValue) AS total FROM Ratings GROUP BY songID) r "
+                     + "ON r.songID = s.songID "
+                     + "WHERE s.ratingCount <> COALESCE(r.c, 0) OR s.ratingsSum <> COALESCE(r.total, 0)")) {
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    //Helper methods
+
+    private void assertAggregates(int songID, int count, int sum, double average) {
+        Song song = songDao.findSongById(songID);
+        assertEquals(count, song.getRatingCount());
+        assertEquals(sum, song.getRatingsSum());
+        assertEquals(average, song.getAverageRating(), 1e-9);
+    }
+}
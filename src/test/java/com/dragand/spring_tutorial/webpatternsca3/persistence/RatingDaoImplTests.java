@@ -1,11 +1,13 @@
 package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingUpsertResult;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -18,7 +20,7 @@ public class RatingDaoImplTests {
 
     private static RatingDaoImpl ratingDao;
 
-    private static Rating ratingToBeAdded, ratingToBeUpdated, ratingToBeDeleted, duplicateRating;
+    private static Rating ratingToBeAdded, ratingToBeUpdated, ratingToBeDeleted;
     private static List<Rating> userRatings, songRatings;
 
     /**
@@ -39,10 +41,9 @@ public class RatingDaoImplTests {
                 new Rating(3, 2, 2, 4)
         );
 
-        ratingToBeAdded = new Rating(4, 2, 3, 5);
+        ratingToBeAdded = new Rating(4, 2, 6, 5);
         ratingToBeUpdated = new Rating(5, 2, 4, 3);
         ratingToBeDeleted = new Rating(6, 2, 5, 4);
-        duplicateRating = new Rating(4, 2, 3, 5); // Same as `ratingToBeAdded`
     }
 
     /**
@@ -50,9 +51,12 @@ public class RatingDaoImplTests {
      */
     @AfterAll
     public static void cleanUp() {
-        ratingDao.deleteRating(ratingToBeAdded);
-        ratingDao.deleteRating(ratingToBeUpdated);
-        ratingDao.deleteRating(ratingToBeDeleted);
+        for (Rating rating : List.of(ratingToBeAdded, ratingToBeUpdated, ratingToBeDeleted)) {
+            Rating leftOver = ratingDao.getRatingByUserIDandSongID(rating.getSongID(), rating.getUserID());
+            if (leftOver != null) {
+                ratingDao.deleteRating(leftOver);
+            }
+        }
     }
 
     /**
@@ -60,27 +64,63 @@ public class RatingDaoImplTests {
      */
     @Test
     public void testAddRating_Success() {
-        boolean result = ratingDao.addRating(ratingToBeAdded);
-        assertTrue(result, "Adding a valid rating should succeed.");
+        RatingUpsertResult result = ratingDao.upsertRating(ratingToBeAdded.getSongID(), ratingToBeAdded.getUserID(), ratingToBeAdded.getRatingValue());
+        assertNotNull(result, "Adding a valid rating should succeed.");
     }
 
     /**
-     * Test adding a null rating, expecting failure.
+     * Test adding a rating for a non-existent song, expecting failure.
      */
     @Test
-    public void testAddRating_Failure_NullRating() {
-        boolean result = ratingDao.addRating(null);
-        assertFalse(result, "Adding a null rating should fail.");
+    public void testAddRating_Failure_NonExistentSong() {
+        RatingUpsertResult result = ratingDao.upsertRating(69, 2, 3);
+        assertNull(result, "Adding a rating for a non-existent song should fail.");
     }
 
     /**
-     * Test adding a duplicate rating, expecting failure.
+     * Test adding a duplicate rating, expecting the existing rating to be replaced instead of a second row.
      */
     @Test
-    public void testAddRating_Failure_DuplicateRating() {
-        ratingDao.addRating(ratingToBeAdded); // Add rating first
-        boolean result = ratingDao.addRating(duplicateRating);
-        assertFalse(result, "Adding a duplicate rating should fail.");
+    public void testAddRating_DuplicateRating() {
+        ratingDao.upsertRating(ratingToBeAdded.getSongID(), ratingToBeAdded.getUserID(), ratingToBeAdded.getRatingValue()); // Add rating first
+        RatingUpsertResult result = ratingDao.upsertRating(ratingToBeAdded.getSongID(), ratingToBeAdded.getUserID(), ratingToBeAdded.getRatingValue());
+        assertNotNull(result, "Adding a duplicate rating should succeed.");
+        assertFalse(result.inserted(), "A duplicate rating should replace the existing one.");
+
+        long copies = ratingDao.getRatingsByUserID(ratingToBeAdded.getUserID()).stream()
+                .filter(rating -> rating.getSongID() == ratingToBeAdded.getSongID())
+                .count();
+        assertEquals(1, copies, "A user should have one rating per song.");
+    }
+
+    /**
+     * Test upserting a rating the user has not given yet, expecting an insert.
+     */
+    @Test
+    public void testUpsertRating_Insert() {
+        RatingUpsertResult result = ratingDao.upsertRating(9, 2, 4);
+        Rating inserted = ratingDao.getRatingByUserIDandSongID(9, 2);
+        ratingDao.deleteRating(inserted);
+
+        assertNotNull(result, "Upserting a new rating should succeed.");
+        assertTrue(result.inserted(), "A new rating should be reported as inserted.");
+        assertEquals(4, inserted.getRatingValue(), "Inserted rating value should match.");
+    }
+
+    /**
+     * Test upserting a rating the user already gave, expecting an update that reports the old value.
+     */
+    @Test
+    public void testUpsertRating_Update() {
+        ratingDao.upsertRating(8, 2, 2);
+        RatingUpsertResult result = ratingDao.upsertRating(8, 2, 5);
+        Rating updated = ratingDao.getRatingByUserIDandSongID(8, 2);
+        ratingDao.deleteRating(updated);
+
+        assertNotNull(result, "Upserting an existing rating should succeed.");
+        assertFalse(result.inserted(), "An existing rating should be reported as updated.");
+        assertEquals(2, result.previousValue(), "The replaced value should be reported.");
+        assertEquals(5, updated.getRatingValue(), "Updated rating value should match.");
     }
 
     /**
@@ -88,25 +128,23 @@ public class RatingDaoImplTests {
      */
     @Test
     public void testUpdateRating_Success() {
-        ratingDao.addRating(ratingToBeUpdated);
-        ratingToBeUpdated.setRatingValue(5); // Update rating value
-        boolean result = ratingDao.updateRating(ratingToBeUpdated);
-        assertTrue(result, "Updating an existing rating should succeed.");
+        ratingDao.upsertRating(ratingToBeUpdated.getSongID(), ratingToBeUpdated.getUserID(), ratingToBeUpdated.getRatingValue());
+        RatingUpsertResult result = ratingDao.upsertRating(ratingToBeUpdated.getSongID(), ratingToBeUpdated.getUserID(), 5); // Update rating value
+        assertNotNull(result, "Updating an existing rating should succeed.");
 
         Rating updatedRating = ratingDao.getRatingByUserIDandSongID(
-                ratingToBeUpdated.getUserID(), ratingToBeUpdated.getSongID());
+                ratingToBeUpdated.getSongID(), ratingToBeUpdated.getUserID());
         assertNotNull(updatedRating, "Updated rating should exist.");
         assertEquals(5, updatedRating.getRatingValue(), "Updated rating value should match.");
     }
 
     /**
-     * Test updating a non-existent rating, expecting failure.
+     * Test rating as a non-existent user, expecting failure.
      */
     @Test
-    public void testUpdateRating_Failure_NonExistentRating() {
-        Rating nonExistentRating = new Rating(60, 69, 70, 3);
-        boolean result = ratingDao.updateRating(nonExistentRating);
-        assertFalse(result, "Updating a non-existent rating should fail.");
+    public void testUpdateRating_Failure_NonExistentUser() {
+        RatingUpsertResult result = ratingDao.upsertRating(2, 69, 3);
+        assertNull(result, "Rating as a non-existent user should fail.");
     }
 
     /**
@@ -114,8 +152,9 @@ public class RatingDaoImplTests {
      */
     @Test
     public void testDeleteRating_Success() {
-        ratingDao.addRating(ratingToBeDeleted); // Ensure the rating exists
-        boolean result = ratingDao.deleteRating(ratingToBeDeleted);
+        ratingDao.upsertRating(ratingToBeDeleted.getSongID(), ratingToBeDeleted.getUserID(), ratingToBeDeleted.getRatingValue()); // Ensure the rating exists
+        boolean result = ratingDao.deleteRating(ratingDao.getRatingByUserIDandSongID(
+                ratingToBeDeleted.getSongID(), ratingToBeDeleted.getUserID()));
         assertTrue(result, "Deleting an existing rating should succeed.");
 
         Rating deletedRating = ratingDao.getRatingByUserIDandSongID(
@@ -202,4 +241,22 @@ public class RatingDaoImplTests {
         Rating rating = ratingDao.getRatingByUserIDandSongID(69, 69);
         assertNull(rating, "Rating should be null for a non-existent user and song.");
     }
+
+    /**
+     * Test streaming all ratings.
+     * The stream should contain the same ratings as the list queries, in id order.
+     */
+    @Test
+    public void testStreamAllRatings() {
+        List<Rating> streamed;
+        try (Stream<Rating> ratings = ratingDao.streamAllRatings()) {
+            streamed = ratings.toList();
+        }
+
+        assertFalse(streamed.isEmpty(), "Stream should contain the seeded ratings.");
+        assertTrue(streamed.containsAll(ratingDao.getRatingsByUserID(1)), "Stream should contain every rating of user 1.");
+        for (int i = 1; i < streamed.size(); i++) {
+            assertTrue(streamed.get(i - 1).getRatingID() < streamed.get(i).getRatingID(), "Ratings should be ordered by id.");
+        }
+    }
 }
@@ -0,0 +1,169 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for SlowQueryLog, and InstrumentedDataSource feeding it.
+ */
+class SlowQueryLogTest {
+
+    private static final long MILLI = 1_000_000L;
+
+    private final AtomicLong now = new AtomicLong();
+
+    /**
+     * Queries are ranked by total time, so many fast executions come before one slow one.
+     */
+    @Test
+    void testTopByTotalTime() {
+        SlowQueryLog slowQueryLog = slowQueryLog(Duration.ofMinutes(6));
+        for (int i = 0; i < 100; i++) {
+            slowQueryLog.record("SELECT * FROM Songs WHERE songID = ?", new Object[]{i}, 5 * MILLI, false);
+        }
+        slowQueryLog.record("SELECT * FROM Songs WHERE title LIKE ?", new Object[]{"%love%"}, 300 * MILLI, false);
+        slowQueryLog.record("SELECT * FROM Songs WHERE title LIKE ?", new Object[]{"lo%"}, 20 * MILLI, true);
+
+        List<SlowQueryLog.QueryStats> top = slowQueryLog.top();
+
+        assertEquals(3, top.size());
+        assertEquals("SELECT * FROM Songs WHERE songID = ?", top.get(0).fingerprint());
+        assertEquals(100, top.get(0).count());
+        assertEquals(500.0, top.get(0).totalMs(), 1e-9);
+        assertEquals(0, top.get(0).slow());
+        assertTrue(top.get(0).samples().isEmpty());
+
+        SlowQueryLog.QueryStats contains = top.get(1);
+        assertEquals("SELECT * FROM Songs WHERE title LIKE '%?%'", contains.fingerprint());
+        assertEquals(1, contains.slow());
+        assertEquals(List.of("'%love%'"), contains.samples().get(0).values());
+
+        assertEquals("SELECT * FROM Songs WHERE title LIKE '?%'", top.get(2).fingerprint());
+        assertEquals(1, top.get(2).errors());
+    }
+
+    /**
+     * Values of statements on Users are masked, and no values are kept unless asked for.
+     */
+    @Test
+    void testValuesOfUsersMasked() {
+        SlowQueryLog slowQueryLog = slowQueryLog(Duration.ofMinutes(6));
+        slowQueryLog.record("UPDATE Users SET password = ? WHERE userName = ?", new Object[]{"$2a$12$hash", "jane"}, 300 * MILLI, false);
+        assertEquals(List.of("***", "***"), slowQueryLog.top().get(0).samples().get(0).values());
+
+        SlowQueryLog withoutValues = new SlowQueryLog(true, Duration.ofMillis(200), Duration.ofMinutes(6), 20, 5, false, now::get);
+        withoutValues.record("SELECT * FROM Songs WHERE songID = ?", new Object[]{1}, 300 * MILLI, false);
+        assertTrue(withoutValues.top().get(0).samples().get(0).values().isEmpty());
+    }
+
+    @Test
+    void testTopIsLimited() {
+        SlowQueryLog slowQueryLog = slowQueryLog(Duration.ofMinutes(6));
+        for (int i = 0; i < 30; i++) {
+            slowQueryLog.record("SELECT * FROM Table" + i, null, (i + 1) * MILLI, false);
+        }
+
+        List<SlowQueryLog.QueryStats> top = slowQueryLog.top();
+
+        assertEquals(20, top.size());
+        assertEquals("SELECT * FROM Table29", top.get(0).fingerprint());
+    }
+
+    /**
+     * Only the latest slow executions are kept as samples, newest first.
+     */
+    @Test
+    void testSamples() {
+        SlowQueryLog slowQueryLog = slowQueryLog(Duration.ofMinutes(6));
+        for (int i = 0; i < 8; i++) {
+            slowQueryLog.record("SELECT * FROM Songs WHERE title = ?", new Object[]{"song" + i}, 250 * MILLI, false);
+        }
+
+        SlowQueryLog.QueryStats stats = slowQueryLog.top().get(0);
+
+        assertEquals(8, stats.slow());
+        assertEquals(5, stats.samples().size());
+        assertEquals(List.of("'song7'"), stats.samples().get(0).values());
+    }
+
+    /**
+     * Totals leave the window as time moves on.
+     */
+    @Test
+    void testRollingWindow() {
+        SlowQueryLog slowQueryLog = slowQueryLog(Duration.ofMinutes(6));
+        slowQueryLog.record("SELECT 1", null, MILLI, false);
+        now.addAndGet(Duration.ofMinutes(3).toNanos());
+        slowQueryLog.record("SELECT 1", null, MILLI, false);
+        assertEquals(2, slowQueryLog.top().get(0).count());
+
+        now.addAndGet(Duration.ofMinutes(4).toNanos());
+        assertEquals(1, slowQueryLog.top().get(0).count());
+
+        now.addAndGet(Duration.ofMinutes(6).toNanos());
+        assertTrue(slowQueryLog.top().isEmpty());
+    }
+
+    @Test
+    void testReset() {
+        SlowQueryLog slowQueryLog = slowQueryLog(Duration.ofMinutes(6));
+        slowQueryLog.record("SELECT 1", null, MILLI, false);
+
+        slowQueryLog.reset();
+
+        assertTrue(slowQueryLog.top().isEmpty());
+    }
+
+    /**
+     * Statements run on an instrumented data source are recorded with their bound values.
+     */
+    @Test
+    void testInstrumentedDataSource() throws SQLException {
+        SlowQueryLog slowQueryLog = new SlowQueryLog(true, Duration.ZERO, Duration.ofMinutes(6), 20, 5, true, now::get);
+        try (HikariDataSource pool = new HikariDataSource()) {
+            pool.setJdbcUrl("jdbc:h2:mem:slowquerylog;MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;IGNORECASE=TRUE");
+            pool.setUsername("sa");
+            InstrumentedDataSource dataSource = new InstrumentedDataSource(pool, slowQueryLog);
+            try (Connection con = dataSource.getConnection(); Statement st = con.createStatement()) {
+                st.execute("CREATE TABLE Songs (songID INT PRIMARY KEY, title VARCHAR(100))");
+                st.executeUpdate("INSERT INTO Songs VALUES (1, 'Love Me Do'), (2, 'Help')");
+                try (PreparedStatement ps = con.prepareStatement("SELECT * FROM Songs WHERE songID > ? AND title LIKE ?")) {
+                    ps.setInt(1, 0);
+                    ps.setString(2, "%Love%");
+                    try (ResultSet rs = ps.executeQuery()) {
+                        assertTrue(rs.next());
+                    }
+                }
+                assertThrows(SQLException.class, () -> st.executeQuery("SELECT * FROM Missing"));
+            }
+        }
+
+        List<String> fingerprints = slowQueryLog.top().stream().map(SlowQueryLog.QueryStats::fingerprint).toList();
+        assertTrue(fingerprints.contains("INSERT INTO Songs VALUES (?, ?), ..."));
+        SlowQueryLog.QueryStats select = slowQueryLog.top().stream()
+                .filter(stats -> stats.fingerprint().equals("SELECT * FROM Songs WHERE songID > ? AND title LIKE '%?%'"))
+                .findFirst().orElseThrow();
+        assertEquals(List.of("0", "'%Love%'"), select.samples().get(0).values());
+        SlowQueryLog.QueryStats missing = slowQueryLog.top().stream()
+                .filter(stats -> stats.fingerprint().equals("SELECT * FROM Missing"))
+                .findFirst().orElseThrow();
+        assertEquals(1, missing.errors());
+    }
+
+    //Helper methods
+
+    private SlowQueryLog slowQueryLog(Duration window) {
+        return new SlowQueryLog(true, Duration.ofMillis(200), window, 20, 5, true, now::get);
+    }
+}
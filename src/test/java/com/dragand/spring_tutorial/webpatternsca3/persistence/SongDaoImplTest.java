@@ -1,6 +1,7 @@
 package com.dragand.spring_tutorial.webpatternsca3.persistence;
 
 import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingDelta;
 import com.dragand.spring_tutorial.webpatternsca3.persistence.*;
 
 import org.junit.jupiter.api.*;
@@ -10,6 +11,7 @@ import java.sql.PreparedStatement;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 /**
@@ -275,4 +277,66 @@ class SongDAOImplTest {
         Song fetchedSong = songDAO.findSongById(10000);
         assertNull(fetchedSong, "Song should not be found");
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests the applyRatingDeltas method.
+     * Makes sure count, sum and average are updated together and can be reverted.
+     */
+    @Test
+    void applyRatingDeltas() {
+        assertTrue(songDAO.applyRatingDeltas(List.of(new RatingDelta(9, 2, 7))));
+        Song updated = songDAO.findSongById(9);
+        assertEquals(2, updated.getRatingCount());
+        assertEquals(7, updated.getRatingsSum());
+        assertEquals(3.5, updated.getAverageRating());
+
+        assertTrue(songDAO.applyRatingDeltas(List.of(new RatingDelta(9, -2, -7))));
+        Song reverted = songDAO.findSongById(9);
+        assertEquals(0, reverted.getRatingCount());
+        assertEquals(0, reverted.getRatingsSum());
+        assertEquals(0.0, reverted.getAverageRating());
+    }
+
+    /**
+     * Tests the getSongsAfter method.
+     * Makes sure pages ordered by id start after the cursor and respect the limit.
+     */
+    @Test
+    void getSongsAfter() {
+        assertEquals(List.of(1, 2, 3), songIds(songDAO.getSongsAfter(0, 3)));
+        assertEquals(List.of(4, 5), songIds(songDAO.getSongsAfter(3, 2)));
+        assertTrue(songDAO.getSongsAfter(9, 2).isEmpty());
+    }
+
+    /**
+     * Tests the sorted getSongsAfter and getSongsBefore methods.
+     * Makes sure both directions return the songs in the same order.
+     */
+    @Test
+    void getSongsSortedPages() {
+        // Blank Space, Come Together, Formation, Halo, Let It Be ...
+        assertEquals(List.of(5, 1), songIds(songDAO.getSongsAfter(SongSort.TITLE, 0, 2)));
+        assertEquals(List.of(6, 7), songIds(songDAO.getSongsAfter(SongSort.TITLE, 1, 2)));
+        assertEquals(List.of(1, 6), songIds(songDAO.getSongsBefore(SongSort.TITLE, 7, 2)));
+
+        // Highest average first, ties broken by the highest id
+        assertEquals(List.of(3, 5, 4), songIds(songDAO.getSongsAfter(SongSort.RATING, 0, 3)));
+        assertEquals(List.of(5, 4), songIds(songDAO.getSongsBefore(SongSort.RATING, 2, 2)));
+        assertEquals(List.of(3), songIds(songDAO.getSongsBefore(SongSort.ID, 4, 1)));
+    }
+
+    private static List<Integer> songIds(List<Song> songs) {
+        return songs.stream().map(Song::getSongID).toList();
+    }
+
+    /**
+     * Tests the streamAllSongs method.
+     * Makes sure the stream returns the same songs as getAllSongs.
+     */
+    @Test
+    void streamAllSongs() {
+        try (Stream<Song> songs = songDAO.streamAllSongs()) {
+            assertEquals(songDAO.getAllSongs(), songs.toList());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingDelta;
+import com.dragand.spring_tutorial.webpatternsca3.business.dto.RatingUpsertResult;
+import com.dragand.spring_tutorial.webpatternsca3.config.CacheConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for SongRatingAggregator.
+ * The DAOs are mocked, so these tests run without a database.
+ */
+class SongRatingAggregatorTest {
+
+    private SongDAO songDao;
+    private RatingDAO ratingDao;
+    private CacheManager cacheManager;
+    private SongRatingAggregator aggregator;
+
+    private final Song song = Song.builder().songID(1).title("Come Together").albumID(1).artistID(1)
+            .length(LocalTime.of(0, 4, 20)).ratingCount(2).averageRating(3.0).ratingsSum(6).build();
+
+    @BeforeEach
+    void setUp() {
+        songDao = mock(SongDAO.class);
+        cacheManager = new ConcurrentMapCacheManager(CacheConfig.SONGS);
+        ratingDao = mock(RatingDAO.class);
+        aggregator = new SongRatingAggregator(songDao, ratingDao, cacheManager, event -> { });
+    }
+
+    /**
+     * A new rating adds to the count and sum, a changed rating only moves the sum.
+     */
+    @Test
+    void testPendingChangesAppliedToSong() {
+        aggregator.recordUpsert(1, new RatingUpsertResult(true, 0), 5);
+        aggregator.recordUpsert(1, new RatingUpsertResult(false, 4), 2);
+
+        Song current = aggregator.withPendingChanges(song);
+        assertEquals(3, current.getRatingCount());
+        assertEquals(9, current.getRatingsSum());
+        assertEquals(3.0, current.getAverageRating());
+        assertEquals(2, song.getRatingCount(), "The song read from the database should not be modified");
+    }
+
+    /**
+     * Flushing writes one delta per song, clears it once written and evicts the cached song.
+     */
+    @Test
+    void testFlushWritesAndClearsDeltas() {
+        when(songDao.applyRatingDeltas(anyList())).thenReturn(true);
+        cacheManager.getCache(CacheConfig.SONGS).put(1, song);
+        aggregator.recordUpsert(1, new RatingUpsertResult(true, 0), 5);
+        Rating removed = new Rating(7, 2, 1, 3);
+        when(ratingDao.deleteRating(removed)).thenReturn(true);
+        assertTrue(aggregator.deleteRating(removed));
+
+        aggregator.flush();
+
+        verify(songDao).applyRatingDeltas(List.of(new RatingDelta(1, 0, 2)));
+        assertSame(song, aggregator.withPendingChanges(song));
+        List<Song> songs = List.of(song);
+        assertSame(songs, aggregator.withPendingChanges(songs), "Flushed songs should leave nothing pending");
+        assertNull(cacheManager.getCache(CacheConfig.SONGS).get(1), "Flushed song should be evicted from the cache");
+        aggregator.flush();
+        verifyNoMoreInteractions(songDao);
+    }
+
+    /**
+     * Changes that cancel out are removed by a flush without writing anything.
+     */
+    @Test
+    void testFlushRemovesSettledSongs() {
+        aggregator.recordUpsert(1, new RatingUpsertResult(false, 3), 5);
+        aggregator.recordUpsert(1, new RatingUpsertResult(false, 5), 3);
+        List<Song> songs = List.of(song);
+        assertNotSame(songs, aggregator.withPendingChanges(songs));
+
+        aggregator.flush();
+
+        assertSame(songs, aggregator.withPendingChanges(songs));
+        verifyNoInteractions(songDao);
+
+        aggregator.recordUpsert(1, new RatingUpsertResult(true, 0), 4);
+        assertEquals(3, aggregator.withPendingChanges(song).getRatingCount(), "A removed song should be recorded again");
+    }
+
+    /**
+     * A failed flush keeps the deltas for the next attempt.
+     */
+    @Test
+    void testFailedFlushKeepsDeltas() {
+        when(songDao.applyRatingDeltas(anyList())).thenReturn(false, true);
+        aggregator.recordUpsert(1, new RatingUpsertResult(true, 0), 4);
+
+        aggregator.flush();
+        assertEquals(3, aggregator.withPendingChanges(song).getRatingCount());
+
+        aggregator.flush();
+        verify(songDao, times(2)).applyRatingDeltas(List.of(new RatingDelta(1, 1, 4)));
+        assertSame(song, aggregator.withPendingChanges(song));
+    }
+
+    /**
+     * A rating that was not removed does not change the aggregates.
+     */
+    @Test
+    void testFailedDeleteRecordsNothing() {
+        assertFalse(aggregator.deleteRating(new Rating(7, 2, 1, 3)));
+        assertSame(song, aggregator.withPendingChanges(song));
+    }
+}
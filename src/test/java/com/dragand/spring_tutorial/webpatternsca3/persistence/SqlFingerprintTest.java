@@ -0,0 +1,64 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for SqlFingerprint.
+ */
+class SqlFingerprintTest {
+
+    @Test
+    void testLiteralsBecomePlaceholders() {
+        assertEquals("SELECT * FROM Songs WHERE songID = ? AND title = ? AND price > ?",
+                SqlFingerprint.of("SELECT * FROM Songs WHERE songID = 42 AND title = 'It''s \\'me\\'' AND price > 1.5e3").getText());
+    }
+
+    @Test
+    void testIdentifiersKeepTheirDigits() {
+        assertEquals("SELECT s1.title, `col2` FROM Songs s1 WHERE s1.id = ?",
+                SqlFingerprint.of("SELECT s1.title, `col2` FROM Songs s1 WHERE s1.id = 7").getText());
+    }
+
+    @Test
+    void testWhitespaceAndComments() {
+        assertEquals("SELECT * FROM Songs WHERE songID = ?",
+                SqlFingerprint.of("  SELECT *\n\t FROM   Songs /* by id */\n  WHERE songID = ? -- primary key\n").getText());
+    }
+
+    @Test
+    void testListsCollapse() {
+        assertEquals(SqlFingerprint.of("SELECT * FROM Songs WHERE songID IN (1)").getText(),
+                SqlFingerprint.of("SELECT * FROM Songs WHERE songID IN (?, ?, ?)").getText());
+        assertEquals("SELECT * FROM Songs WHERE songID IN (?+)", SqlFingerprint.of("SELECT * FROM Songs WHERE songID in(?,?)").getText());
+        assertEquals("INSERT INTO Ratings (userID, songID) VALUES (?, ?), ...",
+                SqlFingerprint.of("INSERT INTO Ratings (userID, songID) VALUES (1, 2), (3, 4), (5, 6)").getText());
+    }
+
+    /**
+     * LIKE patterns keep the wildcards at their ends, written in the SQL or bound to a placeholder.
+     */
+    @Test
+    void testLikePatterns() {
+        assertEquals("SELECT * FROM Songs WHERE title LIKE '%?%'",
+                SqlFingerprint.of("SELECT * FROM Songs WHERE title LIKE '%love%'").getText());
+        assertEquals("SELECT * FROM Songs WHERE title NOT LIKE '?%'",
+                SqlFingerprint.of("SELECT * FROM Songs WHERE title NOT LIKE 'lo%'").getText());
+
+        SqlFingerprint fingerprint = SqlFingerprint.of("SELECT * FROM playlists WHERE userID = ? AND name LIKE ?");
+        assertEquals("SELECT * FROM playlists WHERE userID = ? AND name LIKE ?", fingerprint.getText());
+        assertEquals("SELECT * FROM playlists WHERE userID = ? AND name LIKE '%?%'",
+                fingerprint.withLikePatterns(new Object[]{5, "%rock%"}));
+        assertEquals("SELECT * FROM playlists WHERE userID = ? AND name LIKE '?%'",
+                fingerprint.withLikePatterns(new Object[]{5, "rock%"}));
+        assertEquals("SELECT * FROM playlists WHERE userID = ? AND name LIKE ?",
+                fingerprint.withLikePatterns(null));
+    }
+
+    @Test
+    void testUnterminatedLiteral() {
+        assertEquals("SELECT ?", SqlFingerprint.of("SELECT '").getText());
+        assertEquals("SELECT * FROM t WHERE a LIKE '?'", SqlFingerprint.of("SELECT * FROM t WHERE a LIKE '").getText());
+    }
+}
@@ -0,0 +1,221 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import com.dragand.spring_tutorial.webpatternsca3.business.Song;
+import com.dragand.spring_tutorial.webpatternsca3.business.User;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for SchemaMigrator and SyntheticDataGenerator.
+ * Runs against in-memory H2 databases in MySQL mode, so no MySQL server is needed.
+ */
+class SyntheticDataGeneratorTest {
+
+    private static final int SONGS = 500;
+    private static final int USERS = 60;
+    private static final int RATINGS = 3_000;
+    private static final int PLAYLISTS = 25;
+
+    /**
+     * Named in-memory databases outlive their connections, every test gets new names.
+     */
+    private static final AtomicInteger DATABASE_NUMBER = new AtomicInteger();
+
+    private final List<HikariDataSource> databases = new ArrayList<>();
+    private HikariDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = newDatabase("generator");
+        SchemaMigrator.migrate(dataSource, SchemaMigrator.EMBEDDED_SCHEMA);
+    }
+
+    @AfterEach
+    void tearDown() {
+        databases.forEach(HikariDataSource::close);
+    }
+
+    /**
+     * A migrated database is not migrated again.
+     */
+    @Test
+    void testMigrateOnce() {
+        assertEquals(2, SchemaMigrator.currentVersion(dataSource));
+        assertEquals(0, SchemaMigrator.migrate(dataSource, SchemaMigrator.EMBEDDED_SCHEMA));
+    }
+
+    /**
+     * Every table gets the requested number of rows, derived tables get some.
+     */
+    @Test
+    void testSizes() throws SQLException {
+        generator(42).generate(dataSource);
+
+        assertEquals(SONGS, count("SELECT COUNT(*) FROM Songs"));
+        assertEquals(USERS, count("SELECT COUNT(*) FROM Users"));
+        assertEquals(RATINGS, count("SELECT COUNT(*) FROM Ratings"));
+        assertEquals(PLAYLISTS, count("SELECT COUNT(*) FROM Playlists"));
+        assertEquals(SONGS / 10, count("SELECT COUNT(*) FROM Albums"));
+        assertTrue(count("SELECT COUNT(*) FROM Artists") > 0);
+        assertTrue(count("SELECT COUNT(*) FROM PlaylistSongs") >= PLAYLISTS);
+    }
+
+    /**
+     * The song aggregates match the generated ratings.
+     */
+    @Test
+    void testAggregatesMatchRatings() throws SQLException {
+        generator(42).generate(dataSource);
+
+        assertEquals(0, count("SELECT COUNT(*) FROM Songs s "
+                + "LEFT JOIN (SELECT songID, COUNT(*) AS c, SUM(ratingValue) AS total FROM Ratings GROUP BY songID) r "
+                + "ON r.songID = s.songID "
+                + "WHERE s.ratingCount <> COALESCE(r.c, 0) OR s.ratingsSum <> COALESCE(r.total, 0)"));
+        assertEquals(RATINGS, count("SELECT SUM(ratingCount) FROM Songs"));
+    }
+
+    /**
+     * The same seed gives the same rows, another seed other rows.
+     */
+    @Test
+    void testDeterministic() throws SQLException {
+        generator(42).generate(dataSource);
+        HikariDataSource same = newDatabase("generator_same");
+        SchemaMigrator.migrate(same, SchemaMigrator.EMBEDDED_SCHEMA);
+        generator(42).generate(same);
+        HikariDataSource other = newDatabase("generator_other");
+        SchemaMigrator.migrate(other, SchemaMigrator.EMBEDDED_SCHEMA);
+        generator(7).generate(other);
+
+        assertEquals(fingerprint(dataSource), fingerprint(same));
+        assertNotEquals(fingerprint(dataSource), fingerprint(other));
+    }
+
+    /**
+     * A database that already has songs is left alone.
+     */
+    @Test
+    void testGenerateIfEmpty() throws SQLException {
+        assertTrue(generator(42).generateIfEmpty(dataSource));
+        assertFalse(generator(42).generateIfEmpty(dataSource));
+        assertEquals(SONGS, count("SELECT COUNT(*) FROM Songs"));
+    }
+
+    /**
+     * Songs always have an average rating, the keyset pagination by rating cannot start next to a NULL one.
+     */
+    @Test
+    void testAverageRatingNotNull() throws SQLException {
+        generator(42).generate(dataSource);
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement()) {
+            assertThrows(SQLException.class, () -> st.executeUpdate("UPDATE Songs SET averageRating = NULL WHERE songID = 1"));
+        }
+    }
+
+    /**
+     * Text comparisons ignore case like the default MySQL collation, in LIKE searches as well as with equals.
+     */
+    @Test
+    void testTextIgnoresCase() {
+        generator(42).generate(dataSource);
+        SongDaoImpl songDao = new SongDaoImpl(dataSource);
+
+        List<Song> songs = songDao.getAllSongsByTitle("love");
+        assertFalse(songs.isEmpty());
+        assertEquals(songs, songDao.getAllSongsByTitle("LOVE"));
+        assertNotNull(new UserDaoImpl(dataSource).getUserByName("USER1"));
+    }
+
+    /**
+     * The DAOs work on the generated data, including the streaming scan and the new ids after the generated ones.
+     */
+    @Test
+    void testDaosOnGeneratedData() {
+        generator(42).generate(dataSource);
+        UserDaoImpl userDao = new UserDaoImpl(dataSource);
+
+        try (Stream<String> names = userDao.streamAllUserNames()) {
+            assertEquals(USERS, names.count());
+        }
+        User user = userDao.getUserByName("user1");
+        assertTrue(BCrypt.verifyer().verify(SyntheticDataGenerator.PASSWORD.toCharArray(), user.getPassword()).verified);
+        assertTrue(user.getPassword().startsWith("$2a$" + SyntheticDataGenerator.DEFAULT_PASSWORD_COST + "$"),
+                "Passwords should be hashed at the lowest cost the application hashes with");
+        assertTrue(userDao.addUser(User.builder()
+                .firstName("Jane").lastName("Doe").userName("janedoe").password("x")
+                .subscriptionEndDate(LocalDateTime.of(2030, 1, 1, 0, 0)).build()));
+        assertEquals(USERS + 1, userDao.getUserByName("janedoe").getUserID());
+
+        Song song = new SongDaoImpl(dataSource).findSongById(1);
+        assertNotNull(song);
+        assertEquals(1, song.getSongID());
+    }
+
+    /**
+     * More ratings than half of all user and song pairs cannot be generated.
+     */
+    @Test
+    void testTooManyRatings() {
+        assertThrows(IllegalArgumentException.class, () -> new SyntheticDataGenerator(42, 10, 2, 11, 0));
+    }
+
+    //Helper methods
+
+    private static SyntheticDataGenerator generator(long seed) {
+        return new SyntheticDataGenerator(seed, SONGS, USERS, RATINGS, PLAYLISTS);
+    }
+
+    private HikariDataSource newDatabase(String name) {
+        HikariDataSource database = new HikariDataSource();
+        database.setJdbcUrl("jdbc:h2:mem:" + name + DATABASE_NUMBER.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1");
+        database.setUsername("sa");
+        databases.add(database);
+        return database;
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Order dependent hash of the ratings and song titles.
+     */
+    private static String fingerprint(HikariDataSource database) throws SQLException {
+        StringBuilder fingerprint = new StringBuilder();
+        try (Connection con = database.getConnection(); Statement st = con.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT ratingID, userID, songID, ratingValue FROM Ratings ORDER BY ratingID")) {
+                long hash = 17;
+                while (rs.next()) {
+                    hash = hash * 31 + rs.getInt(1) * 7919L + rs.getInt(2) * 104729L + rs.getInt(3) * 31L + rs.getInt(4);
+                }
+                fingerprint.append(hash);
+            }
+            try (ResultSet rs = st.executeQuery("SELECT title FROM Songs ORDER BY songID")) {
+                long hash = 17;
+                while (rs.next()) {
+                    hash = hash * 31 + rs.getString(1).hashCode();
+                }
+                fingerprint.append('/').append(hash);
+            }
+        }
+        return fingerprint.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Artist;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for TrigramIndex.
+ * Results should match what {@code LIKE '%query%'} returns, ordered by id.
+ */
+class TrigramIndexTest {
+
+    private TrigramIndex<Artist> index;
+
+    @BeforeEach
+    void setUp() {
+        index = TrigramIndex.build(Stream.of(
+                new Artist(1, "The Beatles"),
+                new Artist(2, "Led Zeppelin"),
+                new Artist(3, "Taylor Swift"),
+                new Artist(4, "Beyonce"),
+                new Artist(5, "Eminem")
+        ), Artist::getArtistId, Artist::getName);
+    }
+
+    /**
+     * Queries of three or more characters are answered from the grams, ignoring case.
+     */
+    @Test
+    void testSearchSubstring() {
+        assertEquals(List.of(1), ids(index.search("BEAT", artist -> true)));
+        assertEquals(List.of(2), ids(index.search("zep", artist -> true)));
+        assertTrue(index.search("xyz", artist -> true).isEmpty());
+    }
+
+    /**
+     * All grams present is not enough, the query has to be a substring.
+     */
+    @Test
+    void testSearchRejectsGramsOutOfOrder() {
+        index.put(new Artist(6, "abcd bcde"));
+        assertTrue(index.search("abcde", artist -> true).isEmpty());
+        assertEquals(List.of(6), ids(index.search("abcd", artist -> true)));
+    }
+
+    /**
+     * Short queries scan every entry.
+     */
+    @Test
+    void testSearchShortQuery() {
+        assertEquals(List.of(1, 2, 4, 5), ids(index.search("e", artist -> true)));
+        assertEquals(List.of(1, 3), ids(index.search("t", artist -> true)));
+    }
+
+    /**
+     * Renamed and removed entries are re-indexed.
+     */
+    @Test
+    void testPutAndRemove() {
+        index.put(new Artist(1, "Queen"));
+        assertTrue(index.search("beatles", artist -> true).isEmpty());
+        assertEquals(List.of(1), ids(index.search("quee", artist -> true)));
+
+        index.remove(2);
+        assertTrue(index.search("zeppelin", artist -> true).isEmpty());
+        assertEquals(4, index.size());
+    }
+
+    /**
+     * The filter is applied to the matches.
+     */
+    @Test
+    void testSearchFilter() {
+        assertEquals(List.of(4), ids(index.search("bey", artist -> artist.getArtistId() > 2)));
+        assertTrue(index.search("beat", artist -> artist.getArtistId() > 2).isEmpty());
+    }
+
+    private static List<Integer> ids(List<Artist> artists) {
+        return artists.stream().map(Artist::getArtistId).toList();
+    }
+}
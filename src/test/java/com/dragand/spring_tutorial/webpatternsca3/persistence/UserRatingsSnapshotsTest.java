@@ -0,0 +1,99 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import com.dragand.spring_tutorial.webpatternsca3.business.Rating;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for UserRatingsSnapshots.
+ * The rating DAO is mocked, so these tests run without a database.
+ */
+class UserRatingsSnapshotsTest {
+
+    private RatingDAO ratingDao;
+    private UserRatingsSnapshots snapshots;
+
+    @BeforeEach
+    void setUp() {
+        ratingDao = mock(RatingDAO.class);
+        when(ratingDao.getRatingsByUserID(1)).thenReturn(List.of(
+                Rating.builder().ratingID(1).userID(1).songID(10).ratingValue(4).build(),
+                Rating.builder().ratingID(2).userID(1).songID(20).ratingValue(2).build()));
+        snapshots = new UserRatingsSnapshots(ratingDao, Duration.ofMinutes(30));
+    }
+
+    /**
+     * The ratings are read once and then served from memory.
+     */
+    @Test
+    void testRatingsLoadedOnce() {
+        Map<Integer, Integer> ratings = snapshots.getRatings(1);
+        snapshots.getRatings(1);
+
+        assertEquals(Map.of(10, 4, 20, 2), ratings);
+        assertNull(ratings.get(30));
+        verify(ratingDao, times(1)).getRatingsByUserID(1);
+    }
+
+    /**
+     * A saved rating is added to the loaded snapshot without reading the database again.
+     */
+    @Test
+    void testRecordRatingUpdatesSnapshot() {
+        snapshots.getRatings(1);
+        snapshots.recordRating(1, 30, 5);
+        snapshots.recordRating(1, 10, 1);
+
+        assertEquals(Map.of(10, 1, 20, 2, 30, 5), snapshots.getRatings(1));
+        verify(ratingDao, times(1)).getRatingsByUserID(1);
+    }
+
+    /**
+     * A user without ratings gets an empty snapshot that is kept, and new ratings are added to it.
+     */
+    @Test
+    void testEmptyRatingsKept() {
+        when(ratingDao.getRatingsByUserID(2)).thenReturn(List.of());
+
+        assertTrue(snapshots.getRatings(2).isEmpty());
+        snapshots.recordRating(2, 10, 3);
+
+        assertEquals(Map.of(10, 3), snapshots.getRatings(2));
+        verify(ratingDao, times(1)).getRatingsByUserID(2);
+    }
+
+    /**
+     * A failed read is not kept, the next call tries the database again.
+     */
+    @Test
+    void testFailedLoadNotKept() {
+        when(ratingDao.getRatingsByUserID(3)).thenReturn(null, List.of(
+                Rating.builder().ratingID(3).userID(3).songID(10).ratingValue(5).build()));
+
+        assertTrue(snapshots.getRatings(3).isEmpty());
+        assertEquals(Map.of(10, 5), snapshots.getRatings(3));
+        verify(ratingDao, times(2)).getRatingsByUserID(3);
+    }
+
+    /**
+     * Logging out and idling both drop the snapshot.
+     */
+    @Test
+    void testEviction() {
+        snapshots.getRatings(1);
+        snapshots.evict(1);
+        assertEquals(0, snapshots.size());
+
+        UserRatingsSnapshots noIdle = new UserRatingsSnapshots(ratingDao, Duration.ZERO);
+        noIdle.getRatings(1);
+        noIdle.evictIdle();
+        assertEquals(0, noIdle.size());
+    }
+}
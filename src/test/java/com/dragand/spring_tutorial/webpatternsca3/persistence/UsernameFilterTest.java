@@ -0,0 +1,74 @@
+package com.dragand.spring_tutorial.webpatternsca3.persistence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for UsernameFilter.
+ * The user DAO is mocked, so these tests run without a database.
+ */
+class UsernameFilterTest {
+
+    private UserDAO userDao;
+    private UsernameFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        userDao = mock(UserDAO.class);
+        filter = new UsernameFilter(userDao, 1000, 0.01);
+    }
+
+    /**
+     * Before the first build no name is known to be free.
+     */
+    @Test
+    void testNotBuilt() {
+        assertFalse(filter.isDefinitelyFree("janedoe"));
+    }
+
+    /**
+     * After a build, names of existing users are possible matches and other names are free, ignoring case.
+     */
+    @Test
+    void testRebuild() {
+        when(userDao.streamAllUserNames()).thenReturn(Stream.of("JaneDoe", "johnsmith"));
+
+        filter.rebuild();
+
+        assertFalse(filter.isDefinitelyFree("janedoe"));
+        assertFalse(filter.isDefinitelyFree("JohnSmith"));
+        assertTrue(filter.isDefinitelyFree("newuser"));
+    }
+
+    /**
+     * A saved name is no longer free without waiting for a rebuild.
+     */
+    @Test
+    void testUserSaved() {
+        when(userDao.streamAllUserNames()).thenReturn(Stream.of("janedoe"));
+        filter.rebuild();
+
+        filter.userSaved("newuser");
+
+        assertFalse(filter.isDefinitelyFree("newuser"));
+    }
+
+    /**
+     * An empty scan, which is also what a failed query returns, does not replace the filter.
+     */
+    @Test
+    void testEmptyScanKeepsFilter() {
+        when(userDao.streamAllUserNames()).thenReturn(Stream.of("janedoe"), Stream.empty());
+        filter.rebuild();
+
+        filter.rebuild();
+
+        assertFalse(filter.isDefinitelyFree("janedoe"));
+        assertTrue(filter.isDefinitelyFree("newuser"));
+    }
+}
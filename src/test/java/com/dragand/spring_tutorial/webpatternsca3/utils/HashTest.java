@@ -0,0 +1,65 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for Hash.
+ */
+class HashTest {
+
+    private final PasswordHashingExecutor executor = new PasswordHashingExecutor(1, 4, Duration.ofSeconds(10), new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * New hashes use the configured cost and verify against their password.
+     */
+    @Test
+    void testHashPasswordUsesCost() {
+        Hash hash = new Hash(executor, 5, Duration.ofMillis(100), 10, 16);
+
+        String hashed = hash.hashPassword("Password#1");
+
+        assertTrue(hashed.startsWith("$2a$05$"));
+        assertTrue(hash.verify("Password#1", hashed));
+        assertFalse(hash.verify("Password#2", hashed));
+    }
+
+    /**
+     * Only a bcrypt hash with a lower cost needs a rehash, a higher cost is kept.
+     */
+    @Test
+    void testNeedsRehash() {
+        Hash hash = new Hash(executor, 5, Duration.ofMillis(100), 10, 16);
+        Hash cheaper = new Hash(executor, 4, Duration.ofMillis(100), 10, 16);
+        Hash stronger = new Hash(executor, 6, Duration.ofMillis(100), 10, 16);
+
+        assertFalse(hash.needsRehash(hash.hashPassword("Password#1")));
+        assertTrue(hash.needsRehash(cheaper.hashPassword("Password#1")));
+        assertFalse(hash.needsRehash(stronger.hashPassword("Password#1")));
+        assertFalse(hash.needsRehash("not a bcrypt hash"));
+        assertFalse(hash.needsRehash(null));
+    }
+
+    /**
+     * Calibration picks the highest cost within the target, bounded by the minimum and maximum cost.
+     */
+    @Test
+    void testCalibrateCost() {
+        // 10 ms at cost 10, doubling with each step: 80 ms at 13, 160 ms at 14
+        long tenMillis = Duration.ofMillis(10).toNanos();
+
+        assertEquals(13, Hash.calibrateCost(Duration.ofMillis(100), 10, 16, cost -> tenMillis));
+        assertEquals(12, Hash.calibrateCost(Duration.ofMillis(100), 10, 12, cost -> tenMillis));
+        assertEquals(10, Hash.calibrateCost(Duration.ofMillis(5), 10, 16, cost -> tenMillis));
+    }
+}
@@ -0,0 +1,66 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for LoginRateLimiter.
+ */
+class LoginRateLimiterTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final LoginRateLimiter limiter = new LoginRateLimiter(3, Duration.ofSeconds(10), 5, Duration.ofSeconds(1),
+            1000, registry, nanos::get);
+
+    /**
+     * A username gets its capacity in a burst, then one attempt per refill interval.
+     */
+    @Test
+    void testUsernameBucket() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("janedoe", "10.0.0." + i));
+        }
+        assertFalse(limiter.tryAcquire("JaneDoe ", "10.0.0.9"));
+
+        advance(Duration.ofSeconds(10));
+        assertTrue(limiter.tryAcquire("janedoe", "10.0.0.9"));
+        assertFalse(limiter.tryAcquire("janedoe", "10.0.0.9"));
+        assertEquals(2, registry.get("login.throttle.rejected").tag("key", "user").counter().count());
+    }
+
+    /**
+     * An address is limited across usernames.
+     */
+    @Test
+    void testAddressBucket() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire("user" + i, "10.0.0.1"));
+        }
+        assertFalse(limiter.tryAcquire("other", "10.0.0.1"));
+        assertTrue(limiter.tryAcquire("other", "10.0.0.2"));
+        assertEquals(1, registry.get("login.throttle.rejected").tag("key", "ip").counter().count());
+    }
+
+    /**
+     * A successful login gives the username its full allowance back.
+     */
+    @Test
+    void testLoginSucceededResetsUsername() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("janedoe", "10.0.0." + i);
+        }
+        limiter.loginSucceeded("janedoe");
+
+        assertTrue(limiter.tryAcquire("janedoe", "10.0.0.4"));
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,79 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ParallelTasks.
+ */
+class ParallelTasksTest {
+
+    /**
+     * Tasks run at the same time, so the total time is close to the slowest task.
+     */
+    @Test
+    void testTasksRunConcurrently() throws Exception {
+        CountDownLatch allStarted = new CountDownLatch(3);
+        try (ParallelTasks tasks = new ParallelTasks()) {
+            Future<Integer> first = tasks.fork(() -> awaitOthers(allStarted, 1));
+            Future<Integer> second = tasks.fork(() -> awaitOthers(allStarted, 2));
+            Future<Integer> third = tasks.fork(() -> awaitOthers(allStarted, 3));
+
+            tasks.join(Duration.ofSeconds(5));
+
+            assertEquals(6, first.resultNow() + second.resultNow() + third.resultNow());
+        }
+    }
+
+    /**
+     * A failing task cancels its siblings and the failure is reported.
+     */
+    @Test
+    void testFailureCancelsSiblings() {
+        try (ParallelTasks tasks = new ParallelTasks()) {
+            Future<String> slow = tasks.fork(() -> {
+                Thread.sleep(10_000);
+                return "too late";
+            });
+            tasks.fork(() -> {
+                throw new IllegalStateException("query failed");
+            });
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> tasks.join(Duration.ofSeconds(5)));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertTrue(slow.isCancelled());
+        }
+    }
+
+    /**
+     * Tasks still running at the deadline are cancelled.
+     */
+    @Test
+    void testDeadline() {
+        try (ParallelTasks tasks = new ParallelTasks()) {
+            Future<String> slow = tasks.fork(() -> {
+                Thread.sleep(10_000);
+                return "too late";
+            });
+
+            assertThrows(TimeoutException.class, () -> tasks.join(Duration.ofMillis(50)));
+            assertTrue(slow.isCancelled());
+        }
+    }
+
+    /**
+     * Only returns once every task has started, so it deadlocks unless the tasks run concurrently.
+     */
+    private static int awaitOthers(CountDownLatch allStarted, int value) throws InterruptedException {
+        allStarted.countDown();
+        allStarted.await();
+        return value;
+    }
+}
@@ -0,0 +1,130 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for PasswordHashingExecutor.
+ */
+class PasswordHashingExecutorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PasswordHashingExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    /**
+     * The result of the task is returned to the caller and its time is recorded.
+     */
+    @Test
+    void testRunReturnsResult() {
+        executor = new PasswordHashingExecutor(1, 1, Duration.ofSeconds(5), registry);
+
+        assertEquals("hashed", executor.run("hash", () -> "hashed"));
+        assertEquals(1, registry.get("password.hashing.latency").tag("operation", "hash").timer().count());
+    }
+
+    /**
+     * With the only thread busy and the queue full, the next caller is rejected at once.
+     */
+    @Test
+    void testFullQueueRejects() throws Exception {
+        executor = new PasswordHashingExecutor(1, 1, Duration.ofSeconds(5), registry);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> executor.run("verify", () -> {
+            started.countDown();
+            return awaitRelease();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture.runAsync(() -> executor.run("verify", () -> true));
+        waitForQueueDepth(1);
+
+        assertThrows(PasswordHashingBusyException.class, () -> executor.run("verify", () -> true));
+        assertEquals(1, registry.get("password.hashing.rejected").counter().count());
+    }
+
+    /**
+     * A caller waiting longer than the max wait gets an exception instead of blocking.
+     */
+    @Test
+    void testSlowTaskTimesOut() {
+        executor = new PasswordHashingExecutor(1, 1, Duration.ofMillis(50), registry);
+
+        assertThrows(PasswordHashingBusyException.class, () -> executor.run("hash", this::awaitRelease));
+    }
+
+    /**
+     * A task that timed out in the queue gives its slot back, even while the thread is still busy.
+     */
+    @Test
+    void testTimedOutTaskLeavesQueue() throws Exception {
+        executor = new PasswordHashingExecutor(1, 1, Duration.ofMillis(50), registry);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> executor.run("hash", () -> {
+            started.countDown();
+            return awaitReleaseIgnoringInterrupts();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertThrows(PasswordHashingBusyException.class, () -> executor.run("verify", () -> true));
+
+        assertEquals(0, executor.queueDepth());
+    }
+
+    /**
+     * Exceptions of the task reach the caller unchanged.
+     */
+    @Test
+    void testTaskExceptionIsRethrown() {
+        executor = new PasswordHashingExecutor(1, 1, Duration.ofSeconds(5), registry);
+
+        assertThrows(IllegalArgumentException.class, () -> executor.run("verify", () -> {
+            throw new IllegalArgumentException("Invalid hash");
+        }));
+    }
+
+    private boolean awaitRelease() {
+        try {
+            return release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Blocks like a running bcrypt hash, which does not stop when its thread is interrupted.
+     */
+    private boolean awaitReleaseIgnoringInterrupts() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (release.getCount() > 0 && System.nanoTime() < deadline) {
+            try {
+                release.await(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // keep going
+            }
+        }
+        return true;
+    }
+
+    private void waitForQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.queueDepth() < depth && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(depth, executor.queueDepth());
+    }
+}
@@ -0,0 +1,88 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for IntByteHashMap and the read-only map view shared by the primitive collections.
+ * Results are checked against a HashMap holding the same entries.
+ */
+class IntByteHashMapTest {
+
+    /**
+     * Random puts and removes, enough to resize and to shift entries on removal, give the same map as a HashMap.
+     */
+    @Test
+    void testMatchesHashMap() {
+        IntByteHashMap map = new IntByteHashMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            int key = 1 + random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                byte value = (byte) (1 + random.nextInt(5));
+                map.put(key, value);
+                expected.put(key, (int) value);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (int key = 1; key <= 2_000; key++) {
+            assertEquals(expected.getOrDefault(key, -1), (int) map.getOrDefault(key, (byte) -1));
+        }
+        assertEquals(expected, map.asMap());
+    }
+
+    /**
+     * The view answers map lookups the way a template indexes it, and rejects writes.
+     */
+    @Test
+    void testReadOnlyView() {
+        IntByteHashMap map = new IntByteHashMap();
+        map.put(7, (byte) 4);
+        map.put(7, (byte) 5);
+        map.put(9, (byte) 2);
+        Map<Integer, Integer> view = map.asMap();
+
+        assertEquals(5, view.get(7));
+        assertEquals(2, view.get(9));
+        assertNull(view.get(8));
+        assertNull(view.get("7"));
+        assertTrue(view.containsKey(9));
+        assertThrows(UnsupportedOperationException.class, () -> view.put(1, 1));
+    }
+
+    /**
+     * Key 0 marks an empty slot, it can be looked up but not stored.
+     */
+    @Test
+    void testZeroKeyRejected() {
+        IntByteHashMap map = new IntByteHashMap();
+
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, (byte) 1));
+        assertFalse(map.containsKey(0));
+        assertEquals(-1, map.getOrDefault(0, (byte) -1));
+    }
+
+    /**
+     * A copy is independent of the original.
+     */
+    @Test
+    void testCopy() {
+        IntByteHashMap map = new IntByteHashMap();
+        map.put(1, (byte) 1);
+        IntByteHashMap copy = map.copy();
+        copy.put(2, (byte) 2);
+
+        assertEquals(1, map.size());
+        assertEquals(Map.of(1, 1, 2, 2), copy.asMap());
+    }
+}
@@ -0,0 +1,44 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for IntHashSet.
+ */
+class IntHashSetTest {
+
+    /**
+     * Values are added once, found, removed and listed in ascending order.
+     */
+    @Test
+    void testAddContainsRemove() {
+        IntHashSet set = new IntHashSet(2);
+        IntStream.rangeClosed(1, 100).forEach(set::add);
+
+        assertFalse(set.add(50));
+        assertEquals(100, set.size());
+        assertTrue(set.contains(100));
+        assertFalse(set.contains(101));
+
+        IntStream.rangeClosed(1, 100).filter(value -> value % 2 == 0).forEach(set::remove);
+        assertArrayEquals(IntStream.rangeClosed(1, 100).filter(value -> value % 2 == 1).toArray(), set.toSortedArray());
+        assertFalse(set.contains(50));
+        assertTrue(set.contains(51));
+    }
+
+    /**
+     * The map view maps every value to true and everything else to null.
+     */
+    @Test
+    void testMapView() {
+        IntHashSet set = new IntHashSet();
+        set.add(3);
+
+        assertEquals(Boolean.TRUE, set.asMap().get(3));
+        assertNull(set.asMap().get(4));
+    }
+}
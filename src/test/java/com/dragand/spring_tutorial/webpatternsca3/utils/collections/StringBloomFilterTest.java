@@ -0,0 +1,46 @@
+package com.dragand.spring_tutorial.webpatternsca3.utils.collections;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for StringBloomFilter.
+ */
+class StringBloomFilterTest {
+
+    /**
+     * Every added value is found, and values never added are mostly reported absent.
+     */
+    @Test
+    void testNoFalseNegativesAndFewFalsePositives() {
+        StringBloomFilter filter = new StringBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("user_" + i);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user_" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("other_" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "False positives: " + falsePositives);
+    }
+
+    /**
+     * The filter is sized from the expected insertions and the false positive rate.
+     */
+    @Test
+    void testSizing() {
+        StringBloomFilter filter = new StringBloomFilter(1000, 0.01);
+
+        assertTrue(filter.bitCount() >= 9585);
+        assertEquals(7, filter.hashCount());
+        assertFalse(filter.mightContain("janedoe"));
+        assertThrows(IllegalArgumentException.class, () -> new StringBloomFilter(1000, 0));
+    }
+}